@@ -1,10 +1,15 @@
 package com.hexagone.delivery.algo;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
+import com.hexagone.delivery.models.CompactGraph;
 import com.hexagone.delivery.models.DeliveryQuery;
 import com.hexagone.delivery.models.Map;
 import com.hexagone.delivery.models.Road;
@@ -22,11 +27,45 @@ class CompleteGraphComputer {
 	 * different passage points given in the deliveryQuery
 	 */
 
+	/**
+	 * The different ways of picking the next intersection to visit in the
+	 * Dijkstra algorithm. Both give the same costs.
+	 */
+	enum DijkstraEngine {
+		/** Linear scan over all the non-visited intersections, O(V^2) */
+		LINEAR_SCAN,
+		/**
+		 * Binary heap of the reached intersections, O((V + E) log V), running
+		 * on the compact view of the map
+		 */
+		BINARY_HEAP
+	}
+
 	private Map map;
 	private DeliveryQuery deliveryQuery;
+	private DijkstraEngine engine = DijkstraEngine.BINARY_HEAP;
+	/** Number of threads used to compute the adjacency matrix */
+	private int parallelism = 1;
+	/**
+	 * Whether the searches stop as soon as all the passage points are settled
+	 */
+	private boolean targetedSearch = true;
+	/** The results of the searches made on previous computations, null if none */
+	private ShortestPathCache cache;
+	/** Whether the lines of the current computation go through the cache */
+	private boolean cacheLines;
+
+	/** Compact view of the map the computations run on */
+	private CompactGraph graph;
 
 	private Double[][] adjacencyMatrix;
-	private HashMap<Integer, HashMap<Integer, Integer>> previousIntersection;
+	/**
+	 * For each passage point identifier, the index of the intersection one
+	 * needs to come from to reach each intersection index of the graph
+	 */
+	private HashMap<Integer, int[]> previousIntersection;
+	/** Number of intersections settled by the search of each line */
+	private int[] settledIntersections;
 
 	/**
 	 * Gives back an arrayList of the intersections that one needs to follow to
@@ -40,21 +79,26 @@ class CompleteGraphComputer {
 	 * @param destination
 	 *            the destination where one wants to go
 	 * @return an arrayList of integers containing in the correct order :
-	 *         origin, [other intersections,] destination
+	 *         origin, [other intersections,] destination. It is empty when
+	 *         the destination cannot be reached from the origin.
 	 */
 	public ArrayList<Integer> getIntersectionPath(Integer origin, Integer destination) {
 		ArrayList<Integer> intersections = new ArrayList<Integer>();
 
 		intersections.add(0, destination);
 
-		HashMap<Integer, Integer> prev = previousIntersection.get(origin);
+		int[] prev = previousIntersection.get(origin);
+		int originIndex = graph.getIndex(origin);
 
-		Integer currentIntersection = prev.get(destination);
-		while (!currentIntersection.equals(origin)) {
-			intersections.add(0, currentIntersection);
-			currentIntersection = prev.get(currentIntersection);
+		int currentIntersection = graph.getIndex(destination);
+		while (currentIntersection != originIndex) {
+			if (currentIntersection < 0 || prev[currentIntersection] < 0) {
+				/** The search from the origin never reached the destination */
+				return new ArrayList<Integer>();
+			}
+			currentIntersection = prev[currentIntersection];
+			intersections.add(0, graph.getIdentifier(currentIntersection));
 		}
-		intersections.add(0, currentIntersection);
 
 		return intersections;
 	}
@@ -64,7 +108,8 @@ class CompleteGraphComputer {
 	 * given in the constructor of the game
 	 * 
 	 * @return the adjacency matrix as a 2D array of Double. The time unit is
-	 *         second
+	 *         second. The cost is infinite when there is no path between two
+	 *         passage points.
 	 */
 	public Double[][] getAdjacencyMatrix() {
 		if (adjacencyMatrix != null) {
@@ -75,36 +120,182 @@ class CompleteGraphComputer {
 		int nbPassagePoints = deliveryQuery.getPassagePointsNumber();
 		adjacencyMatrix = new Double[nbPassagePoints][];
 		previousIntersection = new HashMap<>();
+		settledIntersections = new int[nbPassagePoints];
+		graph = map.getCompactGraph();
 
 		Integer[] passageIntersections = deliveryQuery.getDeliveryPassageIdentifiers();
+		int[] passageIndexes = new int[nbPassagePoints];
+		HashSet<Integer> sources = new HashSet<Integer>();
+		for (int i = 0; i < nbPassagePoints; i++) {
+			passageIndexes[i] = graph.getIndex(passageIntersections[i]);
+			if (passageIndexes[i] >= 0) {
+				sources.add(passageIndexes[i]);
+			}
+		}
+		/**
+		 * A complete search costs much more than a targeted one on a large
+		 * map : it is only worth it if all the lines stay in the cache until
+		 * the next computation
+		 */
+		cacheLines = cache != null && cache
+				.canHold(sources.size() * ShortestPaths.getMemorySize(graph.getIntersectionsNumber()));
 
 		/** We compute the cost of going to each node from each node */
-		for (int i = 0; i < passageIntersections.length; i++) {
-			int numberOfIntersections = map.getIntersections().size();
-			HashMap<Integer, Double> cost = new HashMap<Integer, Double>(numberOfIntersections);
-			previousIntersection.put(passageIntersections[i], new HashMap<Integer, Integer>(numberOfIntersections));
+		int[][] prev = new int[nbPassagePoints][];
+		if (engine == DijkstraEngine.LINEAR_SCAN) {
+			for (int i = 0; i < nbPassagePoints; i++) {
+				adjacencyMatrix[i] = new Double[nbPassagePoints];
+				prev[i] = computeLineLinearScan(passageIntersections, i, adjacencyMatrix[i]);
+			}
+		} else if (parallelism > 1 && nbPassagePoints > 1) {
+			computeLinesInParallel(passageIndexes, prev);
+		} else {
+			DijkstraSearch search = new DijkstraSearch(graph);
+			for (int i = 0; i < nbPassagePoints; i++) {
+				prev[i] = computeLine(search, passageIndexes, i);
+			}
+		}
 
-			computeCosts(passageIntersections[i], previousIntersection.get(passageIntersections[i]), cost);
+		/** We store the previous node information for later use */
+		for (int i = 0; i < nbPassagePoints; i++) {
+			previousIntersection.put(passageIntersections[i], prev[i]);
+		}
 
-			/** We store the previous node information for later use */
+		/** Return */
+		return adjacencyMatrix;
+	}
 
-			Double[] adjacencyLine = new Double[nbPassagePoints];
+	/**
+	 * Gives the number of intersections the searches had to settle to build
+	 * the adjacency matrix. Method getAdjacencyMatrix has to be called before
+	 * calling this method.
+	 * 
+	 * @return the total number of intersections settled by the searches of all
+	 *         the lines of the matrix
+	 */
+	public long getSettledIntersectionsNumber() {
+		long total = 0;
+		for (int settled : settledIntersections) {
+			total += settled;
+		}
+		return total;
+	}
+
+	/**
+	 * Computes one line of the adjacency matrix with the binary heap engine and
+	 * stores it in the adjacency matrix
+	 * 
+	 * @param search
+	 *            the search (and its buffers) to use for the computation
+	 * @param passageIndexes
+	 *            the indexes of the passage points in the compact graph
+	 * @param line
+	 *            the index of the passage point the line starts from
+	 * @return the index of the previous intersection of each intersection,
+	 *         exact for the intersections on the shortest paths towards the
+	 *         passage points
+	 */
+	private int[] computeLine(DijkstraSearch search, int[] passageIndexes, int line) {
+		int nbPassagePoints = passageIndexes.length;
+		Double[] adjacencyLine = new Double[nbPassagePoints];
+		int source = passageIndexes[line];
+		if (source < 0) {
+			Arrays.fill(adjacencyLine, Double.POSITIVE_INFINITY);
+			int[] prev = new int[graph.getIntersectionsNumber()];
+			Arrays.fill(prev, -1);
+			adjacencyMatrix[line] = adjacencyLine;
+			return prev;
+		}
+
+		if (cacheLines) {
+			ShortestPaths paths = cache.get(graph, source);
+			if (paths == null) {
+				/** The whole map is searched so that the line serves any later passage point */
+				settledIntersections[line] = search.run(source);
+				paths = new ShortestPaths(search.copyCosts(), search.copyPrevious());
+				cache.put(graph, source, paths);
+			}
 			for (int j = 0; j < nbPassagePoints; j++) {
-				adjacencyLine[j] = cost.get(passageIntersections[j]);
+				adjacencyLine[j] = passageIndexes[j] < 0 ? Double.POSITIVE_INFINITY : paths.getCost(passageIndexes[j]);
 			}
-			adjacencyMatrix[i] = adjacencyLine;
-			cost.clear();
+			adjacencyMatrix[line] = adjacencyLine;
+			return paths.getPrevious();
 		}
 
-		/** Return */
-		return adjacencyMatrix;
+		settledIntersections[line] = search.run(source, targetedSearch ? passageIndexes : null);
+		for (int j = 0; j < nbPassagePoints; j++) {
+			adjacencyLine[j] = passageIndexes[j] < 0 ? Double.POSITIVE_INFINITY : search.getCost(passageIndexes[j]);
+		}
+		adjacencyMatrix[line] = adjacencyLine;
+		return search.copyPrevious();
+	}
+
+	/**
+	 * Computes all the lines of the adjacency matrix on a ForkJoinPool of
+	 * 'parallelism' threads. Each thread gets its own DijkstraSearch, and each
+	 * line is stored at its own index so that the result does not depend on
+	 * the order in which the lines are computed.
+	 * 
+	 * @param passageIndexes
+	 *            the indexes of the passage points in the compact graph
+	 * @param prev
+	 *            the array that will contain the previous intersections of
+	 *            each line
+	 */
+	private void computeLinesInParallel(final int[] passageIndexes, final int[][] prev) {
+		final ThreadLocal<DijkstraSearch> searches = new ThreadLocal<DijkstraSearch>() {
+			@Override
+			protected DijkstraSearch initialValue() {
+				return new DijkstraSearch(graph);
+			}
+		};
+
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			pool.invoke(new LinesTask(searches, passageIndexes, prev, 0, passageIndexes.length));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Computes one line of the adjacency matrix with the linear scan engine,
+	 * and translates its results to the indexes of the compact graph
+	 * 
+	 * @param passageIntersections
+	 *            the identifiers of the passage points
+	 * @param line
+	 *            the index of the passage point the line starts from
+	 * @param adjacencyLine
+	 *            the line to fill with the costs
+	 * @return the index of the previous intersection of each intersection
+	 */
+	private int[] computeLineLinearScan(Integer[] passageIntersections, int line, Double[] adjacencyLine) {
+		int numberOfIntersections = graph.getIntersectionsNumber();
+		HashMap<Integer, Double> cost = new HashMap<Integer, Double>(numberOfIntersections);
+		HashMap<Integer, Integer> prevMap = new HashMap<Integer, Integer>(numberOfIntersections);
+
+		computeCostsLinearScan(passageIntersections[line], prevMap, cost);
+		settledIntersections[line] = map.getAllIntersectionIdentifiers().size();
+
+		for (int j = 0; j < passageIntersections.length; j++) {
+			adjacencyLine[j] = cost.getOrDefault(passageIntersections[j], Double.POSITIVE_INFINITY);
+		}
+
+		int[] prev = new int[numberOfIntersections];
+		Arrays.fill(prev, -1);
+		for (Entry<Integer, Integer> entry : prevMap.entrySet()) {
+			prev[graph.getIndex(entry.getKey())] = graph.getIndex(entry.getValue());
+		}
+		return prev;
 	}
 
 	/**
 	 * Allows to compute the costs of going from intersection 'Intersection' to
 	 * all the other points in the map The result is stored in the HashMap cost.
 	 * The HashMap previous stores the Intersection from which one needs to come
-	 * from to go by the shortest path.
+	 * from to go by the shortest path. The engine used is the one given to
+	 * {@link #setEngine(DijkstraEngine)}, the binary heap by default.
 	 * @param intersection the starting intersection identifier
 	 * @param previousIntersection hashMap that will contain for each Intersection the Intersection one needs to come 
 	 * from
@@ -112,6 +303,23 @@ class CompleteGraphComputer {
 	 */
 	void computeCosts(Integer intersection, HashMap<Integer, Integer> previousIntersection,
 			HashMap<Integer, Double> cost) {
+		if (engine == DijkstraEngine.LINEAR_SCAN) {
+			computeCostsLinearScan(intersection, previousIntersection, cost);
+		} else {
+			computeCostsBinaryHeap(intersection, previousIntersection, cost);
+		}
+	}
+
+	/**
+	 * Dijkstra algorithm selecting the next intersection with a linear scan
+	 * over the non-visited intersections.
+	 * @param intersection the starting intersection identifier
+	 * @param previousIntersection hashMap that will contain for each Intersection the Intersection one needs to come 
+	 * from
+	 * @param cost the hashMap that will contain the costs of going from intersection to each node
+	 */
+	void computeCostsLinearScan(Integer intersection, HashMap<Integer, Integer> previousIntersection,
+			HashMap<Integer, Double> cost) {
 		/** Set of the non-visited nodes */
 		HashSet<Integer> nonVisitedNodes = map.getAllIntersectionIdentifiers();
 
@@ -156,6 +364,33 @@ class CompleteGraphComputer {
 		}
 	}
 
+	/**
+	 * Dijkstra algorithm selecting the next intersection with a binary heap.
+	 * The search runs on the compact view of the map, its results are then
+	 * copied to the HashMaps.
+	 * @param intersection the starting intersection identifier
+	 * @param previousIntersection hashMap that will contain for each Intersection the Intersection one needs to come 
+	 * from
+	 * @param cost the hashMap that will contain the costs of going from intersection to each node
+	 */
+	void computeCostsBinaryHeap(Integer intersection, HashMap<Integer, Integer> previousIntersection,
+			HashMap<Integer, Double> cost) {
+		CompactGraph graph = map.getCompactGraph();
+		DijkstraSearch search = new DijkstraSearch(graph);
+		search.run(graph.getIndex(intersection));
+
+		for (int i = 0; i < graph.getIntersectionsNumber(); i++) {
+			double costToIntersection = search.getCost(i);
+			if (costToIntersection != Double.POSITIVE_INFINITY) {
+				cost.put(graph.getIdentifier(i), costToIntersection);
+				int previous = search.getPrevious(i);
+				if (previous >= 0) {
+					previousIntersection.put(graph.getIdentifier(i), graph.getIdentifier(previous));
+				}
+			}
+		}
+	}
+
 	/**
 	 * This method gives the key of the smallest element in the hashSet among the keys given as parameters
 	 * @param hashMap from which one wants to find the minimum
@@ -190,4 +425,89 @@ class CompleteGraphComputer {
 		this.deliveryQuery = deliveryQuery;
 	}
 
+	/**
+	 * Allows to choose the Dijkstra engine used by computeCosts
+	 * 
+	 * @param engine
+	 *            the engine to use for the next computations
+	 */
+	void setEngine(DijkstraEngine engine) {
+		this.engine = engine;
+	}
+
+	/**
+	 * Allows to compute the lines of the adjacency matrix on several threads.
+	 * Only the binary heap engine can run in parallel.
+	 * 
+	 * @param parallelism
+	 *            the number of threads to use, 1 (the default) to compute the
+	 *            matrix on the calling thread
+	 */
+	void setParallelism(int parallelism) {
+		this.parallelism = Math.max(1, parallelism);
+	}
+
+	/**
+	 * Allows to choose whether the searches of the binary heap engine stop as
+	 * soon as all the passage points are settled (the default), or settle every
+	 * intersection of the map. Both give the same matrix and the same paths
+	 * between passage points.
+	 * 
+	 * @param targetedSearch
+	 *            true to stop the searches once all the passage points are
+	 *            settled
+	 */
+	void setTargetedSearch(boolean targetedSearch) {
+		this.targetedSearch = targetedSearch;
+	}
+
+	/**
+	 * Allows the binary heap engine to reuse the searches made by previous
+	 * computations on the same map, and to store its own ones. The searches
+	 * missing from the cache settle every intersection of the map, whatever
+	 * setTargetedSearch says, so that they serve any later passage point. The
+	 * cache is not used by the computations whose lines would not all fit in
+	 * its memory budget : they would drop each other before being reused.
+	 * 
+	 * @param cache
+	 *            the cache to use, null (the default) to compute every line
+	 */
+	void setCache(ShortestPathCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * Task computing the lines 'from' (included) to 'to' (excluded) of the
+	 * adjacency matrix, splitting itself until there is one line per task
+	 */
+	private class LinesTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final ThreadLocal<DijkstraSearch> searches;
+		private final int[] passageIndexes;
+		private final int[][] prev;
+		private final int from;
+		private final int to;
+
+		LinesTask(ThreadLocal<DijkstraSearch> searches, int[] passageIndexes, int[][] prev, int from, int to) {
+			this.searches = searches;
+			this.passageIndexes = passageIndexes;
+			this.prev = prev;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from == 1) {
+				prev[from] = computeLine(searches.get(), passageIndexes, from);
+			} else {
+				int middle = (from + to) >>> 1;
+				invokeAll(new LinesTask(searches, passageIndexes, prev, from, middle),
+						new LinesTask(searches, passageIndexes, prev, middle, to));
+			}
+		}
+	}
+
 }
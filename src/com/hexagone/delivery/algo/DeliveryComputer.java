@@ -1,6 +1,7 @@
 package com.hexagone.delivery.algo;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import com.hexagone.delivery.models.Delivery;
 import com.hexagone.delivery.models.DeliveryQuery;
@@ -14,21 +15,365 @@ import com.hexagone.delivery.models.Map;
  */
 public class DeliveryComputer {
 
+	/**
+	 * Memory the Held-Karp solver may use by default : 128 MB, i.e. up to 20
+	 * deliveries, if the heap is large enough
+	 */
+	private static final long DEFAULT_HELD_KARP_MEMORY_BUDGET = Math.min(128L * 1024 * 1024,
+			Runtime.getRuntime().maxMemory() / 4);
+	/** Beyond this number of deliveries, the tour is only computed by the heuristic */
+	private static final int DEFAULT_EXACT_SOLVER_MAX_DELIVERIES = 20;
+	/** Time in milliseconds given to the heuristic when it is used alone */
+	private static final long DEFAULT_HEURISTIC_TIME_LIMIT = 2000;
+	/** Minimal time in milliseconds between two tours given to the solution listener */
+	private static final long SOLUTION_LISTENER_PERIOD = 250;
+
+	private Map map;
 	private DeliveryQuery deliveryQuery;
 	private ArrayList<Integer> deliveryIntersections;
 
 	private CompleteGraphComputer graphComputer;
-	private TSPSolver tspSolver;
+	private TourSolver tspSolver;
+	/** The solver computing the tour, to follow its progress or cancel it */
+	private volatile TourSolver runningSolver;
+	private volatile boolean cancelled;
+	private SolutionListener solutionListener;
+	/** Forwards the tours of the solvers to the solution listener during compute */
+	private ThrottledSolutionListener solutionThrottle;
+	private long heldKarpMemoryBudget = DEFAULT_HELD_KARP_MEMORY_BUDGET;
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+	private int exactSolverMaxDeliveries = DEFAULT_EXACT_SOLVER_MAX_DELIVERIES;
+	private long heuristicTimeLimit = DEFAULT_HEURISTIC_TIME_LIMIT;
+	private SolvePolicy solvePolicy = new SolvePolicy();
 
 	/**
 	 * Launches the computation of the shortest path. The result will be available later through the getDeliveryPoints
-	 * method. 
+	 * method.
+	 * 
+	 * The large tours are computed by a heuristic, which gives a good tour quickly but not necessarily the best one.
+	 * The other ones are computed exactly, starting from the tour found by a short run of the heuristic : by dynamic
+	 * programming if it fits in the memory budget, by branch and bound otherwise.
+	 * 
+	 * @see #setExactSolverMaxDeliveries(int)
+	 * @see #setHeldKarpMemoryBudget(long)
 	 */
 	public void compute(){
+		if (solutionListener != null) {
+			solutionThrottle = new ThrottledSolutionListener(new SolutionListener() {
+				@Override
+				public void solutionImproved(ArrayList<Integer> order, long cost, long timestamp) {
+					solutionListener.solutionImproved(toIntersections(order), cost, timestamp);
+				}
+			}, SOLUTION_LISTENER_PERIOD);
+		}
+		try {
+			computeTour();
+		} finally {
+			if (solutionThrottle != null) {
+				solutionThrottle.flush();
+				solutionThrottle = null;
+			}
+		}
+	}
+
+	private void computeTour() {
 		Double[][] costsAdjacencyMatrix = graphComputer.getAdjacencyMatrix();
+		int deliveries = costsAdjacencyMatrix.length - 1;
+
+		HeuristicTSPSolver heuristic = new HeuristicTSPSolver(costsAdjacencyMatrix, deliveryQuery);
+		tspSolver = heuristic;
+		if (deliveries > exactSolverMaxDeliveries) {
+			heuristic.setTimeLimit(heuristicTimeLimit);
+			run(heuristic);
+			return;
+		}
+
+		/** A local optimum, found in a few milliseconds, is the first incumbent */
+		heuristic.setTimeLimit(heuristicTimeLimit);
+		heuristic.setIteratedSearch(false);
+		run(heuristic);
+		if (cancelled) {
+			return;
+		}
+
+		TourSolver exactSolver = createExactSolver(costsAdjacencyMatrix);
+		exactSolver.setInitialSolution(heuristic.getBestSolution());
+		tspSolver = exactSolver;
+		run(exactSolver);
+	}
+
+	/**
+	 * Runs a solver, making it the one followed by the progress getters and
+	 * the solution listener, and stopped by cancel
+	 */
+	private void run(TourSolver solver) {
+		solver.setSolutionListener(solutionThrottle);
+		solver.setSolvePolicy(solvePolicy);
+		runningSolver = solver;
+		/** cancel may have been called before runningSolver was set */
+		if (cancelled) {
+			solver.cancel();
+		}
+		solver.computeSolution();
+	}
+
+	/**
+	 * Stops the computation launched by compute as soon as possible. It may be
+	 * called from any thread. The best tour found so far is kept, and
+	 * checkTimeout then returns true as it may not be the best one.
+	 */
+	public void cancel() {
+		cancelled = true;
+		TourSolver solver = runningSolver;
+		if (solver != null) {
+			solver.cancel();
+		}
+	}
+
+	/**
+	 * Gives the amount of work done so far by the solver currently running. It
+	 * may be called from any thread during the computation.
+	 * 
+	 * @return the number of nodes, states or tours explored by the solver
+	 */
+	public long getExploredNodesNumber() {
+		TourSolver solver = runningSolver;
+		return solver == null ? 0 : solver.getExploredNodesNumber();
+	}
+
+	/**
+	 * Gives the duration of the best tour found so far. It may be called from
+	 * any thread during the computation.
+	 * 
+	 * @return the duration in seconds, -1 if no tour was found yet
+	 */
+	public long getBestSolutionCost() {
+		TourSolver solver = runningSolver;
+		return solver == null ? -1 : solver.getBestSolutionCost();
+	}
+
+	/**
+	 * Gives the exact solver suited to the size of the tour : dynamic
+	 * programming if it fits in the memory budget, branch and bound otherwise
+	 */
+	private TourSolver createExactSolver(Double[][] costsAdjacencyMatrix) {
+		if (HeldKarpSolver.memoryNeeded(costsAdjacencyMatrix.length) <= heldKarpMemoryBudget) {
+			return new HeldKarpSolver(costsAdjacencyMatrix, deliveryQuery);
+		}
+		TSPSolverV3 branchAndBound = new TSPSolverV3(costsAdjacencyMatrix, deliveryQuery);
+		branchAndBound.setParallelism(parallelism);
+		return branchAndBound;
+	}
+
+	/**
+	 * Plans the tour again after a delivery was removed. The current tour
+	 * without the delivery is improved by local search, which takes a few
+	 * milliseconds : the costs between the remaining passage points are found
+	 * in the shortest path cache. The delivery query of this computer is left
+	 * untouched.
+	 * 
+	 * @param removed
+	 *            the delivery to remove, one of the deliveries of the query
+	 * @return a computer holding the new delivery query and its tour, which
+	 *         is empty if the local search found none respecting the windows
+	 * @see #improveInBackground(Runnable)
+	 */
+	public DeliveryComputer replanRemoval(Delivery removed) {
+		int index = indexOf(removed);
+		Delivery[] deliveries = deliveryQuery.getDeliveries();
+		Delivery[] newDeliveries = new Delivery[deliveries.length - 1];
+		System.arraycopy(deliveries, 0, newDeliveries, 0, index);
+		System.arraycopy(deliveries, index + 1, newDeliveries, index, deliveries.length - index - 1);
+
+		/** The passage points after the removed one move back by one */
+		ArrayList<Integer> tour = new ArrayList<Integer>();
+		for (int passagePoint : getCurrentTour()) {
+			if (passagePoint != index + 1) {
+				tour.add(passagePoint > index + 1 ? passagePoint - 1 : passagePoint);
+			}
+		}
+		return replan(newDeliveries, tour);
+	}
+
+	/**
+	 * Plans the tour again after a delivery was added. The delivery is
+	 * inserted where it delays the return to the warehouse the least, then
+	 * the tour is improved by local search. Only the shortest paths from the
+	 * new delivery have to be searched. The delivery query of this computer
+	 * is left untouched.
+	 * 
+	 * @param added
+	 *            the delivery to add
+	 * @return a computer holding the new delivery query and its tour, which
+	 *         is empty if the local search found none respecting the windows
+	 * @see #improveInBackground(Runnable)
+	 */
+	public DeliveryComputer replanAddition(Delivery added) {
+		Delivery[] deliveries = deliveryQuery.getDeliveries();
+		Delivery[] newDeliveries = Arrays.copyOf(deliveries, deliveries.length + 1);
+		newDeliveries[deliveries.length] = added;
+		DeliveryComputer computer = new DeliveryComputer(map, copyQuery(newDeliveries));
+		computer.copySettings(this);
+
+		/** Cheapest insertion of the new passage point in the current tour */
+		TourProblem problem = new TourProblem(computer.graphComputer.getAdjacencyMatrix(), computer.deliveryQuery);
+		ArrayList<Integer> tour = new ArrayList<Integer>(getCurrentTour());
+		ArrayList<Integer> bestTour = null;
+		long bestEnd = Long.MAX_VALUE;
+		for (int position = 1; position <= tour.size(); position++) {
+			tour.add(position, newDeliveries.length);
+			long end = problem.endTime(tour);
+			if (end >= 0 && end < bestEnd) {
+				bestEnd = end;
+				bestTour = new ArrayList<Integer>(tour);
+			}
+			tour.remove(position);
+		}
+		computer.repair(bestTour);
+		return computer;
+	}
+
+	/**
+	 * Plans the tour again after the duration or the window of a delivery
+	 * changed. The current tour is kept if it still respects the windows,
+	 * and improved by local search. The delivery query of this computer is
+	 * left untouched.
+	 * 
+	 * @param previous
+	 *            the delivery before the modification, one of the deliveries
+	 *            of the query
+	 * @param modified
+	 *            the delivery after the modification, at the same intersection
+	 * @return a computer holding the new delivery query and its tour, which
+	 *         is empty if the local search found none respecting the windows
+	 * @see #improveInBackground(Runnable)
+	 */
+	public DeliveryComputer replanModification(Delivery previous, Delivery modified) {
+		Delivery[] newDeliveries = deliveryQuery.getDeliveries().clone();
+		newDeliveries[indexOf(previous)] = modified;
+		return replan(newDeliveries, getCurrentTour());
+	}
+
+	/**
+	 * Searches a better tour than the current one with the exact solver, on a
+	 * background thread. The current tour stays available meanwhile, and is
+	 * replaced if a shorter one is found. Nothing is done if the tour is too
+	 * large for the exact solvers or if there is no current tour. The search
+	 * is stopped by cancel, e.g. once the tour is edited again.
+	 * 
+	 * @param whenImproved
+	 *            run on the background thread once the tour was replaced,
+	 *            may be null
+	 * @return the background thread, null if nothing is done
+	 */
+	public Thread improveInBackground(final Runnable whenImproved) {
+		final Double[][] costsAdjacencyMatrix = graphComputer.getAdjacencyMatrix();
+		final ArrayList<Integer> current = getCurrentTour();
+		if (costsAdjacencyMatrix.length - 1 > exactSolverMaxDeliveries || current.isEmpty()) {
+			return null;
+		}
+		final TourSolver exactSolver = createExactSolver(costsAdjacencyMatrix);
+		exactSolver.setInitialSolution(current);
+		exactSolver.setSolvePolicy(solvePolicy);
+		runningSolver = exactSolver;
+		/** cancel may have been called before runningSolver was set */
+		if (cancelled) {
+			return null;
+		}
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				exactSolver.computeSolution();
+				TourProblem problem = new TourProblem(costsAdjacencyMatrix, deliveryQuery);
+				long end = problem.endTime(exactSolver.getBestSolution());
+				if (end < 0 || end >= problem.endTime(current)) {
+					return;
+				}
+				synchronized (DeliveryComputer.this) {
+					tspSolver = exactSolver;
+					deliveryIntersections = new ArrayList<Integer>();
+				}
+				if (whenImproved != null) {
+					whenImproved.run();
+				}
+			}
+		}, "exact-solver");
+		thread.setDaemon(true);
+		thread.start();
+		return thread;
+	}
+
+	/**
+	 * Creates the computer of a modified query, its tour being repaired from
+	 * a tour given with the passage point numbers of the modified query
+	 */
+	private DeliveryComputer replan(Delivery[] newDeliveries, ArrayList<Integer> tour) {
+		DeliveryComputer computer = new DeliveryComputer(map, copyQuery(newDeliveries));
+		computer.copySettings(this);
+		computer.repair(tour);
+		return computer;
+	}
+
+	/**
+	 * Improves a tour by local search. The tour found is empty if the local
+	 * search finds none respecting the windows, compute then has to be called
+	 * to search the whole tree.
+	 * 
+	 * @param tour
+	 *            the tour to start from, null if there is none
+	 */
+	private void repair(ArrayList<Integer> tour) {
+		HeuristicTSPSolver heuristic = new HeuristicTSPSolver(graphComputer.getAdjacencyMatrix(), deliveryQuery);
+		heuristic.setTimeLimit(heuristicTimeLimit);
+		heuristic.setIteratedSearch(false);
+		heuristic.setInitialSolution(tour);
+		heuristic.computeSolution();
+		tspSolver = heuristic;
+	}
+
+	/**
+	 * Gives the tour found by the last computation, as passage point numbers
+	 */
+	synchronized ArrayList<Integer> getCurrentTour() {
+		return new ArrayList<Integer>(tspSolver.getBestSolution());
+	}
+
+	/**
+	 * Gives the index of a delivery in the delivery query
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the delivery is not in the query
+	 */
+	private int indexOf(Delivery delivery) {
+		Delivery[] deliveries = deliveryQuery.getDeliveries();
+		for (int i = 0; i < deliveries.length; i++) {
+			if (deliveries[i] == delivery) {
+				return i;
+			}
+		}
+		throw new IllegalArgumentException("The delivery is not part of the delivery query");
+	}
+
+	private DeliveryQuery copyQuery(Delivery[] deliveries) {
+		DeliveryQuery query = new DeliveryQuery();
+		query.setWarehouse(deliveryQuery.getWarehouse());
+		query.setDelivery(deliveries);
+		return query;
+	}
 
-		tspSolver = new TSPSolverV1(costsAdjacencyMatrix, deliveryQuery);
-		tspSolver.computeSolution();
+	private void copySettings(DeliveryComputer other) {
+		setParallelism(other.parallelism);
+		exactSolverMaxDeliveries = other.exactSolverMaxDeliveries;
+		heuristicTimeLimit = other.heuristicTimeLimit;
+		heldKarpMemoryBudget = other.heldKarpMemoryBudget;
+		solvePolicy = other.solvePolicy;
+	}
+
+	/**
+	 * @return the delivery query the tour is computed for
+	 */
+	public DeliveryQuery getDeliveryQuery() {
+		return deliveryQuery;
 	}
 	
 	/**
@@ -38,22 +383,46 @@ public class DeliveryComputer {
 	 * @return deliveryIntersections the list of intersections of the delivery
 	 *         in order
 	 */
-	public ArrayList<Integer> getDeliveryPoints() {
+	public synchronized ArrayList<Integer> getDeliveryPoints() {
 		if (deliveryIntersections.isEmpty()) {
-			
-			ArrayList<Integer> order = tspSolver.getBestSolution();
+			deliveryIntersections = toIntersections(tspSolver.getBestSolution());
+		}
+		return deliveryIntersections;
+	}
 
-			Delivery[] deliveries = deliveryQuery.getDeliveries();
-			int length = deliveryQuery.getDeliveryPassageIdentifiers().length;
+	/**
+	 * Gives the intersections of a tour given by a solver
+	 * 
+	 * @param order
+	 *            the indexes of the passage points in the order of visit
+	 * @return the identifiers of their intersections, the warehouse being
+	 *         added at the end
+	 */
+	private ArrayList<Integer> toIntersections(ArrayList<Integer> order) {
+		Delivery[] deliveries = deliveryQuery.getDeliveries();
+		int length = deliveryQuery.getDeliveryPassageIdentifiers().length;
 
-			deliveryIntersections = new ArrayList<Integer>();
-			deliveryIntersections.add(deliveryQuery.getWarehouse().getIntersection().getId());
-			for (int j = 1; j < length; j++) {
-				deliveryIntersections.add(deliveries[order.get(j) - 1].getIntersection().getId());
-			}
-			deliveryIntersections.add(deliveryQuery.getWarehouse().getIntersection().getId());
+		ArrayList<Integer> intersections = new ArrayList<Integer>();
+		intersections.add(deliveryQuery.getWarehouse().getIntersection().getId());
+		for (int j = 1; j < length; j++) {
+			intersections.add(deliveries[order.get(j) - 1].getIntersection().getId());
 		}
-		return deliveryIntersections;
+		intersections.add(deliveryQuery.getWarehouse().getIntersection().getId());
+		return intersections;
+	}
+
+	/**
+	 * Allows to follow the tours found by compute, to display them before the
+	 * end of the computation. The listener is given at most four tours per
+	 * second, the last one being always given.
+	 * 
+	 * @param listener
+	 *            called with the intersections of the tour, in the order of
+	 *            visit, each time a better tour is found ; null to follow
+	 *            nothing
+	 */
+	public void setSolutionListener(SolutionListener listener) {
+		this.solutionListener = listener;
 	}
 
 	/**
@@ -68,7 +437,8 @@ public class DeliveryComputer {
 	 * @param destination
 	 *            the destination where one wants to go
 	 * @return an arrayList of integers containing in the correct order :
-	 *         origin, [other intersections,] destination
+	 *         origin, [other intersections,] destination. It is empty when
+	 *         the destination cannot be reached from the origin.
 	 */
 	public ArrayList<Integer> getShortestPath(Integer origin, Integer destination) {
 		return graphComputer.getIntersectionPath(origin, destination);
@@ -83,10 +453,70 @@ public class DeliveryComputer {
 	 *            the deliveryQuery to make on the
 	 */
 	public DeliveryComputer(Map map, DeliveryQuery deliveryQuery) {
+		this.map = map;
 		this.deliveryQuery = deliveryQuery;
 		this.deliveryIntersections = new ArrayList<Integer>();
 
 		this.graphComputer = new CompleteGraphComputer(map, deliveryQuery);
+		this.graphComputer.setParallelism(parallelism);
+		this.graphComputer.setCache(ShortestPathCache.getInstance());
+	}
+
+	/**
+	 * Allows to choose the number of threads used to compute the costs between
+	 * the passage points and to explore the search tree of the branch and
+	 * bound. By default, one thread per available processor is used.
+	 * 
+	 * @param parallelism
+	 *            the number of threads, 1 to compute on the calling thread
+	 */
+	public void setParallelism(int parallelism) {
+		this.parallelism = Math.max(1, parallelism);
+		graphComputer.setParallelism(parallelism);
+	}
+
+	/**
+	 * Allows to choose the size of the largest tours computed exactly. The
+	 * larger ones are only computed by the heuristic.
+	 * 
+	 * @param exactSolverMaxDeliveries
+	 *            the number of deliveries
+	 */
+	public void setExactSolverMaxDeliveries(int exactSolverMaxDeliveries) {
+		this.exactSolverMaxDeliveries = exactSolverMaxDeliveries;
+	}
+
+	/**
+	 * Allows to choose how long the heuristic keeps improving the large tours
+	 * 
+	 * @param heuristicTimeLimit
+	 *            the time in milliseconds
+	 */
+	public void setHeuristicTimeLimit(long heuristicTimeLimit) {
+		this.heuristicTimeLimit = heuristicTimeLimit;
+	}
+
+	/**
+	 * Allows to choose when the solvers stop searching for a better tour, e.g.
+	 * a short time limit for the plannings computed in batch, a long one when
+	 * there is time to find the best tour
+	 * 
+	 * @param solvePolicy
+	 *            the limits of the computation
+	 */
+	public void setSolvePolicy(SolvePolicy solvePolicy) {
+		this.solvePolicy = solvePolicy;
+	}
+
+	/**
+	 * Allows to choose the memory the Held-Karp solver may use. The tours
+	 * needing more are computed by branch and bound.
+	 * 
+	 * @param heldKarpMemoryBudget
+	 *            the number of bytes, 0 to always use the branch and bound
+	 */
+	public void setHeldKarpMemoryBudget(long heldKarpMemoryBudget) {
+		this.heldKarpMemoryBudget = heldKarpMemoryBudget;
 	}
 
 	/**
@@ -96,7 +526,7 @@ public class DeliveryComputer {
 	 * @return True if bestSolution is not empty
 	 * 
 	 **/
-	public boolean checkNotEmptySolution() {
+	public synchronized boolean checkNotEmptySolution() {
 		return !tspSolver.getBestSolution().isEmpty();
 	}
 
@@ -107,7 +537,7 @@ public class DeliveryComputer {
 	 * @return True if there is a time out (ie. the time limit has been reached)
 	 * 
 	 **/
-	public boolean checkTimeout() {
+	public synchronized boolean checkTimeout() {
 		return tspSolver.timeLimitReached();
 	}
 
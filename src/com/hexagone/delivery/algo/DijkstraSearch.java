@@ -0,0 +1,278 @@
+package com.hexagone.delivery.algo;
+
+import com.hexagone.delivery.models.CompactGraph;
+
+/**
+ * This class runs the Dijkstra algorithm on the compact view of a map. All of
+ * its buffers (costs, previous intersections and binary heap) are allocated
+ * once and reused from one search to the next : only the intersections reached
+ * by the last search are reset before a new one starts. An instance is
+ * therefore not meant to be shared between threads.
+ * 
+ * All the intersections are designated by their index in the CompactGraph.
+ */
+class DijkstraSearch {
+
+	/** heapPosition value of an intersection that has not been reached */
+	private static final int UNREACHED = -1;
+	/** heapPosition value of an intersection that has been settled */
+	private static final int SETTLED = -2;
+
+	private final CompactGraph graph;
+
+	/** Cost of the best path found so far towards each intersection */
+	private final double[] cost;
+	/** Intersection one comes from on the best path found so far */
+	private final int[] previous;
+
+	/** Binary heap of the reached but not yet settled intersections */
+	private final int[] heap;
+	private int heapSize;
+	/** Position of each intersection in the heap, or UNREACHED / SETTLED */
+	private final int[] heapPosition;
+
+	/** Intersections reached by the last search, to reset them cheaply */
+	private final int[] touched;
+	private int touchedNumber;
+
+	private int settledNumber;
+
+	/**
+	 * Intersections whose targetMark equals the current stamp are targets of
+	 * the current search
+	 */
+	private final int[] targetMark;
+	private int stamp;
+
+	/**
+	 * Allocates the buffers needed to search the given graph
+	 * 
+	 * @param graph
+	 *            the compact view of the map the searches will take place on
+	 */
+	DijkstraSearch(CompactGraph graph) {
+		this.graph = graph;
+		int n = graph.getIntersectionsNumber();
+		cost = new double[n];
+		previous = new int[n];
+		heap = new int[n];
+		heapPosition = new int[n];
+		touched = new int[n];
+		targetMark = new int[n];
+		for (int i = 0; i < n; i++) {
+			cost[i] = Double.POSITIVE_INFINITY;
+			previous[i] = -1;
+			heapPosition[i] = UNREACHED;
+		}
+	}
+
+	/**
+	 * Computes the costs of going from the source intersection to all the
+	 * intersections of the graph that can be reached from it.
+	 * 
+	 * @param source
+	 *            the index of the starting intersection
+	 * @return the number of intersections settled by the search
+	 */
+	int run(int source) {
+		return run(source, null);
+	}
+
+	/**
+	 * Computes the costs of going from the source intersection to the target
+	 * intersections. The search stops as soon as all the targets are settled :
+	 * the costs and previous intersections are then exact for the targets and
+	 * the intersections on their shortest paths, but not for the others.
+	 * 
+	 * @param source
+	 *            the index of the starting intersection
+	 * @param targets
+	 *            the indexes of the intersections one wants to reach, null to
+	 *            settle every intersection that can be reached. Negative
+	 *            indexes are ignored.
+	 * @return the number of intersections settled by the search
+	 */
+	int run(int source, int[] targets) {
+		reset();
+
+		int remainingTargets = -1;
+		if (targets != null) {
+			stamp++;
+			remainingTargets = 0;
+			for (int target : targets) {
+				if (target >= 0 && targetMark[target] != stamp) {
+					targetMark[target] = stamp;
+					remainingTargets++;
+				}
+			}
+			if (remainingTargets == 0) {
+				return 0;
+			}
+		}
+
+		int[] offsets = graph.getOffsets();
+		int[] destinations = graph.getTargets();
+		double[] times = graph.getTimes();
+
+		reach(source, 0, -1);
+		while (heapSize > 0) {
+			int intersection = pop();
+			settledNumber++;
+			if (remainingTargets > 0 && targetMark[intersection] == stamp && --remainingTargets == 0) {
+				break;
+			}
+			double costToIntersection = cost[intersection];
+
+			for (int road = offsets[intersection]; road < offsets[intersection + 1]; road++) {
+				int destination = destinations[road];
+				if (heapPosition[destination] == SETTLED) {
+					continue;
+				}
+				double costToDestination = costToIntersection + times[road];
+				if (costToDestination < cost[destination]) {
+					reach(destination, costToDestination, intersection);
+				}
+			}
+		}
+		return settledNumber;
+	}
+
+	/**
+	 * Gives the cost of the shortest path found by the last search
+	 * 
+	 * @param intersection
+	 *            the index of the destination intersection
+	 * @return the cost in seconds, infinite if the intersection was not reached
+	 */
+	double getCost(int intersection) {
+		return cost[intersection];
+	}
+
+	/**
+	 * Gives the intersection one needs to come from on the shortest path found
+	 * by the last search
+	 * 
+	 * @param intersection
+	 *            the index of the intersection
+	 * @return the index of the previous intersection, -1 for the source and the
+	 *         intersections that were not reached
+	 */
+	int getPrevious(int intersection) {
+		return previous[intersection];
+	}
+
+	/**
+	 * Gives a copy of the previous intersections of the last search, that
+	 * stays valid once the next search is started
+	 * 
+	 * @return the index of the previous intersection of each intersection, -1
+	 *         for the source and the intersections that were not reached
+	 */
+	int[] copyPrevious() {
+		return previous.clone();
+	}
+
+	/**
+	 * Gives a copy of the costs of the last search, that stays valid once the
+	 * next search is started
+	 * 
+	 * @return the cost of each intersection, infinite for the intersections
+	 *         that were not reached
+	 */
+	double[] copyCosts() {
+		return cost.clone();
+	}
+
+	/**
+	 * @return the graph this search runs on
+	 */
+	CompactGraph getGraph() {
+		return graph;
+	}
+
+	/**
+	 * Records a better path towards an intersection and moves it up the heap
+	 */
+	private void reach(int intersection, double newCost, int from) {
+		if (heapPosition[intersection] == UNREACHED) {
+			touched[touchedNumber++] = intersection;
+			heapPosition[intersection] = heapSize;
+			heap[heapSize++] = intersection;
+		}
+		cost[intersection] = newCost;
+		previous[intersection] = from;
+		siftUp(heapPosition[intersection]);
+	}
+
+	/**
+	 * Takes the cheapest intersection out of the heap and marks it as settled
+	 */
+	private int pop() {
+		int top = heap[0];
+		heapPosition[top] = SETTLED;
+		heapSize--;
+		if (heapSize > 0) {
+			int last = heap[heapSize];
+			heap[0] = last;
+			heapPosition[last] = 0;
+			siftDown(0);
+		}
+		return top;
+	}
+
+	private void siftUp(int position) {
+		int intersection = heap[position];
+		double key = cost[intersection];
+		while (position > 0) {
+			int parentPosition = (position - 1) >>> 1;
+			int parent = heap[parentPosition];
+			if (cost[parent] <= key) {
+				break;
+			}
+			heap[position] = parent;
+			heapPosition[parent] = position;
+			position = parentPosition;
+		}
+		heap[position] = intersection;
+		heapPosition[intersection] = position;
+	}
+
+	private void siftDown(int position) {
+		int intersection = heap[position];
+		double key = cost[intersection];
+		int half = heapSize >>> 1;
+		while (position < half) {
+			int childPosition = 2 * position + 1;
+			int child = heap[childPosition];
+			int rightPosition = childPosition + 1;
+			if (rightPosition < heapSize && cost[heap[rightPosition]] < cost[child]) {
+				childPosition = rightPosition;
+				child = heap[childPosition];
+			}
+			if (key <= cost[child]) {
+				break;
+			}
+			heap[position] = child;
+			heapPosition[child] = position;
+			position = childPosition;
+		}
+		heap[position] = intersection;
+		heapPosition[intersection] = position;
+	}
+
+	/**
+	 * Puts back the intersections reached by the last search in their initial
+	 * state
+	 */
+	private void reset() {
+		for (int i = 0; i < touchedNumber; i++) {
+			int intersection = touched[i];
+			cost[intersection] = Double.POSITIVE_INFINITY;
+			previous[intersection] = -1;
+			heapPosition[intersection] = UNREACHED;
+		}
+		touchedNumber = 0;
+		heapSize = 0;
+		settledNumber = 0;
+	}
+}
@@ -0,0 +1,288 @@
+package com.hexagone.delivery.algo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import com.hexagone.delivery.models.DeliveryQuery;
+
+/**
+ * This class solves the Traveling Salesman Problem exactly by dynamic
+ * programming (Held-Karp algorithm), in O(2^n.n^2) time and O(2^n.n) memory
+ * for n deliveries. It is much faster than the branch and bound of TSPSolver
+ * for the small and medium tours, whatever the delivery windows.
+ * 
+ * A state is the set of the deliveries made so far and the last one of them.
+ * For each state, only the earliest time at which the last delivery can be
+ * left is kept : as the delivery man waits for the start of the windows, a
+ * later time can neither reach more states nor finish the tour earlier, so
+ * this dominance keeps the algorithm exact with the delivery windows.
+ */
+class HeldKarpSolver implements TourSolver {
+
+	/** Beyond this number of deliveries, the states cannot be indexed */
+	static final int MAX_DELIVERIES = 25;
+	/** Bytes used by a state : its time and the previous delivery */
+	private static final int STATE_SIZE = 5;
+	private static final int UNREACHED = Integer.MAX_VALUE;
+	/** Number of sets of deliveries after which the limits of the policy are checked */
+	private static final int POLICY_CHECK_INTERVAL = 1024;
+
+	private TourProblem problem;
+	private ArrayList<Integer> bestSolution = new ArrayList<Integer>();
+	private ArrayList<Integer> initialSolution;
+	/** Number of states reached by the last computation */
+	private volatile long exploredStates;
+	/** Cost of the best tour known, -1 if there is none */
+	private volatile long bestSolutionCost = -1;
+	private volatile boolean cancelled;
+	/** Set if the last computation stopped on a limit of the policy */
+	private volatile boolean limitReached;
+	private SolvePolicy policy = new SolvePolicy();
+	private SolutionListener solutionListener;
+
+	/**
+	 * Allows to create an instance of Held-Karp solver to solve the Traveling
+	 * Salesman Problem
+	 * 
+	 * @param costsAdjacencyMatrix
+	 *            the adjacency matrix of the graph. costsAdjacencyMatrix[i][j]
+	 *            represents the cost going from i to j.
+	 * @param deliveryQuery
+	 *            the deliveries to make.
+	 * @throws IllegalArgumentException
+	 *             if there are more than MAX_DELIVERIES deliveries
+	 */
+	public HeldKarpSolver(Double[][] costsAdjacencyMatrix, DeliveryQuery deliveryQuery) {
+		if (costsAdjacencyMatrix.length - 1 > MAX_DELIVERIES) {
+			throw new IllegalArgumentException("Too many deliveries for the Held-Karp solver : "
+					+ (costsAdjacencyMatrix.length - 1));
+		}
+		problem = new TourProblem(costsAdjacencyMatrix, deliveryQuery);
+	}
+
+	/**
+	 * Gives the memory needed to solve a tour
+	 * 
+	 * @param passagePoints
+	 *            the number of passage points, warehouse included
+	 * @return the number of bytes of the states, Long.MAX_VALUE if there are
+	 *         more than MAX_DELIVERIES deliveries
+	 */
+	static long memoryNeeded(int passagePoints) {
+		int deliveries = passagePoints - 1;
+		if (deliveries > MAX_DELIVERIES) {
+			return Long.MAX_VALUE;
+		}
+		return (1L << deliveries) * deliveries * STATE_SIZE;
+	}
+
+	/**
+	 * Gives the solver a tour known in advance : the states reached after the
+	 * time at which it ends are not extended
+	 * 
+	 * @param solution
+	 *            the passage points in the order of visit, starting with 0
+	 *            (the warehouse), ignored if it is not a valid tour
+	 */
+	@Override
+	public void setInitialSolution(ArrayList<Integer> solution) {
+		initialSolution = solution;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.hexagone.delivery.algo.TourSolver#computeSolution()
+	 */
+	@Override
+	public void computeSolution() {
+		bestSolution.clear();
+		exploredStates = 0;
+		limitReached = false;
+		long start = System.currentTimeMillis();
+		int n = problem.getNumberOfIntersections() - 1;
+		if (n == 0) {
+			bestSolution.add(0);
+			bestSolutionCost = 0;
+			return;
+		}
+		/** As the times only grow, a later state cannot beat the initial solution */
+		long upperBound = problem.endTime(initialSolution);
+		bestSolutionCost = upperBound;
+		if (upperBound < 0) {
+			upperBound = Long.MAX_VALUE;
+		}
+
+		/**
+		 * The deliveries are numbered from 0 to n-1 in the states, passage
+		 * point i+1 being delivery i. The state (mask, last) is at index
+		 * mask * n + last.
+		 */
+		int full = (1 << n) - 1;
+		int[] time = new int[(full + 1) * n];
+		byte[] previous = new byte[(full + 1) * n];
+		Arrays.fill(time, UNREACHED);
+
+		for (int first = 0; first < n; first++) {
+			long t = problem.leave(0, 0, first + 1);
+			if (problem.reachable(0, first + 1) && t < UNREACHED) {
+				time[(1 << first) * n + first] = (int) t;
+			}
+		}
+
+		long explored = 0;
+		for (int mask = 1; mask < full; mask++) {
+			if (mask % POLICY_CHECK_INTERVAL == 0
+					&& policy.limitReached(System.currentTimeMillis() - start, explored, -1)) {
+				limitReached = true;
+			}
+			if (cancelled || limitReached) { // The initial solution is the best one known
+				if (upperBound < Long.MAX_VALUE) {
+					bestSolution.addAll(initialSolution);
+				}
+				return;
+			}
+			exploredStates = explored;
+			for (int last = 0; last < n; last++) {
+				int t = time[mask * n + last];
+				if (t == UNREACHED) {
+					continue;
+				}
+				explored++;
+				if (!problem.inTime(last + 1, t) || t >= upperBound) {
+					continue;
+				}
+				for (int next = 0; next < n; next++) {
+					if ((mask & (1 << next)) != 0 || !problem.reachable(last + 1, next + 1)) {
+						continue;
+					}
+					long u = problem.leave(t, last + 1, next + 1);
+					int state = (mask | (1 << next)) * n + next;
+					if (u < time[state]) {
+						time[state] = (int) u;
+						previous[state] = (byte) (last + 1);
+					}
+				}
+			}
+		}
+
+		/** Going back to the warehouse from the last delivery */
+		int[][] costs = problem.getCosts();
+		long bestCost = Long.MAX_VALUE;
+		int bestLast = -1;
+		for (int last = 0; last < n; last++) {
+			int t = time[full * n + last];
+			if (t == UNREACHED) {
+				continue;
+			}
+			explored++;
+			if (!problem.inTime(last + 1, t) || !problem.reachable(last + 1, 0)) {
+				continue;
+			}
+			long cost = (long) t + costs[last + 1][0];
+			if (cost < bestCost && cost < upperBound) {
+				bestCost = cost;
+				bestLast = last;
+			}
+		}
+		exploredStates = explored;
+		if (bestLast < 0) { // No better tour respects the delivery windows
+			if (upperBound < Long.MAX_VALUE) {
+				bestSolution.addAll(initialSolution);
+			}
+			return;
+		}
+
+		int[] order = new int[n];
+		int mask = full;
+		int last = bestLast;
+		for (int k = n - 1; k >= 0; k--) {
+			order[k] = last + 1;
+			int before = previous[mask * n + last] - 1;
+			mask &= ~(1 << last);
+			last = before;
+		}
+		bestSolution.add(0);
+		for (int intersection : order) {
+			bestSolution.add(intersection);
+		}
+		bestSolutionCost = bestCost;
+		if (solutionListener != null) {
+			solutionListener.solutionImproved(new ArrayList<Integer>(bestSolution), bestCost,
+					System.currentTimeMillis());
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.hexagone.delivery.algo.TourSolver#getBestSolution()
+	 */
+	@Override
+	public ArrayList<Integer> getBestSolution() {
+		return bestSolution;
+	}
+
+	/**
+	 * The dynamic programming goes to the end, unless it is cancelled or a
+	 * limit of the policy is reached
+	 * 
+	 * @return true if the computation was stopped
+	 */
+	@Override
+	public Boolean timeLimitReached() {
+		return cancelled || limitReached;
+	}
+
+	/**
+	 * Gives the number of states reached by the last computation
+	 * 
+	 * @return the number of states
+	 */
+	@Override
+	public long getExploredNodesNumber() {
+		return exploredStates;
+	}
+
+	/**
+	 * The cost of the initial solution until the end of the computation, as
+	 * the states give no tour before it
+	 * 
+	 * @see com.hexagone.delivery.algo.TourSolver#getBestSolutionCost()
+	 */
+	@Override
+	public long getBestSolutionCost() {
+		return bestSolutionCost;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.hexagone.delivery.algo.TourSolver#setSolutionListener(com.hexagone.delivery.algo.SolutionListener)
+	 */
+	@Override
+	public void setSolutionListener(SolutionListener listener) {
+		solutionListener = listener;
+	}
+
+	/**
+	 * Only the time and node limits apply : the states give no tour before the
+	 * end, so there is neither a gap nor improvements to watch
+	 * 
+	 * @see com.hexagone.delivery.algo.TourSolver#setSolvePolicy(com.hexagone.delivery.algo.SolvePolicy)
+	 */
+	@Override
+	public void setSolvePolicy(SolvePolicy policy) {
+		this.policy = policy;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.hexagone.delivery.algo.TourSolver#cancel()
+	 */
+	@Override
+	public void cancel() {
+		cancelled = true;
+	}
+}
@@ -0,0 +1,712 @@
+package com.hexagone.delivery.algo;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import com.hexagone.delivery.models.DeliveryQuery;
+
+/**
+ * This class computes a good tour quickly, for the delivery rounds too large
+ * for the exact solvers, or as the initial solution of an exact solver. It
+ * gives no guarantee of optimality.
+ * 
+ * The tour is built greedily, then improved by local search : 2-opt moves
+ * (reversing a part of the tour) and Or-opt moves (moving one to three
+ * consecutive deliveries elsewhere in the tour). A move is kept if it makes
+ * fewer deliveries late, or as many and gets back to the warehouse earlier,
+ * so the delivery windows are respected whenever the search finds a way to.
+ * Going to a passage point that cannot be reached makes the tour late by
+ * TourProblem.UNREACHABLE, so such a tour is left as well, and never given
+ * back.
+ * Until the time limit, the best tour is then perturbed at random and
+ * improved again (iterated local search).
+ * 
+ * A move is evaluated from the times of the current tour at the first
+ * delivery it changes, and only as far as needed : the parts without windows
+ * are crossed with sums kept along the current tour, and the end of the tour
+ * is not gone through again once the move gets there no earlier and no less
+ * late, or without windows left.
+ */
+class HeuristicTSPSolver implements TourSolver {
+
+	/** The perturbations are drawn from a fixed seed, to get the same tours */
+	private static final long SEED = 42;
+	/** Below this number of deliveries, the tour cannot be perturbed */
+	private static final int PERTURBATION_MIN_DELIVERIES = 8;
+	/** Longest sequence of deliveries moved by an Or-opt move */
+	private static final int OR_OPT_MAX_LENGTH = 3;
+
+	private TourProblem problem;
+	private long timeLimit = SolvePolicy.NO_LIMIT;
+	private boolean iterated = true;
+	/** Time at which the last computation started */
+	private long start;
+	private ArrayList<Integer> bestSolution = new ArrayList<Integer>();
+	private ArrayList<Integer> initialSolution;
+	/** Number of tours evaluated by the last computation */
+	private volatile long evaluatedTours;
+	/** End of the best tour respecting the windows found so far, -1 if none */
+	private volatile long bestSolutionCost = -1;
+	private volatile boolean cancelled;
+	private SolvePolicy policy = new SolvePolicy();
+	private SolutionListener solutionListener;
+
+	/**
+	 * The tours are arrays of the deliveries (passage points 1 to n-1) in the
+	 * order of visit, the warehouse being implicit at both ends
+	 */
+	private int[] current;
+	private int[] candidate;
+	/** How late the current tour is, summed over its deliveries, in seconds */
+	private long currentLateness;
+	/** Time at which the current tour gets back to the warehouse */
+	private long currentEnd;
+	/** Lateness and end of the last tour evaluated */
+	private long lateness;
+	private long end;
+
+	/**
+	 * Times and lateness of the current tour, so that a move is evaluated from
+	 * the first delivery it changes : the time at which each delivery is left,
+	 * the lateness summed up to it, the number of deliveries with a window
+	 * before it, and the travel and delivery times and the legs that cannot be
+	 * taken summed up to it along the tour and against it
+	 */
+	private long[] leaveTimes;
+	private long[] latenesses;
+	private int[] windowsBefore;
+	private long[] forwardTimes;
+	private long[] backwardTimes;
+	private int[] forwardUnreachable;
+	private int[] backwardUnreachable;
+	/** State of the tour being evaluated : time, lateness and last delivery */
+	private long walkTime;
+	private long walkLateness;
+	private int walkPosition;
+
+	/**
+	 * Allows to create an instance of heuristic solver to compute a tour
+	 * 
+	 * @param costsAdjacencyMatrix
+	 *            the adjacency matrix of the graph. costsAdjacencyMatrix[i][j]
+	 *            represents the cost going from i to j.
+	 * @param deliveryQuery
+	 *            the deliveries to make.
+	 */
+	public HeuristicTSPSolver(Double[][] costsAdjacencyMatrix, DeliveryQuery deliveryQuery) {
+		problem = new TourProblem(costsAdjacencyMatrix, deliveryQuery);
+	}
+
+	/**
+	 * Allows to choose how long the tour keeps being improved. The limit
+	 * applies to the first local search as well : when it is reached, the
+	 * best tour found so far is given back.
+	 * 
+	 * @param timeLimit
+	 *            the time limit in milliseconds, SolvePolicy.NO_LIMIT by
+	 *            default
+	 */
+	public void setTimeLimit(long timeLimit) {
+		this.timeLimit = timeLimit;
+	}
+
+	/**
+	 * Allows to stop after the first local search, to get a local optimum in
+	 * a few milliseconds instead of perturbing it until the time limit
+	 * 
+	 * @param iterated
+	 *            false to stop after the first local search, true by default
+	 */
+	public void setIteratedSearch(boolean iterated) {
+		this.iterated = iterated;
+	}
+
+	/**
+	 * The initial solution is improved along with the greedy tours
+	 * 
+	 * @param solution
+	 *            the passage points in the order of visit, starting with 0
+	 *            (the warehouse), ignored if it is not a valid tour
+	 */
+	@Override
+	public void setInitialSolution(ArrayList<Integer> solution) {
+		initialSolution = solution;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.hexagone.delivery.algo.TourSolver#computeSolution()
+	 */
+	@Override
+	public void computeSolution() {
+		start = System.currentTimeMillis();
+		long limit = Math.min(timeLimit, policy.getTimeLimit());
+		long deadline = limit > Long.MAX_VALUE - start ? Long.MAX_VALUE : start + limit;
+		bestSolution.clear();
+		evaluatedTours = 0;
+		bestSolutionCost = -1;
+		int m = problem.getNumberOfIntersections() - 1;
+		if (m == 0) {
+			bestSolution.add(0);
+			bestSolutionCost = 0;
+			return;
+		}
+
+		current = new int[m];
+		candidate = new int[m];
+		currentLateness = Long.MAX_VALUE;
+		currentEnd = Long.MAX_VALUE;
+		nearestNeighbour(candidate);
+		keepIfBetter();
+		earliestDeadline(candidate);
+		keepIfBetter();
+		if (problem.endTime(initialSolution) >= 0) {
+			for (int i = 0; i < m; i++) {
+				candidate[i] = initialSolution.get(i + 1);
+			}
+			keepIfBetter();
+		}
+		descend(deadline);
+
+		int[] best = current.clone();
+		long bestLateness = currentLateness;
+		long bestEnd = currentEnd;
+		if (bestLateness == 0) {
+			publish(best, bestEnd);
+		}
+		Random random = new Random(SEED);
+		long lastImprovement = System.currentTimeMillis();
+		while (iterated && m >= PERTURBATION_MIN_DELIVERIES && !cancelled && System.currentTimeMillis() < deadline
+				&& !policy.limitReached(System.currentTimeMillis() - start, evaluatedTours,
+						System.currentTimeMillis() - lastImprovement)) {
+			doubleBridge(best, current, random);
+			evaluate(current, Long.MAX_VALUE, Long.MAX_VALUE);
+			currentLateness = lateness;
+			currentEnd = end;
+			descend(deadline);
+			if (currentLateness < bestLateness || (currentLateness == bestLateness && currentEnd < bestEnd)) {
+				System.arraycopy(current, 0, best, 0, m);
+				bestLateness = currentLateness;
+				bestEnd = currentEnd;
+				lastImprovement = System.currentTimeMillis();
+				if (bestLateness == 0) {
+					publish(best, bestEnd);
+				}
+			}
+		}
+
+		if (bestLateness == 0) { // Only the tours respecting the windows are given back
+			bestSolution.add(0);
+			for (int delivery : best) {
+				bestSolution.add(delivery);
+			}
+		}
+	}
+
+	/**
+	 * Improves the current tour until no 2-opt or Or-opt move improves it
+	 * 
+	 * @param deadline
+	 *            the time at which the search stops anyway
+	 */
+	private void descend(long deadline) {
+		prepare();
+		boolean improved = true;
+		while (improved) {
+			improved = twoOpt(deadline) | orOpt(deadline);
+		}
+	}
+
+	/**
+	 * Makes a tour respecting the windows the best one found so far
+	 * 
+	 * @param tour
+	 *            the deliveries in the order of visit
+	 * @param tourEnd
+	 *            the time at which the tour gets back to the warehouse
+	 */
+	private void publish(int[] tour, long tourEnd) {
+		bestSolutionCost = tourEnd;
+		if (solutionListener != null) {
+			ArrayList<Integer> order = new ArrayList<Integer>();
+			order.add(0);
+			for (int delivery : tour) {
+				order.add(delivery);
+			}
+			solutionListener.solutionImproved(order, tourEnd, System.currentTimeMillis());
+		}
+	}
+
+	/**
+	 * Tells if the search has to stop
+	 * 
+	 * @param deadline
+	 *            the time at which the search stops
+	 * @return true if the deadline is passed, a limit of the policy is reached
+	 *         or the computation was cancelled
+	 */
+	private boolean stopped(long deadline) {
+		long now = System.currentTimeMillis();
+		return cancelled || now > deadline || policy.limitReached(now - start, evaluatedTours, -1);
+	}
+
+	/**
+	 * Tries to reverse each part of the current tour
+	 * 
+	 * @return true if the current tour was improved
+	 */
+	private boolean twoOpt(long deadline) {
+		int m = current.length;
+		boolean improved = false;
+		for (int i = 0; i < m - 1; i++) {
+			if (stopped(deadline)) {
+				return false;
+			}
+			for (int j = i + 1; j < m; j++) {
+				evaluatedTours++;
+				startWalk(i);
+				if (walk(i, j, true) && finishWalk(j + 1)) {
+					System.arraycopy(current, 0, candidate, 0, m);
+					for (int a = i, b = j; a < b; a++, b--) {
+						candidate[a] = current[b];
+						candidate[b] = current[a];
+					}
+					keepCandidate();
+					improved = true;
+				}
+			}
+		}
+		return improved;
+	}
+
+	/**
+	 * Tries to move each sequence of one to OR_OPT_MAX_LENGTH deliveries of
+	 * the current tour to each other position
+	 * 
+	 * @return true if the current tour was improved
+	 */
+	private boolean orOpt(long deadline) {
+		int m = current.length;
+		boolean improved = false;
+		for (int length = 1; length <= OR_OPT_MAX_LENGTH && length < m; length++) {
+			for (int i = 0; i + length <= m; i++) {
+				if (stopped(deadline)) {
+					return false;
+				}
+				for (int position = 0; position + length <= m; position++) {
+					if (position == i) {
+						continue;
+					}
+					evaluatedTours++;
+					boolean better;
+					if (position < i) {
+						startWalk(position);
+						better = walk(i, i + length - 1, false) && walk(position, i - 1, false)
+								&& finishWalk(i + length);
+					} else {
+						startWalk(i);
+						better = walk(i + length, position + length - 1, false) && walk(i, i + length - 1, false)
+								&& finishWalk(position + length);
+					}
+					if (better) {
+						moveSequence(current, candidate, i, length, position);
+						keepCandidate();
+						improved = true;
+					}
+				}
+			}
+		}
+		return improved;
+	}
+
+	/**
+	 * Copies a tour, moving a sequence of deliveries
+	 * 
+	 * @param from
+	 *            the tour to copy
+	 * @param to
+	 *            filled with the new tour
+	 * @param start
+	 *            the index of the first delivery of the sequence
+	 * @param length
+	 *            the number of deliveries of the sequence
+	 * @param position
+	 *            the index of the sequence in the new tour
+	 */
+	private static void moveSequence(int[] from, int[] to, int start, int length, int position) {
+		int others = from.length - length;
+		int k = 0;
+		for (int r = 0; r <= others; r++) {
+			if (r == position) {
+				System.arraycopy(from, start, to, k, length);
+				k += length;
+			}
+			if (r < others) {
+				to[k++] = from[r < start ? r : r + length];
+			}
+		}
+	}
+
+	/**
+	 * Replaces the current tour by a random neighbour : the tour is cut in
+	 * four parts A B C D, which are put back in the order A C B D
+	 */
+	private static void doubleBridge(int[] from, int[] to, Random random) {
+		int m = from.length;
+		int a = 1 + random.nextInt(m - 3);
+		int b = a + 1 + random.nextInt(m - a - 2);
+		int c = b + 1 + random.nextInt(m - b - 1);
+		int k = 0;
+		System.arraycopy(from, 0, to, k, a);
+		k += a;
+		System.arraycopy(from, b, to, k, c - b);
+		k += c - b;
+		System.arraycopy(from, a, to, k, b - a);
+		k += b - a;
+		System.arraycopy(from, c, to, k, m - c);
+	}
+
+	/**
+	 * Builds a tour going each time to the delivery that can be left first
+	 * among the ones whose window is not over
+	 */
+	private void nearestNeighbour(int[] tour) {
+		int m = tour.length;
+		boolean[] done = new boolean[m + 1];
+		int position = 0;
+		long time = 0;
+		for (int k = 0; k < m; k++) {
+			int next = -1;
+			long nextTime = Long.MAX_VALUE;
+			boolean nextInTime = false;
+			for (int d = 1; d <= m; d++) {
+				if (done[d]) {
+					continue;
+				}
+				long leaving = problem.leave(time, position, d);
+				boolean inTime = problem.reachable(position, d) && problem.inTime(d, leaving);
+				if ((inTime && !nextInTime) || (inTime == nextInTime && leaving < nextTime)) {
+					next = d;
+					nextTime = leaving;
+					nextInTime = inTime;
+				}
+			}
+			tour[k] = next;
+			done[next] = true;
+			position = next;
+			time = nextTime;
+		}
+	}
+
+	/**
+	 * Builds a tour visiting the deliveries by end of window, then by start of
+	 * window
+	 */
+	private void earliestDeadline(int[] tour) {
+		int[] windowStart = problem.getWindowStarts();
+		int[] windowEnd = problem.getWindowEnds();
+		int m = tour.length;
+		for (int k = 0; k < m; k++) {
+			int d = k + 1;
+			int j = k;
+			while (j > 0 && (windowEnd[d] < windowEnd[tour[j - 1]]
+					|| (windowEnd[d] == windowEnd[tour[j - 1]] && windowStart[d] < windowStart[tour[j - 1]]))) {
+				tour[j] = tour[j - 1];
+				j--;
+			}
+			tour[j] = d;
+		}
+	}
+
+	/**
+	 * Makes the candidate tour the current one if it is better
+	 * 
+	 * @return true if the candidate was kept
+	 */
+	private boolean keepIfBetter() {
+		if (!evaluate(candidate, currentLateness, currentEnd)) {
+			return false;
+		}
+		keepCandidate();
+		return true;
+	}
+
+	/**
+	 * Makes the candidate tour the current one, its lateness and end being in
+	 * the fields lateness and end
+	 */
+	private void keepCandidate() {
+		int[] previous = current;
+		current = candidate;
+		candidate = previous;
+		currentLateness = lateness;
+		currentEnd = end;
+		prepare();
+	}
+
+	/**
+	 * Computes the times and lateness of the current tour used to evaluate
+	 * the moves
+	 */
+	private void prepare() {
+		int m = current.length;
+		if (leaveTimes == null || leaveTimes.length != m) {
+			leaveTimes = new long[m];
+			latenesses = new long[m];
+			windowsBefore = new int[m + 1];
+			forwardTimes = new long[m];
+			backwardTimes = new long[m];
+			forwardUnreachable = new int[m];
+			backwardUnreachable = new int[m];
+		}
+		int[][] costs = problem.getCosts();
+		int[] stayTime = problem.getStayTimes();
+		int[] windowStart = problem.getWindowStarts();
+		int[] windowEnd = problem.getWindowEnds();
+		walkTime = 0;
+		walkLateness = 0;
+		walkPosition = 0;
+		for (int k = 0; k < m; k++) {
+			int delivery = current[k];
+			step(delivery);
+			leaveTimes[k] = walkTime;
+			latenesses[k] = walkLateness;
+			boolean window = windowStart[delivery] != TourProblem.NO_START || windowEnd[delivery] != TourProblem.NO_END;
+			windowsBefore[k + 1] = windowsBefore[k] + (window ? 1 : 0);
+			if (k > 0) {
+				int previous = current[k - 1];
+				forwardTimes[k] = forwardTimes[k - 1] + costs[previous][delivery] + stayTime[delivery];
+				backwardTimes[k] = backwardTimes[k - 1] + costs[delivery][previous] + stayTime[previous];
+				forwardUnreachable[k] = forwardUnreachable[k - 1] + (problem.reachable(previous, delivery) ? 0 : 1);
+				backwardUnreachable[k] = backwardUnreachable[k - 1] + (problem.reachable(delivery, previous) ? 0 : 1);
+			}
+		}
+	}
+
+	/**
+	 * Starts the evaluation of a move from the state of the current tour
+	 * 
+	 * @param k
+	 *            the number of deliveries the move leaves at the start of the
+	 *            tour
+	 */
+	private void startWalk(int k) {
+		if (k == 0) {
+			walkTime = 0;
+			walkLateness = 0;
+			walkPosition = 0;
+		} else {
+			walkTime = leaveTimes[k - 1];
+			walkLateness = latenesses[k - 1];
+			walkPosition = current[k - 1];
+		}
+	}
+
+	/**
+	 * Goes to a delivery from the last one of the tour being evaluated
+	 */
+	private void step(int delivery) {
+		walkLateness += legLateness(walkPosition, delivery);
+		walkTime = problem.leave(walkTime, walkPosition, delivery);
+		if (!problem.inTime(delivery, walkTime)) {
+			walkLateness += walkTime - problem.getWindowEnds()[delivery] + 1;
+		}
+		walkPosition = delivery;
+	}
+
+	/**
+	 * Goes through a part of the current tour, from the last delivery of the
+	 * tour being evaluated. Without windows in the part, the time is given by
+	 * the sums of the current tour instead of going through it.
+	 * 
+	 * @param first
+	 *            the index of the first delivery of the part
+	 * @param last
+	 *            the index of the last delivery of the part
+	 * @param reversed
+	 *            true to go from the last delivery to the first one
+	 * @return false if the tour is already later than the current one
+	 */
+	private boolean walk(int first, int last, boolean reversed) {
+		if (windowsBefore[last + 1] == windowsBefore[first]) {
+			int entry = reversed ? current[last] : current[first];
+			long inside = reversed ? backwardTimes[last] - backwardTimes[first]
+					: forwardTimes[last] - forwardTimes[first];
+			int unreachable = reversed ? backwardUnreachable[last] - backwardUnreachable[first]
+					: forwardUnreachable[last] - forwardUnreachable[first];
+			walkLateness += legLateness(walkPosition, entry) + (long) TourProblem.UNREACHABLE * unreachable;
+			walkTime += problem.getCosts()[walkPosition][entry] + problem.getStayTimes()[entry] + inside;
+			walkPosition = reversed ? current[first] : current[last];
+			return true;
+		}
+		for (int k = first; k <= last; k++) {
+			step(current[reversed ? first + last - k : k]);
+			if (walkLateness > currentLateness) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Ends the evaluation of a move with the deliveries it leaves at the end
+	 * of the current tour. Once the tour being evaluated reaches them at the
+	 * same time as the current one, or later and as late, the rest of the
+	 * current tour tells how it ends.
+	 * 
+	 * @param k
+	 *            the index of the first delivery left at the end, the number
+	 *            of deliveries if there is none
+	 * @return true if the tour is strictly better than the current one, its
+	 *         lateness and end being then in the fields lateness and end
+	 */
+	private boolean finishWalk(int k) {
+		int m = current.length;
+		if (k < m) {
+			step(current[k]);
+			if (walkLateness > currentLateness) {
+				return false;
+			}
+			long shift = walkTime - leaveTimes[k];
+			if (shift == 0 || windowsBefore[m] == windowsBefore[k + 1]) {
+				/** The rest of the tour is only delayed or advanced */
+				lateness = walkLateness + currentLateness - latenesses[k];
+				end = currentEnd + shift;
+				return lateness < currentLateness || (lateness == currentLateness && end < currentEnd);
+			}
+			if (shift > 0 && walkLateness >= latenesses[k]) {
+				return false;
+			}
+			if (k + 1 < m && !walk(k + 1, m - 1, false)) {
+				return false;
+			}
+		}
+		lateness = walkLateness + legLateness(walkPosition, 0);
+		end = walkTime + problem.getCosts()[walkPosition][0];
+		return lateness < currentLateness || (lateness == currentLateness && end < currentEnd);
+	}
+
+	/**
+	 * Gives how late a leg makes the tour, whatever the windows
+	 * 
+	 * @return TourProblem.UNREACHABLE if the destination cannot be reached
+	 *         from the origin, 0 otherwise
+	 */
+	private long legLateness(int origin, int destination) {
+		return problem.reachable(origin, destination) ? 0 : TourProblem.UNREACHABLE;
+	}
+
+	/**
+	 * Computes the lateness and the end of a tour, stopping as soon as it
+	 * cannot be better than a given one : both only grow along the tour
+	 * 
+	 * @param tour
+	 *            the tour to evaluate
+	 * @param maxLateness
+	 *            the lateness of the tour to beat
+	 * @param maxEnd
+	 *            the end of the tour to beat
+	 * @return true if the tour is strictly better, its lateness and end being
+	 *         then in the fields lateness and end
+	 */
+	private boolean evaluate(int[] tour, long maxLateness, long maxEnd) {
+		evaluatedTours++;
+		int[] windowEnd = problem.getWindowEnds();
+		long time = 0;
+		long late = 0;
+		int position = 0;
+		for (int delivery : tour) {
+			late += legLateness(position, delivery);
+			time = problem.leave(time, position, delivery);
+			if (!problem.inTime(delivery, time)) {
+				late += time - windowEnd[delivery] + 1;
+			}
+			if (late > maxLateness || (late == maxLateness && time >= maxEnd)) {
+				return false;
+			}
+			position = delivery;
+		}
+		late += legLateness(position, 0);
+		time += problem.getCosts()[position][0];
+		if (late > maxLateness || (late == maxLateness && time >= maxEnd)) {
+			return false;
+		}
+		lateness = late;
+		end = time;
+		return true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.hexagone.delivery.algo.TourSolver#getBestSolution()
+	 */
+	@Override
+	public ArrayList<Integer> getBestSolution() {
+		return bestSolution;
+	}
+
+	/**
+	 * The heuristic never proves that its tour is the best one
+	 * 
+	 * @return true
+	 */
+	@Override
+	public Boolean timeLimitReached() {
+		return true;
+	}
+
+	/**
+	 * Gives the number of tours evaluated by the last computation
+	 * 
+	 * @return the number of tours
+	 */
+	@Override
+	public long getExploredNodesNumber() {
+		return evaluatedTours;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.hexagone.delivery.algo.TourSolver#getBestSolutionCost()
+	 */
+	@Override
+	public long getBestSolutionCost() {
+		return bestSolutionCost;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.hexagone.delivery.algo.TourSolver#setSolutionListener(com.hexagone.delivery.algo.SolutionListener)
+	 */
+	@Override
+	public void setSolutionListener(SolutionListener listener) {
+		solutionListener = listener;
+	}
+
+	/**
+	 * The time limit of the policy caps the one of setTimeLimit. The limits
+	 * are checked during the local searches as well as between two
+	 * perturbations ; the gap is ignored, as there is no lower bound.
+	 * 
+	 * @see com.hexagone.delivery.algo.TourSolver#setSolvePolicy(com.hexagone.delivery.algo.SolvePolicy)
+	 */
+	@Override
+	public void setSolvePolicy(SolvePolicy policy) {
+		this.policy = policy;
+	}
+
+	/**
+	 * Stops the local search, even the first one : the best tour found so far
+	 * is given back if it respects the windows
+	 * 
+	 * @see com.hexagone.delivery.algo.TourSolver#cancel()
+	 */
+	@Override
+	public void cancel() {
+		cancelled = true;
+	}
+}
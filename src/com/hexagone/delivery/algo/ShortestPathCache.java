@@ -0,0 +1,189 @@
+package com.hexagone.delivery.algo;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import com.hexagone.delivery.models.CompactGraph;
+
+/**
+ * This class keeps the results of the Dijkstra searches made on the maps, so
+ * that computing a tour again after a delivery was added, removed or modified
+ * only searches from the new passage points. It is shared by all the
+ * computations of the application (singleton) and can be used from several
+ * threads.
+ * 
+ * For each (map, source intersection) searched, it keeps the cost of going to
+ * every intersection of the map and the tree of the shortest paths. A map is
+ * designated by the fingerprint of its CompactGraph along with its numbers of
+ * intersections and roads, so a map loaded again from the same file reuses
+ * the results of the previous one. When the memory used goes over the budget,
+ * the least recently used results are dropped.
+ */
+public class ShortestPathCache {
+
+	/** Memory used by default : 64 MB, at most an eighth of the heap */
+	private static final long DEFAULT_MEMORY_BUDGET = Math.min(64L * 1024 * 1024,
+			Runtime.getRuntime().maxMemory() / 8);
+
+	private static ShortestPathCache instance;
+
+	/** The results, from the least recently used to the most recently used */
+	private LinkedHashMap<Key, ShortestPaths> entries = new LinkedHashMap<Key, ShortestPaths>(16, 0.75f, true);
+	private long memoryBudget = DEFAULT_MEMORY_BUDGET;
+	private long memoryUsed;
+	private long hits;
+	private long misses;
+
+	/**
+	 * Gives the cache shared by the whole application
+	 * 
+	 * @return the only instance of the cache
+	 */
+	public static synchronized ShortestPathCache getInstance() {
+		if (instance == null) {
+			instance = new ShortestPathCache();
+		}
+		return instance;
+	}
+
+	/**
+	 * Creates an empty cache. The application uses {@link #getInstance()}.
+	 */
+	ShortestPathCache() {
+	}
+
+	/**
+	 * Gives back the results of a search, and marks them as recently used
+	 * 
+	 * @param graph
+	 *            the CompactGraph searched
+	 * @param source
+	 *            the index of the source intersection in the CompactGraph
+	 * @return the results, null if they are not in the cache
+	 */
+	synchronized ShortestPaths get(CompactGraph graph, int source) {
+		ShortestPaths paths = entries.get(new Key(graph, source));
+		if (paths == null) {
+			misses++;
+		} else {
+			hits++;
+		}
+		return paths;
+	}
+
+	/**
+	 * Stores the results of a search, dropping the least recently used ones if
+	 * the memory budget is exceeded
+	 * 
+	 * @param graph
+	 *            the CompactGraph searched
+	 * @param source
+	 *            the index of the source intersection in the CompactGraph
+	 * @param paths
+	 *            the results of the search from the source
+	 */
+	synchronized void put(CompactGraph graph, int source, ShortestPaths paths) {
+		ShortestPaths previous = entries.put(new Key(graph, source), paths);
+		if (previous != null) {
+			memoryUsed -= previous.getMemorySize();
+		}
+		memoryUsed += paths.getMemorySize();
+		evict();
+	}
+
+	/**
+	 * Allows to choose the memory the cache may use
+	 * 
+	 * @param memoryBudget
+	 *            the number of bytes, 0 to keep nothing
+	 */
+	public synchronized void setMemoryBudget(long memoryBudget) {
+		this.memoryBudget = memoryBudget;
+		evict();
+	}
+
+	/**
+	 * Tells if results of a given size can be kept together
+	 * 
+	 * @param bytes
+	 *            the number of bytes of the results
+	 * @return true if they fit in the memory budget
+	 */
+	synchronized boolean canHold(long bytes) {
+		return bytes <= memoryBudget;
+	}
+
+	/**
+	 * Drops all the results
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		memoryUsed = 0;
+	}
+
+	/**
+	 * @return the number of searches found in the cache
+	 */
+	public synchronized long getHitsNumber() {
+		return hits;
+	}
+
+	/**
+	 * @return the number of searches that were not in the cache
+	 */
+	public synchronized long getMissesNumber() {
+		return misses;
+	}
+
+	/**
+	 * @return the approximate number of bytes used by the results
+	 */
+	public synchronized long getMemoryUsed() {
+		return memoryUsed;
+	}
+
+	/**
+	 * Drops the least recently used results until the memory budget is
+	 * respected
+	 */
+	private void evict() {
+		Iterator<ShortestPaths> iterator = entries.values().iterator();
+		while (memoryUsed > memoryBudget && iterator.hasNext()) {
+			memoryUsed -= iterator.next().getMemorySize();
+			iterator.remove();
+		}
+	}
+
+	/**
+	 * Identifies the search from one intersection of one map
+	 */
+	private static final class Key {
+
+		private final long fingerprint;
+		private final int intersections;
+		private final int roads;
+		private final int source;
+
+		Key(CompactGraph graph, int source) {
+			this.fingerprint = graph.getFingerprint();
+			this.intersections = graph.getIntersectionsNumber();
+			this.roads = graph.getRoadsNumber();
+			this.source = source;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * Long.hashCode(fingerprint) + source;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return fingerprint == other.fingerprint && intersections == other.intersections && roads == other.roads
+					&& source == other.source;
+		}
+	}
+}
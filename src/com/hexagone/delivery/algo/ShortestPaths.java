@@ -0,0 +1,69 @@
+package com.hexagone.delivery.algo;
+
+/**
+ * This class holds the results of a complete Dijkstra search from one
+ * intersection : the cost of going to every intersection of the map and the
+ * tree of the shortest paths. The intersections are designated by their index
+ * in the CompactGraph searched. The arrays are shared, they must not be
+ * modified.
+ */
+class ShortestPaths {
+
+	/** Bytes used by an instance besides its arrays */
+	private static final int OVERHEAD = 64;
+
+	private final double[] cost;
+	private final int[] previous;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param cost
+	 *            the cost of going to each intersection, infinite if it cannot
+	 *            be reached
+	 * @param previous
+	 *            the intersection one comes from on the shortest path towards
+	 *            each intersection, -1 for the source and the intersections
+	 *            that cannot be reached
+	 */
+	ShortestPaths(double[] cost, int[] previous) {
+		this.cost = cost;
+		this.previous = previous;
+	}
+
+	/**
+	 * @param intersection
+	 *            the index of the destination intersection
+	 * @return the cost of the shortest path in seconds, infinite if the
+	 *         intersection cannot be reached
+	 */
+	double getCost(int intersection) {
+		return cost[intersection];
+	}
+
+	/**
+	 * @return the index of the previous intersection of each intersection on
+	 *         the shortest paths
+	 */
+	int[] getPrevious() {
+		return previous;
+	}
+
+	/**
+	 * @return the approximate number of bytes used by these results
+	 */
+	long getMemorySize() {
+		return getMemorySize(cost.length);
+	}
+
+	/**
+	 * Gives the memory used by the results of a search on a map
+	 * 
+	 * @param intersections
+	 *            the number of intersections of the map
+	 * @return the approximate number of bytes
+	 */
+	static long getMemorySize(int intersections) {
+		return OVERHEAD + 12L * intersections;
+	}
+}
@@ -0,0 +1,27 @@
+package com.hexagone.delivery.algo;
+
+import java.util.ArrayList;
+
+/**
+ * This interface allows to follow the tours found during a computation,
+ * without waiting for its end
+ */
+public interface SolutionListener {
+
+	/**
+	 * Called each time a better tour is found. It is called on the thread of
+	 * the computation, and must return quickly.
+	 * 
+	 * @param order
+	 *            the tour in the order of visit : the indexes of the passage
+	 *            points, starting with 0 (the warehouse), when given by a
+	 *            solver ; the identifiers of the intersections, starting and
+	 *            ending with the warehouse, when given by DeliveryComputer
+	 * @param cost
+	 *            the duration of the tour in seconds
+	 * @param timestamp
+	 *            the time at which the tour was found, in milliseconds since
+	 *            the epoch
+	 */
+	void solutionImproved(ArrayList<Integer> order, long cost, long timestamp);
+}
@@ -0,0 +1,142 @@
+package com.hexagone.delivery.algo;
+
+/**
+ * This class describes when the solvers stop searching for a better tour. The
+ * search stops at the first of these rules that applies :
+ * <ul>
+ * <li>the time limit is reached</li>
+ * <li>the node limit is reached, i.e. enough nodes of the search tree (or
+ * states, or tours) were explored</li>
+ * <li>the best tour found is within the target gap of a lower bound of the
+ * best tour</li>
+ * <li>no better tour was found for the stagnation time</li>
+ * </ul>
+ * The limits apply to each solver run by a computation. The solvers check them
+ * every few thousand nodes, so they may be exceeded by a few milliseconds.
+ */
+public class SolvePolicy {
+
+	/** Time limit by default, in milliseconds */
+	public static final long DEFAULT_TIME_LIMIT = 30000;
+	/** Value of a limit that never applies */
+	public static final long NO_LIMIT = Long.MAX_VALUE;
+
+	private long timeLimit = DEFAULT_TIME_LIMIT;
+	private long nodeLimit = NO_LIMIT;
+	private double targetGap = 0;
+	private long stagnationTime = NO_LIMIT;
+
+	/**
+	 * Creates the policy used by default : a time limit of 30 s, and no other
+	 * rule than finding a tour proven to be the best one
+	 */
+	public SolvePolicy() {
+	}
+
+	/**
+	 * @return the time limit in milliseconds
+	 */
+	public long getTimeLimit() {
+		return timeLimit;
+	}
+
+	/**
+	 * Allows to choose how long a solver may search
+	 * 
+	 * @param timeLimit
+	 *            the time limit in milliseconds, NO_LIMIT to search until the
+	 *            best tour is found
+	 */
+	public void setTimeLimit(long timeLimit) {
+		this.timeLimit = timeLimit;
+	}
+
+	/**
+	 * @return the number of nodes after which a solver stops
+	 */
+	public long getNodeLimit() {
+		return nodeLimit;
+	}
+
+	/**
+	 * Allows to bound the work of a solver independently of the speed of the
+	 * machine, so that a computation gives the same tour on any machine
+	 * 
+	 * @param nodeLimit
+	 *            the number of nodes, states or tours explored after which the
+	 *            solver stops, NO_LIMIT for no limit
+	 */
+	public void setNodeLimit(long nodeLimit) {
+		this.nodeLimit = nodeLimit;
+	}
+
+	/**
+	 * @return the relative gap under which the search stops
+	 */
+	public double getTargetGap() {
+		return targetGap;
+	}
+
+	/**
+	 * Allows to stop the search once the best tour found is known to be close
+	 * enough to the best tour. The lower bound used is the bound of the root
+	 * of the search tree, which only the branch and bound computes.
+	 * 
+	 * @param targetGap
+	 *            the relative gap, e.g. 0.05 to stop when the tour is at most
+	 *            5 % longer than the lower bound ; 0 to only stop when the
+	 *            tour is proven to be the best one
+	 */
+	public void setTargetGap(double targetGap) {
+		this.targetGap = targetGap;
+	}
+
+	/**
+	 * @return the time without improvement after which the search stops, in
+	 *         milliseconds
+	 */
+	public long getStagnationTime() {
+		return stagnationTime;
+	}
+
+	/**
+	 * Allows to stop the search when it stops improving the tour. The rule
+	 * only applies once a tour is found.
+	 * 
+	 * @param stagnationTime
+	 *            the time in milliseconds, NO_LIMIT for no limit
+	 */
+	public void setStagnationTime(long stagnationTime) {
+		this.stagnationTime = stagnationTime;
+	}
+
+	/**
+	 * Tells if the search has to stop
+	 * 
+	 * @param elapsedTime
+	 *            the time since the start of the search, in milliseconds
+	 * @param exploredNodes
+	 *            the number of nodes explored so far
+	 * @param sinceImprovement
+	 *            the time since the last improvement of the tour, in
+	 *            milliseconds, -1 if no tour was found yet
+	 * @return true if one of the limits is reached
+	 */
+	boolean limitReached(long elapsedTime, long exploredNodes, long sinceImprovement) {
+		return elapsedTime > timeLimit || exploredNodes >= nodeLimit
+				|| (sinceImprovement >= 0 && sinceImprovement > stagnationTime);
+	}
+
+	/**
+	 * Tells if a tour is close enough to a lower bound of the best tour
+	 * 
+	 * @param cost
+	 *            the cost of the tour
+	 * @param lowerBound
+	 *            the lower bound
+	 * @return true if the relative gap is at most the target gap
+	 */
+	boolean gapReached(long cost, long lowerBound) {
+		return cost <= lowerBound || cost - lowerBound <= targetGap * cost;
+	}
+}
@@ -1,41 +1,73 @@
 package com.hexagone.delivery.algo;
 
 import java.util.ArrayList;
-import java.util.Calendar;
-import java.util.Date;
-import java.util.GregorianCalendar;
-import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
 
-import com.hexagone.delivery.models.Delivery;
 import com.hexagone.delivery.models.DeliveryQuery;
 
 /**
  * This class provides the basic interface and implementation for the Traveling
- * Salesman Problem faced in this software
+ * Salesman Problem faced in this software.
+ * 
+ * The search runs on primitive state only, so that exploring a node of the
+ * search tree allocates nothing : times are counted in seconds since the
+ * departure from the warehouse (see {@link TourProblem}), the visited
+ * intersections are kept in a bitset and the path in an int stack.
+ * 
+ * The search can run on several threads : the first levels of the tree are
+ * split into subtrees explored by the tasks of a ForkJoinPool, which all prune
+ * with the cost of the best solution found so far by any of them.
  */
-abstract class TSPSolver {
+abstract class TSPSolver implements TourSolver {
 
-	private static final long TIMELIMIT = 30000;
+	/**
+	 * When the search runs on several threads, the first levels of the tree
+	 * are split until there are this many subtrees per thread
+	 */
+	private static final int SUBTREES_PER_THREAD = 16;
+	/** Number of nodes after which a search adds its count to exploredNodes */
+	private static final int EXPLORED_NODES_REPORT = 4096;
+	/** Number of nodes after which a search checks the limits of the policy */
+	private static final int POLICY_CHECK_INTERVAL = 1024;
 
 	private ArrayList<Integer> bestSolution = new ArrayList<Integer>();
-	private Calendar bestSolutionCost;
-	private Boolean timeLimitReached = false;
-
-	private DeliveryQuery deliveryQuery;
-	private Double[][] costs;
-	private Integer[] stayTime;
-
-	private ArrayList<Integer> unseenIntersections;
-	private ArrayList<Integer> seenIntersections;
+	private ArrayList<Integer> initialSolution;
+	/** Cost of the best solution, in seconds since the departure */
+	private AtomicLong bestSolutionCost = new AtomicLong(Long.MAX_VALUE);
+	private volatile Boolean timeLimitReached = false;
+	private volatile boolean cancelled;
+	/** Set when the search has to stop, by the policy or by cancel */
+	private volatile boolean stopped;
+	private SolutionListener solutionListener;
+	private SolvePolicy policy = new SolvePolicy();
+	/** Time at which the best solution was found */
+	private volatile long lastImprovement;
+	/** Lower bound of the cost of any tour, given by the root of the tree */
+	private long rootBound;
+	/** Number of nodes of the search tree explored by the last computation */
+	private AtomicLong exploredNodes = new AtomicLong();
+	private long tpsDebut;
+
+	private int parallelism = 1;
+	/** The nodes above this depth are split into subtrees */
+	private int splitDepth;
+
+	private TourProblem problem;
+	/** costs[i][j] = duration in seconds to go from i to j */
+	private int[][] costs;
+	private int[] stayTime;
 
 	/**
 	 * Gives back the best solution found so far during the computing of the TSP
 	 * problem
 	 * 
-	 * @return the best solution found so far
+	 * @return a copy of the best solution found so far
 	 */
-	public ArrayList<Integer> getBestSolution() {
-		return bestSolution;
+	@Override
+	public synchronized ArrayList<Integer> getBestSolution() {
+		return new ArrayList<Integer>(bestSolution);
 	}
 
 	/**
@@ -49,161 +81,481 @@ abstract class TSPSolver {
 		return timeLimitReached;
 	}
 
+	/**
+	 * Gives the number of nodes of the search tree that were explored during
+	 * the last computation, to compare the efficiency of the different bounds
+	 * and iterators
+	 * 
+	 * @return the number of calls to the branch and bound method
+	 */
+	public long getExploredNodesNumber() {
+		return exploredNodes.get();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.hexagone.delivery.algo.TourSolver#getBestSolutionCost()
+	 */
+	@Override
+	public long getBestSolutionCost() {
+		long cost = bestSolutionCost.get();
+		return cost == Long.MAX_VALUE ? -1 : cost;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.hexagone.delivery.algo.TourSolver#setSolutionListener(com.hexagone.delivery.algo.SolutionListener)
+	 */
+	@Override
+	public void setSolutionListener(SolutionListener listener) {
+		solutionListener = listener;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.hexagone.delivery.algo.TourSolver#cancel()
+	 */
+	@Override
+	public void cancel() {
+		cancelled = true;
+		stopped = true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.hexagone.delivery.algo.TourSolver#setSolvePolicy(com.hexagone.delivery.algo.SolvePolicy)
+	 */
+	@Override
+	public void setSolvePolicy(SolvePolicy policy) {
+		this.policy = policy;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.hexagone.delivery.algo.TourSolver#setInitialSolution(java.util.
+	 * ArrayList)
+	 */
+	@Override
+	public void setInitialSolution(ArrayList<Integer> solution) {
+		initialSolution = solution;
+	}
+
+	/**
+	 * Allows to choose the number of threads exploring the search tree
+	 * 
+	 * @param parallelism
+	 *            the number of threads, 1 to explore the tree on the calling
+	 *            thread
+	 */
+	public void setParallelism(int parallelism) {
+		this.parallelism = Math.max(1, parallelism);
+	}
+
 	/**
 	 * This method will launch the computation of a solution to the TSP problem.
-	 * If the computation time exceeds the time limit, the computation will stop
-	 * and the method timeLimitReached of this class will return true.
+	 * If a limit of the solve policy is reached, the computation will stop and
+	 * the method timeLimitReached of this class will return true.
 	 * 
-	 * @see #TIMELIMIT
+	 * @see #setSolvePolicy(SolvePolicy)
 	 * @see #getBestSolution()
 	 * @see #timeLimitReached
 	 */
 	public void computeSolution() {
-		unseenIntersections = new ArrayList<Integer>(getNumberOfIntersections());
-		for (int i = 1; i < getNumberOfIntersections(); i++) {
-			unseenIntersections.add(new Integer(i));
+		synchronized (this) {
+			bestSolution.clear();
+			bestSolutionCost.set(Long.MAX_VALUE);
+		}
+		timeLimitReached = cancelled;
+		stopped = cancelled;
+		exploredNodes.set(0);
+		tpsDebut = System.currentTimeMillis();
+		rootBound = rootBound();
+
+		// The initial solution is the first incumbent
+		long initialCost = problem.endTime(initialSolution);
+		if (initialCost >= 0) {
+			int[] tour = new int[initialSolution.size()];
+			for (int i = 0; i < tour.length; i++) {
+				tour[i] = initialSolution.get(i);
+			}
+			offerSolution(tour, initialCost);
 		}
 
-		seenIntersections = new ArrayList<Integer>(costs.length);
-		seenIntersections.add(new Integer(0));
-		Calendar pathCost = GregorianCalendar.getInstance();
-		pathCost.setTime(deliveryQuery.getWarehouse().getDepartureTime());
-		branchAndBound(0, pathCost, System.currentTimeMillis());
+		int[] root = { 0 };
+		if (parallelism > 1 && getNumberOfIntersections() > 2) {
+			splitDepth = splitDepth();
+			ForkJoinPool pool = new ForkJoinPool(parallelism);
+			try {
+				pool.invoke(new SubtreeTask(root, 0));
+			} finally {
+				pool.shutdown();
+			}
+		} else {
+			splitDepth = 0;
+			new Search(root).explore(0);
+		}
 	}
 
 	/**
-	 * This methods defines the template of a solution (obtained by branch and
-	 * bound of TSP)
-	 * 
-	 * @param currentIntersection
-	 *            the current intersection
-	 * @param pathCost
-	 *            the cost of the path as a Calendar Object
-	 * @param tpsDebut
-	 *            : the time of the beginning of the calculation
+	 * Gives the bound of the root of the search tree, i.e. a lower bound of
+	 * the cost of any tour
+	 */
+	private long rootBound() {
+		int n = getNumberOfIntersections();
+		int[] unseen = new int[n - 1];
+		for (int i = 1; i < n; i++) {
+			unseen[i - 1] = i;
+		}
+		long[] visited = new long[(n + 63) / 64];
+		visited[0] = 1L;
+		return bound(0, unseen, n - 1, visited, costs, stayTime);
+	}
+
+	/**
+	 * Gives the depth of the tree at which there are enough subtrees to keep
+	 * all the threads busy
+	 */
+	private int splitDepth() {
+		int n = getNumberOfIntersections();
+		long subtrees = 1;
+		int depth = 1;
+		while (depth < n - 1 && subtrees < (long) parallelism * SUBTREES_PER_THREAD) {
+			subtrees *= n - depth;
+			depth++;
+		}
+		return depth;
+	}
+
+	/**
+	 * Stores a tour if it is better than the best one found so far by all the
+	 * threads
 	 * 
+	 * @param path
+	 *            the passage points in the order of visit
+	 * @param tourCost
+	 *            the time at which the tour gets back to the warehouse
 	 */
-	private void branchAndBound(int currentIntersection, Calendar pathCost, long tpsDebut) {
+	private synchronized void offerSolution(int[] path, long tourCost) {
+		if (tourCost < bestSolutionCost.get()) { // We found a new better solution !
+			// We store the solution (the order of visiting)
+			bestSolution.clear();
+			for (int intersection : path) {
+				bestSolution.add(intersection);
+			}
+			bestSolutionCost.set(tourCost);
+			lastImprovement = System.currentTimeMillis();
+			/** The tour is close enough to the best one possible */
+			if (policy.gapReached(tourCost, rootBound)) {
+				if (tourCost > rootBound) {
+					timeLimitReached = true;
+				}
+				stopped = true;
+			}
+			if (solutionListener != null) {
+				solutionListener.solutionImproved(new ArrayList<Integer>(bestSolution), tourCost,
+						System.currentTimeMillis());
+			}
+		}
+	}
+
+	/**
+	 * The state of an exploration of the search tree by one thread, from a
+	 * given path
+	 */
+	private class Search {
+
+		/** unseenIntersections[0..nbUnseen[ are the intersections not visited yet */
+		private int[] unseenIntersections;
+		/** Position of each unvisited intersection in unseenIntersections */
+		private int[] unseenPosition;
+		/** Bit i is set if the intersection i has been visited */
+		private long[] visited;
+		/** The intersections visited so far, in order */
+		private int[] path;
+		/** children[depth] is filled with the children of the node at that depth */
+		private int[][] children;
+		/** Number of intersections of the path given to the constructor */
+		private int prefixLength;
+		/** Number of nodes explored, added to exploredNodes at the end */
+		private long explored;
+		/** Number of nodes to explore before checking the limits of the policy */
+		private int untilPolicyCheck = POLICY_CHECK_INTERVAL;
+
 		/**
-		 * The computation has been going on for too long, the algorithm stops
+		 * Prepares the exploration of the subtree of a path
+		 * 
+		 * @param prefix
+		 *            the path, starting with the warehouse
 		 */
+		Search(int[] prefix) {
+			int n = getNumberOfIntersections();
+			unseenIntersections = new int[n];
+			unseenPosition = new int[n];
+			visited = new long[(n + 63) / 64];
+			path = new int[n];
+			children = new int[n][];
+
+			for (int i = 1; i < n; i++) {
+				unseenIntersections[i - 1] = i;
+				unseenPosition[i] = i - 1;
+			}
+			visited[0] = 1L;
+			path[0] = 0;
+			for (int depth = 1; depth < prefix.length; depth++) {
+				visit(prefix[depth], n - depth);
+				path[depth] = prefix[depth];
+			}
+			prefixLength = prefix.length;
+		}
 
-		if (System.currentTimeMillis() - tpsDebut > TIMELIMIT) {
-			timeLimitReached = true;
-			return;
+		/**
+		 * Explores the subtree of the path given to the constructor
+		 * 
+		 * @param pathCost
+		 *            the time at which the last intersection of the path is
+		 *            left
+		 */
+		void explore(long pathCost) {
+			int n = getNumberOfIntersections();
+			branchAndBound(path[prefixLength - 1], prefixLength, n - prefixLength, pathCost);
+			exploredNodes.addAndGet(explored);
+			explored = 0;
 		}
 
-		if (unseenIntersections.size() == 0) { // All intersections have been
-												// visited
-			// We add the cost to go back to the warehouse
-			pathCost.add(Calendar.SECOND, Integer.valueOf(costs[currentIntersection][0].intValue()));
-			if (bestSolutionCost == null || pathCost.compareTo(bestSolutionCost) < 0) { // We
-																						// found
-																						// a
-																						// new
-																						// better
-																						// solution
-				// !
-				bestSolution.clear();
-				// We store the solution (the order of visiting)
-				for (Integer i : seenIntersections) {
-					bestSolution.add(i);
-				}
+		/**
+		 * This methods defines the template of a solution (obtained by branch
+		 * and bound of TSP)
+		 * 
+		 * @param currentIntersection
+		 *            the current intersection
+		 * @param depth
+		 *            the number of intersections visited so far, warehouse
+		 *            included
+		 * @param nbUnseen
+		 *            the number of intersections not visited yet
+		 * @param pathCost
+		 *            the time at which the current intersection is left, in
+		 *            seconds since the departure
+		 */
+		private void branchAndBound(int currentIntersection, int depth, int nbUnseen, long pathCost) {
+			if (++explored == EXPLORED_NODES_REPORT) {
+				exploredNodes.addAndGet(explored);
+				explored = 0;
+			}
+			if (--untilPolicyCheck == 0) {
+				untilPolicyCheck = POLICY_CHECK_INTERVAL;
+				checkPolicy();
+			}
 
-				bestSolutionCost = pathCost;
+			/**
+			 * A limit was reached, or the computation was cancelled, the
+			 * algorithm stops
+			 */
+			if (stopped) {
+				if (cancelled) {
+					timeLimitReached = true;
+				}
+				return;
 			}
-		} else if (betterPathPossible(pathCost, currentIntersection, unseenIntersections)) {
-			// If there still is a chance of finding a better solution with this
-			// combination
-			Iterator<Integer> it = iterator((Integer) currentIntersection, unseenIntersections, costs, stayTime);
-			while (it.hasNext()) {
-				Integer prochainSommet = it.next();
-				seenIntersections.add(prochainSommet);
-				unseenIntersections.remove(prochainSommet);
-
-				/** Recursive call */
-				Calendar timeReachingNextIntersection = (Calendar) pathCost.clone();
-				timeReachingNextIntersection.add(Calendar.SECOND,
-						Integer.valueOf(costs[currentIntersection][prochainSommet].intValue()));
-
-				// If we arrive before the opening window, we wait there
-				// try / catch because of no opening window case
-				try {
-					Date openingNextSchedule = deliveryQuery.getDeliveries()[prochainSommet - 1].getStartSchedule();
-					Calendar nextSchedule = GregorianCalendar.getInstance();
-					nextSchedule.setTime(openingNextSchedule);
-					if (openingNextSchedule != null && timeReachingNextIntersection.compareTo(nextSchedule) < 0) {
-						timeReachingNextIntersection.setTime(openingNextSchedule);
-					}
-				} catch (NullPointerException e) {
 
+			if (nbUnseen == 0) { // All intersections have been visited
+				// We add the cost to go back to the warehouse
+				long tourCost = pathCost + costs[currentIntersection][0];
+				// The window of the last delivery must be respected too
+				if (tourCost < bestSolutionCost.get() && problem.inTime(currentIntersection, pathCost)
+						&& problem.reachable(currentIntersection, 0)) {
+					offerSolution(path, tourCost);
+				}
+			} else if (betterPathPossible(pathCost, currentIntersection, nbUnseen)) {
+				// If there still is a chance of finding a better solution with
+				// this combination
+				if (children[depth] == null) {
+					children[depth] = new int[nbUnseen];
 				}
+				int[] next = children[depth];
+				iterator(currentIntersection, unseenIntersections, nbUnseen, next, costs, stayTime);
+				if (depth < splitDepth) {
+					split(currentIntersection, depth, nbUnseen, pathCost);
+					return;
+				}
+				for (int c = 0; c < nbUnseen; c++) {
+					int prochainSommet = next[c];
+					if (!problem.reachable(currentIntersection, prochainSommet)) {
+						continue;
+					}
+					visit(prochainSommet, nbUnseen);
+					path[depth] = prochainSommet;
 
-				timeReachingNextIntersection.add(Calendar.SECOND, stayTime[prochainSommet]);
+					/** Recursive call */
+					// If we arrive before the opening window, we wait there
+					long timeLeavingNextIntersection = problem.leave(pathCost, currentIntersection, prochainSommet);
 
-				branchAndBound(prochainSommet, timeReachingNextIntersection, tpsDebut);
+					branchAndBound(prochainSommet, depth + 1, nbUnseen - 1, timeLeavingNextIntersection);
 
-				seenIntersections.remove(prochainSommet);
-				unseenIntersections.add(prochainSommet);
+					unvisit(prochainSommet);
+				}
 			}
 		}
-	}
 
-	private int getNumberOfIntersections() {
-		return costs.length;
+		/**
+		 * Stops the search if one of the limits of the policy is reached. It
+		 * is called every POLICY_CHECK_INTERVAL nodes, to read the clock
+		 * rarely.
+		 */
+		private void checkPolicy() {
+			long now = System.currentTimeMillis();
+			long sinceImprovement = bestSolutionCost.get() == Long.MAX_VALUE ? -1 : now - lastImprovement;
+			if (policy.limitReached(now - tpsDebut, exploredNodes.get() + explored, sinceImprovement)) {
+				timeLimitReached = true;
+				stopped = true;
+			}
+		}
+
+		/**
+		 * Explores the children of a node that can be reached in parallel, in
+		 * their order
+		 */
+		private void split(int currentIntersection, int depth, int nbUnseen, long pathCost) {
+			ArrayList<SubtreeTask> tasks = new ArrayList<SubtreeTask>(nbUnseen);
+			for (int c = 0; c < nbUnseen; c++) {
+				int prochainSommet = children[depth][c];
+				if (!problem.reachable(currentIntersection, prochainSommet)) {
+					continue;
+				}
+				int[] prefix = new int[depth + 1];
+				System.arraycopy(path, 0, prefix, 0, depth);
+				prefix[depth] = prochainSommet;
+				tasks.add(new SubtreeTask(prefix, problem.leave(pathCost, currentIntersection, prochainSommet)));
+			}
+			RecursiveAction.invokeAll(tasks);
+		}
+
+		/**
+		 * Method computing if a better path than the current best solution is
+		 * possible. It also checks if upon arriving on the
+		 * currentIntersection, the delivery does not overflow the end of the
+		 * delivery on that intersection
+		 * 
+		 * @param pathCost
+		 *            the cost so far till the currentIntersection
+		 * @param currentIntersection
+		 *            the current Intersection being visited
+		 * @param nbUnseen
+		 *            the number of intersections yet to visit
+		 * @return true if it is worth keeping the computation going
+		 */
+		private boolean betterPathPossible(long pathCost, int currentIntersection, int nbUnseen) {
+			long bestTimePossible = pathCost
+					+ bound(currentIntersection, unseenIntersections, nbUnseen, visited, costs, stayTime);
+			boolean costPotentiallySmaller = bestTimePossible < bestSolutionCost.get();
+
+			// True if the delivery window of the current intersection is not
+			// over
+			boolean noTimeWindowMissed = problem.inTime(currentIntersection, pathCost);
+
+			return costPotentiallySmaller && noTimeWindowMissed;
+		}
+
+		/**
+		 * Moves an intersection from the unseen ones to the visited ones : it
+		 * is swapped with the last unseen intersection
+		 */
+		private void visit(int intersection, int nbUnseen) {
+			int position = unseenPosition[intersection];
+			int last = unseenIntersections[nbUnseen - 1];
+			unseenIntersections[position] = last;
+			unseenPosition[last] = position;
+			unseenIntersections[nbUnseen - 1] = intersection;
+			unseenPosition[intersection] = nbUnseen - 1;
+			visited[intersection >>> 6] |= 1L << intersection;
+		}
+
+		/**
+		 * Undoes {@link #visit(int, int)} : the intersection is still the last
+		 * unseen one, so it is unseen again once nbUnseen is back. As when it
+		 * was removed from and added back to a list, the order of the unseen
+		 * intersections is not kept : the children of a node are listed
+		 * before any of them is visited.
+		 */
+		private void unvisit(int intersection) {
+			visited[intersection >>> 6] &= ~(1L << intersection);
+		}
 	}
 
 	/**
-	 * Method computing if a better path than the current best solution is
-	 * possible. It also checks if upon arriving on the currentIntersection, the
-	 * delivery does not overflow the end of the delivery on that intersection
-	 * 
-	 * @param pathCost
-	 *            the cost so far till the currentIntersection
-	 * @param currentIntersection
-	 *            the current Intersection being visited
-	 * @param unseenIntersections
-	 *            the Array of intersections yet to visit
-	 * @return true if it is worth keeping the computation going
+	 * Explores the subtree of a path on a thread of the ForkJoinPool
 	 */
-	private boolean betterPathPossible(Calendar pathCost, int currentIntersection,
-			ArrayList<Integer> unseenIntersections) {
-		Calendar bestTimePossible = GregorianCalendar.getInstance();
-		bestTimePossible.setTime(pathCost.getTime());
-		bestTimePossible.add(Calendar.SECOND, bound(currentIntersection, unseenIntersections, costs, stayTime));
-		boolean costPotentiallySmaller = bestSolutionCost == null || bestSolutionCost.compareTo(bestTimePossible) > 0;
+	private class SubtreeTask extends RecursiveAction {
 
-		boolean noTimeWindowMissed = true;
+		private static final long serialVersionUID = 1L;
 
-		if (!(currentIntersection == 0)) { // i.e. if we are not at the
-											// warehouse.
+		private int[] prefix;
+		private long pathCost;
 
-			try {
-				Delivery[] deliveries = deliveryQuery.getDeliveries();
-				// TODO add a try/catch ?
-				Calendar deliveryWindowEnd = GregorianCalendar.getInstance();
+		SubtreeTask(int[] prefix, long pathCost) {
+			this.prefix = prefix;
+			this.pathCost = pathCost;
+		}
 
-				deliveryWindowEnd.setTime(deliveries[currentIntersection - 1].getEndSchedule());
+		@Override
+		protected void compute() {
+			new Search(prefix).explore(pathCost);
+		}
+	}
 
-				noTimeWindowMissed = pathCost.compareTo(deliveryWindowEnd) < 0; // True
-																				// if
-																				// arrivalTime
-																				// before
-																				// deliverWindowEnd
+	/**
+	 * Indicates if an intersection has been visited
+	 * 
+	 * @param vus
+	 *            the bitset of the visited intersections
+	 * @param intersection
+	 *            the index of the intersection
+	 * @return true if the intersection has been visited
+	 */
+	protected static boolean isVisited(long[] vus, int intersection) {
+		return (vus[intersection >>> 6] & (1L << intersection)) != 0;
+	}
 
-			} catch (NullPointerException e) {
-			}
-		}
+	/**
+	 * Gives the tour to compute, in the form used by the search
+	 * 
+	 * @return the problem given to the constructor
+	 */
+	protected TourProblem getProblem() {
+		return problem;
+	}
+
+	/**
+	 * Gives the costs used by the search
+	 * 
+	 * @return costs[i][j] = duration in seconds to go from i to j
+	 */
+	protected int[][] getCosts() {
+		return costs;
+	}
 
-		return costPotentiallySmaller && noTimeWindowMissed;
+	private int getNumberOfIntersections() {
+		return costs.length;
 	}
 
 	/**
 	 * This method gives the lower bound of the permutations cost
 	 * 
-	 * @param the intersection at which the algorithm is currently stopped
+	 * @param currentIntersection
+	 *            the intersection at which the algorithm is currently stopped
 	 * @param nonVus
-	 *            : table of the unvisited intersections
+	 *            : nonVus[0..nbNonVus[ are the unvisited intersections
+	 * @param nbNonVus
+	 *            : the number of unvisited intersections
+	 * @param vus
+	 *            : the bitset of the visited intersections, see
+	 *            {@link #isVisited(long[], int)}
 	 * @param cout
 	 *            : cout[i][j] = duration to go from i to j with 0 <= i <
 	 *            nbSommets and 0 <= j < nbSommets
@@ -214,25 +566,32 @@ abstract class TSPSolver {
 	 *         sommetCourant, including each 'nonVus' intersection exactly once
 	 *         and ending with intersection 0
 	 */
-	protected abstract int bound(Integer currentIntersection, ArrayList<Integer> nonVus, Double[][] cout, Integer[] duree);
+	protected abstract long bound(int currentIntersection, int[] nonVus, int nbNonVus, long[] vus, int[][] cout,
+			int[] duree);
 
 	/**
-	 * This method provides an iterator for nonVus
+	 * This method gives the order in which the unvisited intersections are
+	 * tried after the current one
 	 * 
-	 * @param currentIntersection the intersection at which the user is currently stopped
+	 * @param currentIntersection
+	 *            the intersection at which the user is currently stopped
 	 * @param nonVus
-	 *            : table of the intersections that have not been visited yet
+	 *            : nonVus[0..nbNonVus[ are the unvisited intersections, it
+	 *            must not be modified
+	 * @param nbNonVus
+	 *            : the number of unvisited intersections
+	 * @param children
+	 *            : filled with the 'nonVus' intersections, in the order in
+	 *            which they are to be tried
 	 * @param cout
 	 *            : cout[i][j] = duration to go from i to j, with 0 <= i <
 	 *            nbSommets and 0 <= j < nbSommets
 	 * @param duree
 	 *            : duree[i] = duration to visit intersection i, with 0 <= i
 	 *            <nbSommets
-	 * @return an iterator that allows us to iterate on all of the 'nonVus'
-	 *         intersections
 	 */
-	protected abstract Iterator<Integer> iterator(Integer currentIntersection, ArrayList<Integer> nonVus, Double[][] cout,
-			Integer[] duree);
+	protected abstract void iterator(int currentIntersection, int[] nonVus, int nbNonVus, int[] children,
+			int[][] cout, int[] duree);
 
 	/**
 	 * Constructor
@@ -244,19 +603,9 @@ abstract class TSPSolver {
 	 *            the deliveries to make.
 	 */
 	public TSPSolver(Double[][] costsAdjacencyMatrix, DeliveryQuery deliveryQuery) {
-		costs = costsAdjacencyMatrix;
-
-		this.deliveryQuery = deliveryQuery;
-
-		Delivery[] deliveries = deliveryQuery.getDeliveries();
-		int lenght = deliveryQuery.getDeliveryPassageIdentifiers().length;
-
-		stayTime = new Integer[lenght];
-		int i = 1;
-		for (Delivery d : deliveries) {
-			stayTime[i] = d.getDuration();
-			i++;
-		}
+		problem = new TourProblem(costsAdjacencyMatrix, deliveryQuery);
+		costs = problem.getCosts();
+		stayTime = problem.getStayTimes();
 	}
 
 }
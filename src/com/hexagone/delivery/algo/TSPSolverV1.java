@@ -1,8 +1,5 @@
 package com.hexagone.delivery.algo;
 
-import java.util.ArrayList;
-import java.util.Iterator;
-
 import com.hexagone.delivery.models.DeliveryQuery;
 
 /**
@@ -29,8 +26,8 @@ class TSPSolverV1 extends TSPSolver {
 	/*
 	 * (non-Javadoc)
 	 * 
-	 * @see com.hexagone.delivery.algo.TSPSolver#bound(java.lang.Integer,
-	 * java.util.ArrayList, java.lang.Integer[][], java.lang.Integer[])
+	 * @see com.hexagone.delivery.algo.TSPSolver#bound(int, int[], int,
+	 * long[], int[][], int[])
 	 */
 
 	/**
@@ -38,7 +35,11 @@ class TSPSolverV1 extends TSPSolver {
 	 * 
 	 * @param currentIntersection the intersection at which the algorithm is currently stopped when invoking this method
 	 * @param nonVus
-	 *            : table of the unvisited intersections
+	 *            : nonVus[0..nbNonVus[ are the unvisited intersections
+	 * @param nbNonVus
+	 *            : the number of unvisited intersections
+	 * @param vus
+	 *            : the bitset of the visited intersections
 	 * @param cout
 	 *            : cout[i][j] = duration to go from i to j with 0 <= i <
 	 *            nbSommets and 0 <= j < nbSommets
@@ -50,37 +51,39 @@ class TSPSolverV1 extends TSPSolver {
 	 *         and ending with intersection 0
 	 */
 	@Override
-	protected int bound(Integer currentIntersection, ArrayList<Integer> nonVus, Double[][] cout, Integer[] duree) {
+	protected long bound(int currentIntersection, int[] nonVus, int nbNonVus, long[] vus, int[][] cout,
+			int[] duree) {
 		return 0;
 	}
 
 	/*
 	 * (non-Javadoc)
 	 * 
-	 * @see com.hexagone.delivery.algo.TSPSolver#iterator(java.lang.Integer,
-	 * java.util.ArrayList, java.lang.Integer[][], java.lang.Integer[])
+	 * @see com.hexagone.delivery.algo.TSPSolver#iterator(int, int[], int,
+	 * int[], int[][], int[])
 	 */
 
 	/**
-	 * This method provides an iterator for nonVus
+	 * This method gives the intersections of nonVus in the order of the table
 	 * 
 	 * @param sommetCrt the current intersection at which the algorithm is when invoking this method
 	 * @param nonVus
-	 *            : table of the intersections that have not been visited yet
+	 *            : nonVus[0..nbNonVus[ are the intersections that have not
+	 *            been visited yet
+	 * @param nbNonVus
+	 *            : the number of unvisited intersections
+	 * @param children
+	 *            : filled with the 'nonVus' intersections
 	 * @param cout
 	 *            : cout[i][j] = duration to go from i to j, with 0 <= i <
 	 *            nbSommets and 0 <= j < nbSommets
 	 * @param duree
 	 *            : duree[i] = duration to visit intersection i, with 0 <= i
 	 *            <nbSommets
-	 * @return an iterator that allows us to iterate on all of the 'nonVus'
-	 *         intersections
 	 */
 	@Override
-	protected Iterator<Integer> iterator(Integer sommetCrt, ArrayList<Integer> nonVus, Double[][] cout,
-			Integer[] duree) {
-		ArrayList<Integer> arrayList = (ArrayList<Integer>) nonVus.clone();
-		return arrayList.iterator();
+	protected void iterator(int sommetCrt, int[] nonVus, int nbNonVus, int[] children, int[][] cout, int[] duree) {
+		System.arraycopy(nonVus, 0, children, 0, nbNonVus);
 	}
 
 }
@@ -0,0 +1,187 @@
+package com.hexagone.delivery.algo;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import com.hexagone.delivery.models.DeliveryQuery;
+
+/**
+ * This class extends TSPSolver. Unlike TSPSolverV1, it gives the branch and
+ * bound a real lower bound of the cost of the remaining permutations, so that
+ * the branches that cannot lead to a better solution are cut early.
+ * 
+ * The bound is the time needed to make the remaining deliveries, plus the
+ * largest of these two travel times :
+ * <ul>
+ * <li>the sum, for the current intersection and each unvisited intersection,
+ * of the cheapest road leaving it towards an intersection that can still
+ * follow it</li>
+ * <li>the sum, for each unvisited intersection and the warehouse, of the
+ * cheapest road reaching it from an intersection that can still precede it</li>
+ * </ul>
+ * Each intersection must be left and reached exactly once in the rest of the
+ * tour, so both sums are admissible.
+ */
+class TSPSolverV2 extends TSPSolver {
+
+	/**
+	 * For each intersection, the other intersections in increasing order of the
+	 * cost of going from it to them
+	 */
+	private int[][] cheapestSuccessors;
+	/**
+	 * For each intersection, the other intersections in increasing order of the
+	 * cost of going from them to it
+	 */
+	private int[][] cheapestPredecessors;
+
+	/**
+	 * Allows to create an instance of TSP solver to solve the Traveling
+	 * Salesman Problem
+	 * 
+	 * @param costsAdjacencyMatrix
+	 *            the adjacency matrix of the graph. costsAdjacencyMatrix[i][j]
+	 *            represents the cost going from i to j.
+	 * @param deliveryQuery
+	 *            the deliveries to make.
+	 */
+	public TSPSolverV2(Double[][] costsAdjacencyMatrix, DeliveryQuery deliveryQuery) {
+		super(costsAdjacencyMatrix, deliveryQuery);
+		int n = costsAdjacencyMatrix.length;
+		int[][] cout = getCosts();
+		cheapestSuccessors = new int[n][];
+		cheapestPredecessors = new int[n][];
+		for (int i = 0; i < n; i++) {
+			cheapestSuccessors[i] = sortOthers(i, cout, true);
+			cheapestPredecessors[i] = sortOthers(i, cout, false);
+		}
+	}
+
+	/**
+	 * This method gives the lower bound of the permutations cost. The sorted
+	 * lists of successors and predecessors are computed once : for each
+	 * intersection, only the first elements of its lists that can no longer
+	 * follow or precede it, i.e. the visited ones, are skipped.
+	 * 
+	 * @param currentIntersection
+	 *            the intersection at which the algorithm is currently stopped
+	 *            when invoking this method
+	 * @param nonVus
+	 *            : nonVus[0..nbNonVus[ are the unvisited intersections
+	 * @param nbNonVus
+	 *            : the number of unvisited intersections
+	 * @param vus
+	 *            : the bitset of the visited intersections
+	 * @param cout
+	 *            : cout[i][j] = duration to go from i to j with 0 <= i <
+	 *            nbSommets and 0 <= j < nbSommets
+	 * @param duree
+	 *            : duree[i] = duration to visit intersection i, with 0 <= i <
+	 *            nbSommets
+	 * @return a lower bound of the permutations cost starting with
+	 *         sommetCourant, including each 'nonVus' intersection exactly once
+	 *         and ending with intersection 0
+	 */
+	@Override
+	protected long bound(int currentIntersection, int[] nonVus, int nbNonVus, long[] vus, int[][] cout,
+			int[] duree) {
+		int current = currentIntersection;
+
+		long stays = 0;
+		/** The current intersection is left towards an unvisited one */
+		long leaving = cheapest(cheapestSuccessors[current], current, vus, cout, true, -1);
+		/** The warehouse is reached from an unvisited intersection */
+		long reaching = cheapest(cheapestPredecessors[0], 0, vus, cout, false, -1);
+		for (int k = 0; k < nbNonVus; k++) {
+			int i = nonVus[k];
+			stays += duree[i];
+			/** Unvisited intersections are left towards another one or the warehouse */
+			leaving += cheapest(cheapestSuccessors[i], i, vus, cout, true, 0);
+			/** and reached from another one or the current intersection */
+			reaching += cheapest(cheapestPredecessors[i], i, vus, cout, false, current);
+		}
+
+		return stays + Math.max(leaving, reaching);
+	}
+
+	/**
+	 * Gives the cost of the cheapest road between an intersection and one of
+	 * the intersections that can follow (or precede) it in the rest of the
+	 * tour
+	 * 
+	 * @param sortedOthers
+	 *            the other intersections sorted by cost
+	 * @param intersection
+	 *            the intersection the road leaves from (or goes to)
+	 * @param vus
+	 *            the bitset of the visited intersections
+	 * @param cout
+	 *            the costs matrix
+	 * @param successors
+	 *            true if the road leaves from intersection, false if it goes to
+	 *            intersection
+	 * @param endPoint
+	 *            an intersection that may be used at the other end of the road
+	 *            besides the unvisited ones, -1 if there is none
+	 * @return the cost of the cheapest road
+	 */
+	private static int cheapest(int[] sortedOthers, int intersection, long[] vus, int[][] cout, boolean successors,
+			int endPoint) {
+		for (int other : sortedOthers) {
+			if (!isVisited(vus, other) || other == endPoint) {
+				return successors ? cout[intersection][other] : cout[other][intersection];
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * This method gives the intersections of nonVus in the order of the table
+	 * 
+	 * @param sommetCrt
+	 *            the current intersection at which the algorithm is when
+	 *            invoking this method
+	 * @param nonVus
+	 *            : nonVus[0..nbNonVus[ are the intersections that have not
+	 *            been visited yet
+	 * @param nbNonVus
+	 *            : the number of unvisited intersections
+	 * @param children
+	 *            : filled with the 'nonVus' intersections
+	 * @param cout
+	 *            : cout[i][j] = duration to go from i to j, with 0 <= i <
+	 *            nbSommets and 0 <= j < nbSommets
+	 * @param duree
+	 *            : duree[i] = duration to visit intersection i, with 0 <= i
+	 *            <nbSommets
+	 */
+	@Override
+	protected void iterator(int sommetCrt, int[] nonVus, int nbNonVus, int[] children, int[][] cout, int[] duree) {
+		System.arraycopy(nonVus, 0, children, 0, nbNonVus);
+	}
+
+	/**
+	 * Sorts the intersections other than i by the cost of going from i to them
+	 * (or from them to i)
+	 */
+	private static int[] sortOthers(final int i, final int[][] cout, final boolean successors) {
+		Integer[] others = new Integer[cout.length - 1];
+		int k = 0;
+		for (int j = 0; j < cout.length; j++) {
+			if (j != i) {
+				others[k++] = j;
+			}
+		}
+		Arrays.sort(others, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return successors ? Integer.compare(cout[i][a], cout[i][b]) : Integer.compare(cout[a][i], cout[b][i]);
+			}
+		});
+		int[] sorted = new int[others.length];
+		for (k = 0; k < others.length; k++) {
+			sorted[k] = others[k];
+		}
+		return sorted;
+	}
+}
@@ -0,0 +1,96 @@
+package com.hexagone.delivery.algo;
+
+import com.hexagone.delivery.models.DeliveryQuery;
+
+/**
+ * This class extends TSPSolverV2. It keeps its lower bound, and visits the
+ * children of each node of the search tree in a promising order, so that the
+ * first complete tours found are already good ones and more of the tree gets
+ * cut :
+ * <ul>
+ * <li>without time windows, the closest intersections first</li>
+ * <li>with time windows, the intersections whose window closes first, then the
+ * closest ones</li>
+ * </ul>
+ */
+class TSPSolverV3 extends TSPSolverV2 {
+
+	/**
+	 * End of the delivery window of each intersection, TourProblem.NO_END if
+	 * there is none
+	 */
+	private int[] windowEnd;
+	/** True if at least one delivery has an end of window */
+	private boolean hasWindows;
+
+	/**
+	 * Allows to create an instance of TSP solver to solve the Traveling
+	 * Salesman Problem
+	 * 
+	 * @param costsAdjacencyMatrix
+	 *            the adjacency matrix of the graph. costsAdjacencyMatrix[i][j]
+	 *            represents the cost going from i to j.
+	 * @param deliveryQuery
+	 *            the deliveries to make.
+	 */
+	public TSPSolverV3(Double[][] costsAdjacencyMatrix, DeliveryQuery deliveryQuery) {
+		super(costsAdjacencyMatrix, deliveryQuery);
+		windowEnd = getProblem().getWindowEnds();
+		hasWindows = getProblem().hasWindows();
+	}
+
+	/**
+	 * This method gives the intersections of nonVus sorted by urgency and by
+	 * cost from the current intersection. There are few of them, so they are
+	 * sorted by insertion.
+	 * 
+	 * @param sommetCrt
+	 *            the current intersection at which the algorithm is when
+	 *            invoking this method
+	 * @param nonVus
+	 *            : nonVus[0..nbNonVus[ are the intersections that have not
+	 *            been visited yet
+	 * @param nbNonVus
+	 *            : the number of unvisited intersections
+	 * @param children
+	 *            : filled with the sorted 'nonVus' intersections
+	 * @param cout
+	 *            : cout[i][j] = duration to go from i to j, with 0 <= i <
+	 *            nbSommets and 0 <= j < nbSommets
+	 * @param duree
+	 *            : duree[i] = duration to visit intersection i, with 0 <= i
+	 *            <nbSommets
+	 */
+	@Override
+	protected void iterator(int sommetCrt, int[] nonVus, int nbNonVus, int[] children, int[][] cout, int[] duree) {
+		int[] costs = cout[sommetCrt];
+		for (int k = 0; k < nbNonVus; k++) {
+			int child = nonVus[k];
+			int j = k;
+			while (j > 0 && before(child, children[j - 1], costs)) {
+				children[j] = children[j - 1];
+				j--;
+			}
+			children[j] = child;
+		}
+	}
+
+	/**
+	 * Indicates if an intersection must be tried before another one
+	 * 
+	 * @param a
+	 *            the first intersection
+	 * @param b
+	 *            the second intersection
+	 * @param costs
+	 *            the costs from the current intersection
+	 * @return true if a closes strictly first, or at the same time as b and is
+	 *         strictly closer
+	 */
+	private boolean before(int a, int b, int[] costs) {
+		if (hasWindows && windowEnd[a] != windowEnd[b]) {
+			return windowEnd[a] < windowEnd[b];
+		}
+		return costs[a] < costs[b];
+	}
+}
@@ -0,0 +1,100 @@
+package com.hexagone.delivery.algo;
+
+import java.util.ArrayList;
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * This class forwards the tours found by the solvers to a listener, at most
+ * once per period : the tours found in between are dropped, but the last one
+ * is always forwarded, at the end of the period. The tours that are not
+ * better than the last one received, e.g. the initial solution given back by
+ * an exact solver, are ignored.
+ */
+class ThrottledSolutionListener implements SolutionListener {
+
+	private final SolutionListener listener;
+	private final long period;
+
+	/** The last tour received, not forwarded yet, null if there is none */
+	private ArrayList<Integer> pendingOrder;
+	private long pendingCost;
+	private long pendingTimestamp;
+	private long bestCost = Long.MAX_VALUE;
+	private long lastForward = Long.MIN_VALUE;
+	/** Forwards the pending tour at the end of the period, created when needed */
+	private Timer timer;
+	private boolean forwardScheduled;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param listener
+	 *            the listener the tours are forwarded to
+	 * @param period
+	 *            the minimal time between two tours forwarded, in
+	 *            milliseconds
+	 */
+	ThrottledSolutionListener(SolutionListener listener, long period) {
+		this.listener = listener;
+		this.period = period;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.hexagone.delivery.algo.SolutionListener#solutionImproved(java.util.ArrayList, long, long)
+	 */
+	@Override
+	public synchronized void solutionImproved(ArrayList<Integer> order, long cost, long timestamp) {
+		if (cost >= bestCost) {
+			return;
+		}
+		bestCost = cost;
+		pendingOrder = new ArrayList<Integer>(order);
+		pendingCost = cost;
+		pendingTimestamp = timestamp;
+
+		long wait = lastForward + period - System.currentTimeMillis();
+		if (lastForward == Long.MIN_VALUE || wait <= 0) {
+			forward();
+		} else if (!forwardScheduled) {
+			if (timer == null) {
+				timer = new Timer("solution-listener", true);
+			}
+			timer.schedule(new TimerTask() {
+				@Override
+				public void run() {
+					synchronized (ThrottledSolutionListener.this) {
+						forwardScheduled = false;
+						forward();
+					}
+				}
+			}, wait);
+			forwardScheduled = true;
+		}
+	}
+
+	/**
+	 * Forwards the pending tour at once, and stops the timer. It is called at
+	 * the end of the computation.
+	 */
+	synchronized void flush() {
+		forward();
+		if (timer != null) {
+			timer.cancel();
+			timer = null;
+		}
+		forwardScheduled = false;
+	}
+
+	private void forward() {
+		if (pendingOrder == null) {
+			return;
+		}
+		lastForward = System.currentTimeMillis();
+		ArrayList<Integer> order = pendingOrder;
+		pendingOrder = null;
+		listener.solutionImproved(order, pendingCost, pendingTimestamp);
+	}
+}
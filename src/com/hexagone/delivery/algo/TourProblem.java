@@ -0,0 +1,240 @@
+package com.hexagone.delivery.algo;
+
+import java.util.Date;
+import java.util.List;
+
+import com.hexagone.delivery.models.Delivery;
+import com.hexagone.delivery.models.DeliveryQuery;
+
+/**
+ * This class holds the data of a tour to compute in the primitive form used by
+ * the solvers : the passage points are numbered from 0 (the warehouse) to n-1
+ * (the deliveries, in the order of the delivery query), and the times are
+ * counted in whole seconds since the departure from the warehouse.
+ * 
+ * A delivery window constrains a passage point this way :
+ * <ul>
+ * <li>arriving before the start of the window, the delivery man waits for it</li>
+ * <li>the passage point must be left before the end of the window</li>
+ * </ul>
+ * 
+ * A passage point that cannot be reached from another one costs UNREACHABLE
+ * to go to : the solvers never take this leg, and a tour taking it is not
+ * valid.
+ */
+class TourProblem {
+
+	/** Offset of the start of a window when the delivery has none */
+	static final int NO_START = Integer.MIN_VALUE;
+	/** Offset of the end of a window when the delivery has none */
+	static final int NO_END = Integer.MAX_VALUE;
+	/** Cost of going to a passage point that cannot be reached */
+	static final int UNREACHABLE = Integer.MAX_VALUE;
+
+	/** costs[i][j] = duration in seconds to go from i to j */
+	private int[][] costs;
+	private int[] stayTime;
+	/** Start of the delivery window of each passage point, in seconds since the departure */
+	private int[] windowStart;
+	/** End of the delivery window of each passage point, in seconds since the departure */
+	private int[] windowEnd;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param costsAdjacencyMatrix
+	 *            the adjacency matrix of the graph. costsAdjacencyMatrix[i][j]
+	 *            represents the cost going from i to j.
+	 * @param deliveryQuery
+	 *            the deliveries to make.
+	 */
+	public TourProblem(Double[][] costsAdjacencyMatrix, DeliveryQuery deliveryQuery) {
+		int n = costsAdjacencyMatrix.length;
+		costs = toSeconds(costsAdjacencyMatrix);
+
+		long departure = deliveryQuery.getWarehouse().getDepartureTime().getTime();
+		stayTime = new int[n];
+		windowStart = new int[n];
+		windowEnd = new int[n];
+		windowStart[0] = NO_START;
+		windowEnd[0] = NO_END;
+		Delivery[] deliveries = deliveryQuery.getDeliveries();
+		int i = 1;
+		for (Delivery d : deliveries) {
+			stayTime[i] = d.getDuration();
+			Date start = d.getStartSchedule();
+			windowStart[i] = start == null ? NO_START : toOffset(start, departure);
+			Date end = d.getEndSchedule();
+			windowEnd[i] = end == null ? NO_END : toOffset(end, departure);
+			i++;
+		}
+	}
+
+	/**
+	 * @return the number of passage points, warehouse included
+	 */
+	public int getNumberOfIntersections() {
+		return costs.length;
+	}
+
+	/**
+	 * @return costs[i][j] = duration in seconds to go from i to j
+	 */
+	public int[][] getCosts() {
+		return costs;
+	}
+
+	/**
+	 * @return the duration in seconds of the delivery at each passage point, 0
+	 *         for the warehouse
+	 */
+	public int[] getStayTimes() {
+		return stayTime;
+	}
+
+	/**
+	 * @return the start of the window of each passage point, NO_START if there
+	 *         is none
+	 */
+	public int[] getWindowStarts() {
+		return windowStart;
+	}
+
+	/**
+	 * @return the end of the window of each passage point, NO_END if there is
+	 *         none
+	 */
+	public int[] getWindowEnds() {
+		return windowEnd;
+	}
+
+	/**
+	 * @return true if at least one delivery has an end of window
+	 */
+	public boolean hasWindows() {
+		for (int end : windowEnd) {
+			if (end != NO_END) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Gives the time at which a passage point is left when going there
+	 * directly from another one : the travel, the wait for the start of the
+	 * window, and the delivery
+	 * 
+	 * @param time
+	 *            the time at which the origin is left
+	 * @param origin
+	 *            the passage point the delivery man comes from
+	 * @param destination
+	 *            the next passage point
+	 * @return the time at which the destination is left
+	 */
+	public long leave(long time, int origin, int destination) {
+		long arrival = time + costs[origin][destination];
+		if (arrival < windowStart[destination]) {
+			arrival = windowStart[destination];
+		}
+		return arrival + stayTime[destination];
+	}
+
+	/**
+	 * Indicates if a passage point can be reached directly from another one
+	 * 
+	 * @param origin
+	 *            the passage point the delivery man comes from
+	 * @param destination
+	 *            the next passage point
+	 * @return false if there is no path from the origin to the destination
+	 */
+	public boolean reachable(int origin, int destination) {
+		return costs[origin][destination] != UNREACHABLE;
+	}
+
+	/**
+	 * Indicates if a passage point is left before the end of its window
+	 * 
+	 * @param intersection
+	 *            the passage point
+	 * @param time
+	 *            the time at which it is left
+	 * @return true if the window is respected
+	 */
+	public boolean inTime(int intersection, long time) {
+		return windowEnd[intersection] == NO_END || time < windowEnd[intersection];
+	}
+
+	/**
+	 * Gives the time at which a tour gets back to the warehouse
+	 * 
+	 * @param order
+	 *            the passage points in the order of visit, starting with 0
+	 *            (the warehouse)
+	 * @return the time in seconds since the departure, -1 if the tour does not
+	 *         visit every passage point once, goes to a passage point that
+	 *         cannot be reached or misses a window
+	 */
+	public long endTime(List<Integer> order) {
+		int n = getNumberOfIntersections();
+		if (order == null || order.size() != n || order.get(0) != 0) {
+			return -1;
+		}
+		boolean[] seen = new boolean[n];
+		long time = 0;
+		for (int i = 1; i < n; i++) {
+			int intersection = order.get(i);
+			if (intersection <= 0 || intersection >= n || seen[intersection]
+					|| !reachable(order.get(i - 1), intersection)) {
+				return -1;
+			}
+			seen[intersection] = true;
+			time = leave(time, order.get(i - 1), intersection);
+			if (!inTime(intersection, time)) {
+				return -1;
+			}
+		}
+		if (!reachable(order.get(n - 1), 0)) {
+			return -1;
+		}
+		return time + costs[order.get(n - 1)][0];
+	}
+
+	/**
+	 * Truncates the costs to whole seconds, the unreachable intersections
+	 * (infinite cost) costing UNREACHABLE
+	 */
+	private static int[][] toSeconds(Double[][] costsAdjacencyMatrix) {
+		int n = costsAdjacencyMatrix.length;
+		int[][] seconds = new int[n][n];
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				Double cost = costsAdjacencyMatrix[i][j];
+				if (cost == null) {
+					seconds[i][j] = 0;
+				} else if (cost.isInfinite() || cost >= UNREACHABLE) {
+					seconds[i][j] = UNREACHABLE;
+				} else {
+					seconds[i][j] = cost.intValue();
+				}
+			}
+		}
+		return seconds;
+	}
+
+	/**
+	 * Converts a date to a number of seconds since the departure, rounded up
+	 * so that comparing whole seconds to it gives the same result as
+	 * comparing the dates
+	 */
+	private static int toOffset(Date date, long departure) {
+		long milliseconds = date.getTime() - departure;
+		long seconds = milliseconds / 1000;
+		if (seconds * 1000 < milliseconds) {
+			seconds++;
+		}
+		return (int) Math.max(Integer.MIN_VALUE + 1, Math.min(Integer.MAX_VALUE - 1, seconds));
+	}
+}
@@ -0,0 +1,86 @@
+package com.hexagone.delivery.algo;
+
+import java.util.ArrayList;
+
+/**
+ * This interface is the contract shared by the solvers of the Traveling
+ * Salesman Problem faced in this software
+ */
+interface TourSolver {
+
+	/**
+	 * Launches the computation of the best order in which to visit the
+	 * passage points
+	 */
+	void computeSolution();
+
+	/**
+	 * Gives the solver a tour known in advance, e.g. found by a heuristic. The
+	 * solver returns it if it finds nothing strictly better, and may use its
+	 * cost to cut the search.
+	 * 
+	 * @param solution
+	 *            the passage points in the order of visit, starting with 0
+	 *            (the warehouse), ignored if it is not a valid tour
+	 */
+	void setInitialSolution(ArrayList<Integer> solution);
+
+	/**
+	 * Gives back the best solution found by the computation
+	 * 
+	 * @return the indexes of the passage points in the order of visit,
+	 *         starting with 0 (the warehouse), empty if no tour respecting the
+	 *         delivery windows was found
+	 */
+	ArrayList<Integer> getBestSolution();
+
+	/**
+	 * Indicates if the time limit was reached during the last computation,
+	 * i.e. if the best solution may not be optimal
+	 * 
+	 * @return true if the time limit was reached
+	 */
+	Boolean timeLimitReached();
+
+	/**
+	 * Gives the amount of work done by the last computation, to compare the
+	 * solvers
+	 * 
+	 * @return the number of nodes or states explored
+	 */
+	long getExploredNodesNumber();
+
+	/**
+	 * Gives the cost of the best tour found so far. It may be called from
+	 * another thread during the computation, to follow its progress.
+	 * 
+	 * @return the time at which the tour gets back to the warehouse, in
+	 *         seconds since the departure, -1 if no tour was found yet
+	 */
+	long getBestSolutionCost();
+
+	/**
+	 * Allows to choose when the computation stops. The rules a solver cannot
+	 * apply are ignored.
+	 * 
+	 * @param policy
+	 *            the limits of the computation
+	 */
+	void setSolvePolicy(SolvePolicy policy);
+
+	/**
+	 * Allows to follow the tours found during the computation
+	 * 
+	 * @param listener
+	 *            called with the indexes of the passage points each time a
+	 *            better tour is found, null to follow nothing
+	 */
+	void setSolutionListener(SolutionListener listener);
+
+	/**
+	 * Asks the computation to stop as soon as possible, from another thread.
+	 * The best solution found so far is kept, and timeLimitReached returns
+	 * true as it may not be optimal. A cancelled solver cannot be used again.
+	 */
+	void cancel();
+}
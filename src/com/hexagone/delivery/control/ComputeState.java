@@ -2,22 +2,15 @@ package com.hexagone.delivery.control;
 
 import java.awt.Color;
 import java.awt.Graphics;
-import java.awt.Graphics2D;
 import java.awt.Point;
-import java.awt.geom.Line2D;
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Set;
 
 import javax.swing.JOptionPane;
 
-import com.hexagone.delivery.algo.DeliveryComputer;
 import com.hexagone.delivery.models.Delivery;
 import com.hexagone.delivery.models.DeliveryQuery;
 import com.hexagone.delivery.models.Intersection;
 import com.hexagone.delivery.models.Map;
-import com.hexagone.delivery.models.Road;
 import com.hexagone.delivery.models.RouteHelper;
 import com.hexagone.delivery.models.Warehouse;
 import com.hexagone.delivery.ui.Popup;
@@ -64,26 +57,11 @@ public class ComputeState implements ControllerActions {
 
     /*
      * (non-Javadoc)
-     * @see com.hexagone.delivery.control.ControllerActions#computeDelivery(com.hexagone.delivery.models.Map, com.hexagone.delivery.models.DeliveryQuery)
+     * @see com.hexagone.delivery.control.ControllerActions#computeDelivery(com.hexagone.delivery.models.Map, com.hexagone.delivery.models.DeliveryQuery, com.hexagone.delivery.control.TourPreview)
      */
     @Override
-    public RouteHelper computeDelivery(Map map, DeliveryQuery delivery) {
-        DeliveryComputer computer = new DeliveryComputer(map, delivery);
-        computer.compute();
-
-        if (!computer.checkNotEmptySolution()){
-        	if (computer.checkTimeout()){
-        		Popup.showInformation("Aucune solution n'a été trouvée \ndans le temps imparti", "Temps de calcul écoulé");
-        		return null;
-        	} else {
-        		Popup.showInformation("Il n'existe aucune tournée satisfaisante.", "Tournée impossible");
-        		return null;
-        	}
-        } else if (computer.checkTimeout()) {
-        	Popup.showInformation("La tournée calculée n'est peut-être pas optimale.", "Temps de calcul écoulé");
-        }
-        computer.getDeliveryPoints();
-        return new RouteHelper(map, delivery, computer);
+    public RouteHelper computeDelivery(Map map, DeliveryQuery delivery, TourPreview preview) {
+        return TourComputation.computeDelivery(map, delivery, preview);
     }
 
     /*
@@ -102,33 +80,11 @@ public class ComputeState implements ControllerActions {
     @Override
     public void DrawMap(Graphics g, float scale, Map map, DeliveryQuery deliveryQuery, RouteHelper routeHelper) {
 
-        // Painting the map
-        // Painting the roads first
+        // Painting the map, the roads first
+        MapLayers layers = MapLayers.getInstance();
+        layers.drawRoads(g, scale, map, Color.BLACK);
+        layers.drawIntersections(g, scale, map);
         HashMap<Integer,Intersection> intersections = map.getIntersections();
-        Set<Integer> roads = new HashSet<Integer>();
-        roads = (map.getRoads()).keySet();
-
-        for (int j : roads) {
-            ArrayList<Road> roadsFromI = new ArrayList<Road>();
-            roadsFromI = map.getRoads().get(j);
-            for (Road r : roadsFromI) {
-                g.setColor(Color.BLACK);
-                Graphics2D g2 = (Graphics2D) g;
-                Point destination = intersections.get(r.getOrigin()).getCoordinates();
-                Point origine = intersections.get(r.getDestination()).getCoordinates();
-                Line2D lin = new Line2D.Float(((origine.x) / scale) + 5, ((origine.y) / scale) + 5,
-                        ((destination.x) / scale) + 5, ((destination.y) / scale) + 5);
-                // g2.setStroke(new BasicStroke(2));
-                g2.draw(lin);
-            }
-        }
-        // Painting the of the map
-        for (Intersection i : intersections.values()) {
-            Point p = new Point();
-            p = i.getCoordinates();
-            g.setColor(Color.BLUE);
-            g.fillOval((int) (((p.x)) / scale), (int) (((p.y)) / scale), 10, 10);
-        }
 
         // Drawing the deliveryQuery
         Warehouse warehouse = deliveryQuery.getWarehouse();
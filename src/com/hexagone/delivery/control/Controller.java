@@ -11,10 +11,13 @@ import java.util.LinkedHashMap;
 import java.util.Vector;
 
 import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
 
+import com.hexagone.delivery.algo.DeliveryComputer;
 import com.hexagone.delivery.models.ArrivalPoint;
 import com.hexagone.delivery.models.Delivery;
 import com.hexagone.delivery.models.DeliveryQuery;
+import com.hexagone.delivery.models.Intersection;
 import com.hexagone.delivery.models.Map;
 import com.hexagone.delivery.models.RouteHelper;
 import com.hexagone.delivery.ui.MainFrame;
@@ -31,6 +34,8 @@ public class Controller implements UserActions, MapPainter {
 	private DeliveryQuery deliveryQuery;
 	/** Problem solution */
 	private RouteHelper routeHelper;
+	/** Computer whose exact solver may still be improving the tour, null if none */
+	private DeliveryComputer backgroundComputer;
 
 	/** Elements of the interface */
 	private MainFrame mainFrame;
@@ -68,6 +73,7 @@ public class Controller implements UserActions, MapPainter {
 	public void loadMapButtonClick() {
 		Map newMap = currentState.loadMap();
 		if (newMap != null) {
+			cancelBackgroundSearch();
 			deliveryQuery = null; // Change of map -> we discard the deliveryQuery
 			routeHelper = null;
 			map = newMap;
@@ -85,6 +91,7 @@ public class Controller implements UserActions, MapPainter {
 	public void loadDeliveryQueryButtonClick() {
 		DeliveryQuery deliv = currentState.loadDeliveryQuery();
 		if (deliv != null) {
+			cancelBackgroundSearch();
 			deliveryQuery = deliv;
 			routeHelper = null;
 			mainFrame.resetTable();
@@ -99,8 +106,10 @@ public class Controller implements UserActions, MapPainter {
 	 */
 	@Override
 	public void computeRouteButtonClick() {
+		cancelBackgroundSearch();
 		mainFrame.resetTable();
-		this.routeHelper = currentState.computeDelivery(map, deliveryQuery);
+		this.routeHelper = currentState.computeDelivery(map, deliveryQuery, NAVIGATE_STATE);
+		NAVIGATE_STATE.clearPreview();
 		this.currentState = nextState();
 	}
 
@@ -180,12 +189,32 @@ public class Controller implements UserActions, MapPainter {
 		NAVIGATE_STATE.searchDPByID(routeHelper.getRankDP(idP));
 	}
 
+	/**
+	 * Selects the delivery point the user clicked on, if any, as if it was
+	 * looked for by its id
+	 * 
+	 * @see com.hexagone.delivery.control.UserActions#mapClick(int, int, float)
+	 */
+	@Override
+	public void mapClick(int x, int y, float scale) {
+		if (currentState != NAVIGATE_STATE) {
+			return;
+		}
+		/** Intersections are drawn as circles of 10 pixels from their coordinates divided by the scale */
+		Intersection intersection = map.getSpatialIndex().getNearestIntersection(Math.round((x - 5) * scale),
+				Math.round((y - 5) * scale), 10 * scale);
+		if (intersection != null && routeHelper.getRoute().containsKey(intersection.getId())) {
+			searchDP(intersection.getId());
+		}
+	}
+
 	/**
 	 * Draws the map from current state
 	 */
 	@Override
 	public void draw(Graphics g, float scale) {
 		currentState.DrawMap(g, scale, map, deliveryQuery, routeHelper);
+		NAVIGATE_STATE.drawPreview(g, scale, map);
 	}
 
 	/* 
@@ -208,11 +237,7 @@ public class Controller implements UserActions, MapPainter {
 						deliveryToRemove= d;
 					}
 				}
-				deliveries.remove(deliveryToRemove);
-				Delivery[] newDeliveries = new Delivery[deliveries.size()];
-				deliveries.toArray(newDeliveries);
-				deliveryQuery.setDelivery(newDeliveries);
-				computeRouteButtonClick();
+				applyReplan(routeHelper.getDeliveryComputer().replanRemoval(deliveryToRemove));
 			}
 		}
 	}
@@ -254,20 +279,60 @@ public class Controller implements UserActions, MapPainter {
 					// TODO Auto-generated catch block
 					e.printStackTrace();
 				}
-				deliveries.remove(deliveryToModify);
-				deliveries.add(deliveryModified);
-				Delivery[] newDeliveries = new Delivery[deliveries.size()];
-				deliveries.toArray(newDeliveries);
-				deliveryQuery.setDelivery(newDeliveries);
-				System.out.println(deliveryModified);
-				computeRouteButtonClick();
-
-
+				applyReplan(routeHelper.getDeliveryComputer().replanModification(deliveryToModify, deliveryModified));
 			}
 		}
 
 	}
 
+	/**
+	 * Displays the tour repaired after an edit of the deliveries, and lets the
+	 * exact solver look for a better one in the background. The display is
+	 * updated if it finds one ; the search is stopped if the deliveries are
+	 * edited again. When the repair finds no tour, the tour is computed from
+	 * scratch as when the user asks for it, off the event thread.
+	 * 
+	 * @param computer
+	 *            the computer holding the edited delivery query and its tour
+	 */
+	private void applyReplan(final DeliveryComputer computer) {
+		cancelBackgroundSearch();
+		deliveryQuery = computer.getDeliveryQuery();
+		mainFrame.resetTable();
+		if (computer.checkNotEmptySolution()) {
+			routeHelper = new RouteHelper(map, deliveryQuery, computer);
+			backgroundComputer = computer;
+			computer.improveInBackground(new Runnable() {
+				@Override
+				public void run() {
+					SwingUtilities.invokeLater(new Runnable() {
+						@Override
+						public void run() {
+							if (routeHelper != null && routeHelper.getDeliveryComputer() == computer) {
+								routeHelper = new RouteHelper(map, deliveryQuery, computer);
+								mainFrame.resetTable();
+								currentState = nextState();
+							}
+						}
+					});
+				}
+			});
+		} else {
+			routeHelper = TourComputation.computeDelivery(map, deliveryQuery, NAVIGATE_STATE);
+			NAVIGATE_STATE.clearPreview();
+		}
+		currentState = nextState();
+	}
 
+	/**
+	 * Stops the search of a better tour started after the last edit, if any,
+	 * as its tour is about to be replaced
+	 */
+	private void cancelBackgroundSearch() {
+		if (backgroundComputer != null) {
+			backgroundComputer.cancel();
+			backgroundComputer = null;
+		}
+	}
 
 }
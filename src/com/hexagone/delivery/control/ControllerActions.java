@@ -30,9 +30,10 @@ public interface ControllerActions {
 	 * Computes a delivery with the given map and delivery.
 	 * @param map the map on which the problem takes place
 	 * @param delivery the deliveries to make
+	 * @param preview displays the tours found while the computation is running
 	 * @return a RouteHelper object containing the solution to the problem
 	 */
-	public RouteHelper computeDelivery(Map map, DeliveryQuery delivery);
+	public RouteHelper computeDelivery(Map map, DeliveryQuery delivery, TourPreview preview);
 
 	/**
 	 * Draws the map with the 'g' Graphics parameter
@@ -44,7 +44,7 @@ public class LoadMapState implements ControllerActions {
 	 * Returns null. It shouldn't be called in the InitState
 	 */
 	@Override
-	public RouteHelper computeDelivery(Map map, DeliveryQuery delivery) {
+	public RouteHelper computeDelivery(Map map, DeliveryQuery delivery, TourPreview preview) {
 		return null;
 	}
 
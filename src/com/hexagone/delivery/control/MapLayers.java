@@ -0,0 +1,345 @@
+package com.hexagone.delivery.control;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.geom.Line2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import com.hexagone.delivery.models.ArrivalPoint;
+import com.hexagone.delivery.models.Intersection;
+import com.hexagone.delivery.models.Map;
+import com.hexagone.delivery.models.Road;
+import com.hexagone.delivery.models.RouteHelper;
+import com.hexagone.delivery.models.SpatialIndex;
+
+/**
+ * This class keeps the drawing of the roads and of the intersections of the
+ * map in square tiles, so that repainting the window only copies the tiles it
+ * shows instead of drawing the whole city again. A tile is drawn the first time
+ * it is shown, from the roads and intersections the spatial index finds in it,
+ * and kept until the map or the scale changes : a map modified through its
+ * adders or setters gets a new spatial index, which is used to notice it. Only
+ * the tiles used last are kept, so that panning over a large city does not
+ * fill the memory.
+ * 
+ * The level of detail follows the scale : the intersections are not drawn when
+ * they would be larger than the space between them, and the roads shorter than
+ * a pixel are left out.
+ * 
+ * The roads, the intersections and the whole tour are kept in separate
+ * transparent layers, so that the states can draw the other elements between
+ * them. The tiles of the tour are dropped when another tour is drawn. This
+ * class is a singleton, shared by the states drawing the map.
+ */
+class MapLayers {
+
+	/** Side of the tiles, in pixels */
+	private static final int TILE_SIZE = 256;
+	/** Number of tiles kept, of all the layers */
+	private static final int MAX_TILES = 256;
+	/** Diameter of the intersections, in pixels */
+	private static final int INTERSECTION_SIZE = 10;
+	/** Width of the lines of the tour, in pixels */
+	private static final BasicStroke ROUTE_STROKE = new BasicStroke(3);
+	/** Layers other than the roads, which are told apart by their color */
+	private static final String INTERSECTIONS_LAYER = "intersections";
+	private static final String ROUTE_LAYER = "route";
+	/** Tile with nothing drawn in it */
+	private static final BufferedImage EMPTY_TILE = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+
+	private static MapLayers instance;
+
+	/** The map and scale of the tiles, null if there are none */
+	private SpatialIndex index;
+	private float scale;
+	/** The tour of the route layer, and the roads it goes through */
+	private RouteHelper routeHelper;
+	private ArrayList<Road> routeRoads = new ArrayList<Road>();
+	/** The tiles drawn, the least recently used first */
+	private LinkedHashMap<Tile, BufferedImage> tiles = new LinkedHashMap<Tile, BufferedImage>(16, 0.75f, true);
+
+	/**
+	 * Gives the layers shared by the states
+	 * 
+	 * @return the only instance of the layers
+	 */
+	static MapLayers getInstance() {
+		if (instance == null) {
+			instance = new MapLayers();
+		}
+		return instance;
+	}
+
+	private MapLayers() {
+	}
+
+	/**
+	 * Draws the roads of the map lying in the clip of the paint brush
+	 * 
+	 * @param g
+	 *            the paint brush to draw the roads with
+	 * @param scale
+	 *            the scale at which the map is drawn
+	 * @param map
+	 *            the map whose roads are drawn
+	 * @param color
+	 *            the color of the roads
+	 */
+	void drawRoads(Graphics g, float scale, Map map, Color color) {
+		update(scale, map);
+		drawTiles(g, map, color);
+	}
+
+	/**
+	 * Draws the whole tour lying in the clip of the paint brush, in green
+	 * 
+	 * @param g
+	 *            the paint brush to draw the tour with
+	 * @param scale
+	 *            the scale at which the map is drawn
+	 * @param map
+	 *            the map the tour goes through
+	 * @param routeHelper
+	 *            the tour to draw
+	 */
+	void drawRoute(Graphics g, float scale, Map map, RouteHelper routeHelper) {
+		update(scale, map);
+		if (routeHelper != this.routeHelper) {
+			this.routeHelper = routeHelper;
+			routeRoads = new ArrayList<Road>();
+			for (ArrivalPoint arrivalPoint : routeHelper.getRoute().values()) {
+				routeRoads.addAll(arrivalPoint.getRoads());
+			}
+			Iterator<Tile> iterator = tiles.keySet().iterator();
+			while (iterator.hasNext()) {
+				if (iterator.next().layer == ROUTE_LAYER) {
+					iterator.remove();
+				}
+			}
+		}
+		drawTiles(g, map, ROUTE_LAYER);
+	}
+
+	/**
+	 * Draws the intersections of the map lying in the clip of the paint brush,
+	 * if the scale lets them be told apart
+	 * 
+	 * @param g
+	 *            the paint brush to draw the intersections with
+	 * @param scale
+	 *            the scale at which the map is drawn
+	 * @param map
+	 *            the map whose intersections are drawn
+	 */
+	void drawIntersections(Graphics g, float scale, Map map) {
+		update(scale, map);
+		if (index.getSpacing() / scale >= INTERSECTION_SIZE) {
+			drawTiles(g, map, INTERSECTIONS_LAYER);
+		}
+	}
+
+	/**
+	 * Drops the tiles if the map or the scale changed since they were drawn
+	 */
+	private void update(float scale, Map map) {
+		SpatialIndex currentIndex = map.getSpatialIndex();
+		if (currentIndex != index || scale != this.scale) {
+			index = currentIndex;
+			this.scale = scale;
+			tiles.clear();
+		}
+	}
+
+	/**
+	 * Draws the tiles of a layer lying in the clip of the paint brush
+	 * 
+	 * @param layer
+	 *            the color of the roads, or the name of another layer
+	 */
+	private void drawTiles(Graphics g, Map map, Object layer) {
+		Rectangle bounds = index.getBounds();
+		if (bounds == null) {
+			return;
+		}
+		/** Part of the drawing where the map lies */
+		Rectangle drawing = new Rectangle((int) Math.floor(bounds.x / scale), (int) Math.floor(bounds.y / scale),
+				(int) Math.ceil(bounds.width / scale) + INTERSECTION_SIZE + 2,
+				(int) Math.ceil(bounds.height / scale) + INTERSECTION_SIZE + 2);
+		Rectangle clip = g.getClipBounds();
+		if (clip != null) {
+			drawing = drawing.intersection(clip);
+		}
+		if (drawing.isEmpty()) {
+			return;
+		}
+		int firstColumn = Math.floorDiv(drawing.x, TILE_SIZE);
+		int lastColumn = Math.floorDiv(drawing.x + drawing.width - 1, TILE_SIZE);
+		int firstRow = Math.floorDiv(drawing.y, TILE_SIZE);
+		int lastRow = Math.floorDiv(drawing.y + drawing.height - 1, TILE_SIZE);
+		for (int row = firstRow; row <= lastRow; row++) {
+			for (int column = firstColumn; column <= lastColumn; column++) {
+				Tile key = new Tile(layer, column, row);
+				BufferedImage tile = tiles.get(key);
+				if (tile == null) {
+					if (layer == INTERSECTIONS_LAYER) {
+						tile = drawIntersectionTile(column, row);
+					} else if (layer == ROUTE_LAYER) {
+						tile = drawRouteTile(map, column, row);
+					} else {
+						tile = drawRoadTile(map, (Color) layer, column, row);
+					}
+					tiles.put(key, tile);
+					if (tiles.size() > MAX_TILES) {
+						/** The least recently used tile is dropped */
+						Iterator<Tile> eldest = tiles.keySet().iterator();
+						eldest.next();
+						eldest.remove();
+					}
+				}
+				if (tile != EMPTY_TILE) {
+					g.drawImage(tile, column * TILE_SIZE, row * TILE_SIZE, null);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Draws the roads of a tile
+	 */
+	private BufferedImage drawRoadTile(Map map, Color color, int column, int row) {
+		HashMap<Integer, Intersection> intersectionsById = map.getIntersections();
+		BufferedImage image = null;
+		Graphics2D g2 = null;
+		for (Road r : index.getRoads(getArea(column, row))) {
+			Point d = intersectionsById.get(r.getOrigin()).getCoordinates();
+			Point o = intersectionsById.get(r.getDestination()).getCoordinates();
+			float x1 = ((o.x) / scale) + 5;
+			float y1 = ((o.y) / scale) + 5;
+			float x2 = ((d.x) / scale) + 5;
+			float y2 = ((d.y) / scale) + 5;
+			/** A road within a pixel does not show at this scale */
+			if ((int) x1 == (int) x2 && (int) y1 == (int) y2) {
+				continue;
+			}
+			if (image == null) {
+				image = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_ARGB);
+				g2 = image.createGraphics();
+				g2.translate(-column * TILE_SIZE, -row * TILE_SIZE);
+				g2.setColor(color);
+			}
+			g2.draw(new Line2D.Float(x1, y1, x2, y2));
+		}
+		if (image == null) {
+			return EMPTY_TILE;
+		}
+		g2.dispose();
+		return image;
+	}
+
+	/**
+	 * Draws the part of the tour lying in a tile
+	 */
+	private BufferedImage drawRouteTile(Map map, int column, int row) {
+		HashMap<Integer, Intersection> intersectionsById = map.getIntersections();
+		/** Tile grown by the width of the lines */
+		Rectangle area = new Rectangle(column * TILE_SIZE - 2, row * TILE_SIZE - 2, TILE_SIZE + 4, TILE_SIZE + 4);
+		BufferedImage image = null;
+		Graphics2D g2 = null;
+		for (Road r : routeRoads) {
+			Point d = intersectionsById.get(r.getOrigin()).getCoordinates();
+			Point o = intersectionsById.get(r.getDestination()).getCoordinates();
+			Line2D line = new Line2D.Float(((o.x) / scale) + 5, ((o.y) / scale) + 5, ((d.x) / scale) + 5,
+					((d.y) / scale) + 5);
+			if (!line.intersects(area)) {
+				continue;
+			}
+			if (image == null) {
+				image = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_ARGB);
+				g2 = image.createGraphics();
+				g2.translate(-column * TILE_SIZE, -row * TILE_SIZE);
+				g2.setColor(Color.GREEN);
+				g2.setStroke(ROUTE_STROKE);
+			}
+			g2.draw(line);
+		}
+		if (image == null) {
+			return EMPTY_TILE;
+		}
+		g2.dispose();
+		return image;
+	}
+
+	/**
+	 * Draws the intersections of a tile
+	 */
+	private BufferedImage drawIntersectionTile(int column, int row) {
+		BufferedImage image = null;
+		Graphics2D g2 = null;
+		for (Intersection i : index.getIntersections(getArea(column, row))) {
+			if (image == null) {
+				image = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_ARGB);
+				g2 = image.createGraphics();
+				g2.translate(-column * TILE_SIZE, -row * TILE_SIZE);
+				g2.setColor(Color.BLUE);
+			}
+			Point p = i.getCoordinates();
+			g2.fillOval((int) (((p.x)) / scale), (int) (((p.y)) / scale), INTERSECTION_SIZE, INTERSECTION_SIZE);
+		}
+		if (image == null) {
+			return EMPTY_TILE;
+		}
+		g2.dispose();
+		return image;
+	}
+
+	/**
+	 * Gives the area of the map drawn in a tile, in the coordinates of the
+	 * map, with the size of an intersection around it
+	 */
+	private Rectangle getArea(int column, int row) {
+		int margin = INTERSECTION_SIZE + 1;
+		int x = (int) Math.floor((column * TILE_SIZE - margin) * scale);
+		int y = (int) Math.floor((row * TILE_SIZE - margin) * scale);
+		int side = (int) Math.ceil((TILE_SIZE + 2 * margin) * scale);
+		return new Rectangle(x, y, side, side);
+	}
+
+	/**
+	 * Position of a tile in a layer
+	 */
+	private static final class Tile {
+
+		/** Color of the roads, or name of another layer */
+		private final Object layer;
+		private final int column;
+		private final int row;
+
+		Tile(Object layer, int column, int row) {
+			this.layer = layer;
+			this.column = column;
+			this.row = row;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Tile)) {
+				return false;
+			}
+			Tile other = (Tile) o;
+			return column == other.column && row == other.row && layer.equals(other.layer);
+		}
+
+		@Override
+		public int hashCode() {
+			return (31 * column + row) * 31 + layer.hashCode();
+		}
+	}
+}
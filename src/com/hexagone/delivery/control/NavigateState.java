@@ -8,12 +8,9 @@ import java.awt.Point;
 import java.awt.geom.Line2D;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map.Entry;
-import java.util.Set;
 
-import com.hexagone.delivery.algo.DeliveryComputer;
 import com.hexagone.delivery.models.ArrivalPoint;
 import com.hexagone.delivery.models.Delivery;
 import com.hexagone.delivery.models.DeliveryQuery;
@@ -32,12 +29,18 @@ import com.hexagone.delivery.xml.XMLException;
  * This class allows us to draw the map and the points of the delivery on top of
  * it when the state is NAVIGATE_STATE
  */
-public class NavigateState implements ControllerActions {
+public class NavigateState implements ControllerActions, TourPreview {
+
+	/** Width of the lines of the tours, in pixels */
+	private static final BasicStroke TOUR_STROKE = new BasicStroke(3);
 
 	private MainFrame frame;
 
 	private int step;
 
+	/** Best tour found by the running computation, null if there is none */
+	private ArrayList<Integer> previewItinerary;
+
 	/**
 	 * Opens a FileChooser that lets the user pick an XML file on the file
 	 * system.
@@ -71,26 +74,11 @@ public class NavigateState implements ControllerActions {
 
 	/*
 	 * (non-Javadoc)
-	 * @see com.hexagone.delivery.control.ControllerActions#computeDelivery(com.hexagone.delivery.models.Map, com.hexagone.delivery.models.DeliveryQuery)
+	 * @see com.hexagone.delivery.control.ControllerActions#computeDelivery(com.hexagone.delivery.models.Map, com.hexagone.delivery.models.DeliveryQuery, com.hexagone.delivery.control.TourPreview)
 	 */
 	@Override
-    public RouteHelper computeDelivery(Map map, DeliveryQuery delivery) {
-        DeliveryComputer computer = new DeliveryComputer(map, delivery);
-        computer.compute();
-
-        if (!computer.checkNotEmptySolution()){
-        	if (computer.checkTimeout()){
-        		Popup.showInformation("Aucune solution n'a été trouvée \ndans le temps imparti", "Temps de calcul écoulé");
-        		return null;
-        	} else {
-        		Popup.showInformation("Il n'existe aucune tournée satisfaisante.", "Tournée impossible");
-        		return null;
-        	}
-        } else if (computer.checkTimeout()) {
-        	Popup.showInformation("La tournée calculée n'est peut-être pas optimale.", "Temps de calcul écoulé");
-        }
-        computer.getDeliveryPoints();
-        return new RouteHelper(map, delivery, computer);
+    public RouteHelper computeDelivery(Map map, DeliveryQuery delivery, TourPreview preview) {
+        return TourComputation.computeDelivery(map, delivery, preview);
     }
 
 	/*
@@ -109,81 +97,44 @@ public class NavigateState implements ControllerActions {
 	 */
 	@Override
 	public void DrawMap(Graphics g, float coefficient, Map map, DeliveryQuery deliveryQuery, RouteHelper routeHelper) {
-		ArrayList<Intersection> intersections = new ArrayList<Intersection>(map.getIntersections().values());
-		Set<Integer> roads = new HashSet<Integer>();
-		roads = (map.getRoads()).keySet();
-
-		for (int j : roads) {
-			ArrayList<Road> roadsFromI = new ArrayList<Road>();
-			roadsFromI = map.getRoads().get(j);
-			for (Road r : roadsFromI) {
-				g.setColor(Color.GRAY);
-				Graphics2D g2 = (Graphics2D) g;
-				Point destination = intersections.get(r.getOrigin()).getCoordinates();
-                Point origine = intersections.get(r.getDestination()).getCoordinates();
-				Line2D lin = new Line2D.Float(((origine.x) / coefficient) + 5, ((origine.y) / coefficient) + 5,
-						((destination.x) / coefficient) + 5, ((destination.y) / coefficient) + 5);
-				g2.draw(lin);
-			}
-		}
+		HashMap<Integer, Intersection> intersections = map.getIntersections();
+		MapLayers layers = MapLayers.getInstance();
+		layers.drawRoads(g, coefficient, map, Color.GRAY);
 
 		Warehouse warehouse = deliveryQuery.getWarehouse();
 		Intersection intersectionWarehouse = warehouse.getIntersection();
 		Point pointWarehouse = intersections.get(intersectionWarehouse.getId()).getCoordinates();
 
 		HashMap<Integer, ArrivalPoint> tour = routeHelper.getRoute();
-		Set<Entry<Integer, ArrivalPoint>> entrySet = tour.entrySet();
-		Iterator<Entry<Integer, ArrivalPoint>> iterator = entrySet.iterator();
-		for (int i = 0; i < step + 1 && i < tour.size(); i++) {
-
-			Entry<Integer, ArrivalPoint> entry = iterator.next();
-			Point pointDelivery = new Point();
-
+		if (!tour.isEmpty()) {
 			// Drawing the entire path
-			for (Entry<Integer, ArrivalPoint> entryALLMAP : tour.entrySet()) {
-
-				ArrayList<Road> roadsToNextDP = entryALLMAP.getValue().getRoads();
-				for (Road r : roadsToNextDP) {
-					Graphics2D g2 = (Graphics2D) g;
-					Point destination = intersections.get(r.getOrigin()).getCoordinates();
-	                Point origine = intersections.get(r.getDestination()).getCoordinates();
-					Line2D lin = new Line2D.Float(((origine.x) / coefficient) + 5, ((origine.y) / coefficient) + 5,
-							((destination.x) / coefficient) + 5, ((destination.y) / coefficient) + 5);
-					g2.setColor(Color.GREEN);
-					g2.setStroke(new BasicStroke(3));
-					g2.draw(lin);
-				}
+			layers.drawRoute(g, coefficient, map, routeHelper);
 
+			// Drawing the path towards the 'step' delivery
+			int highlighted = Math.min(step, tour.size() - 1);
+			Iterator<Entry<Integer, ArrivalPoint>> iterator = tour.entrySet().iterator();
+			for (int i = 0; i < highlighted; i++) {
+				iterator.next();
 			}
-
-			// Drawing the path to wards the 'step' delivery
-			ArrayList<Road> roadsToNextDP = entry.getValue().getRoads();
-			for (Road r : roadsToNextDP) {
-				g.setColor(Color.BLACK);
-				Graphics2D g2 = (Graphics2D) g;
+			Entry<Integer, ArrivalPoint> entry = iterator.next();
+			Graphics2D g2 = (Graphics2D) g;
+			g2.setColor(Color.BLACK);
+			g2.setStroke(TOUR_STROKE);
+			for (Road r : entry.getValue().getRoads()) {
 				Point destination = intersections.get(r.getOrigin()).getCoordinates();
-                Point origine = intersections.get(r.getDestination()).getCoordinates();
-				Line2D lin = new Line2D.Float(((origine.x) / coefficient) + 5, ((origine.y) / coefficient) + 5,
-						((destination.x) / coefficient) + 5, ((destination.y) / coefficient) + 5);
-				g2.setStroke(new BasicStroke(3));
-				g2.draw(lin);
+				Point origine = intersections.get(r.getDestination()).getCoordinates();
+				g2.draw(new Line2D.Float(((origine.x) / coefficient) + 5, ((origine.y) / coefficient) + 5,
+						((destination.x) / coefficient) + 5, ((destination.y) / coefficient) + 5));
 			}
-			if (i == step) {
-				// g.setColor(new Color(0, 102, 0));
-				g.setColor(Color.BLACK);
-				pointDelivery = intersections.get(entry.getKey()).getCoordinates();
+			if (highlighted == step) {
+				Point pointDelivery = intersections.get(entry.getKey()).getCoordinates();
 				g.fillOval((int) (((pointDelivery.x)) / coefficient) - 5, (int) (((pointDelivery.y)) / coefficient) - 5,
 						20, 20);
 			}
 		}
 
 		// Draw Delivery points
-		for (Intersection in : intersections) {
-			Point p = new Point();
-			p = in.getCoordinates();
-			g.setColor(Color.BLUE);
-			g.fillOval((int) (((p.x)) / coefficient), (int) (((p.y)) / coefficient), 10, 10);
-		}
+		layers.drawIntersections(g, coefficient, map);
 
 		Delivery[] deliveries = deliveryQuery.getDeliveries();
 		g.setColor(new Color(20, 200, 20));
@@ -201,6 +152,53 @@ public class NavigateState implements ControllerActions {
 
 	}
 
+	/**
+	 * Displays the best tour found so far by the running computation, on top
+	 * of the map
+	 * 
+	 * @see com.hexagone.delivery.control.TourPreview#showTour(java.util.ArrayList, long)
+	 */
+	@Override
+	public void showTour(ArrayList<Integer> itinerary, long cost) {
+		previewItinerary = itinerary;
+		frame.repaint();
+	}
+
+	/**
+	 * Stops displaying the tour of the computation, once it is over
+	 */
+	public void clearPreview() {
+		previewItinerary = null;
+		frame.repaint();
+	}
+
+	/**
+	 * Draws the best tour found so far by the running computation, if there
+	 * is one
+	 * 
+	 * @param g
+	 *            the paint brush to draw the tour with
+	 * @param coefficient
+	 *            the scale at which the map is drawn
+	 * @param map
+	 *            the map the tour is computed on
+	 */
+	public void drawPreview(Graphics g, float coefficient, Map map) {
+		if (previewItinerary == null) {
+			return;
+		}
+		HashMap<Integer, Intersection> intersections = map.getIntersections();
+		Graphics2D g2 = (Graphics2D) g;
+		g2.setColor(Color.ORANGE);
+		g2.setStroke(TOUR_STROKE);
+		for (int i = 1; i < previewItinerary.size(); i++) {
+			Point origine = intersections.get(previewItinerary.get(i - 1)).getCoordinates();
+			Point destination = intersections.get(previewItinerary.get(i)).getCoordinates();
+			g2.draw(new Line2D.Float(((origine.x) / coefficient) + 5, ((origine.y) / coefficient) + 5,
+					((destination.x) / coefficient) + 5, ((destination.y) / coefficient) + 5));
+		}
+	}
+
 	/**
 	 * Repaints the frame when the tour starts
 	 */
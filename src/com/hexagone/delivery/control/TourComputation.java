@@ -0,0 +1,125 @@
+package com.hexagone.delivery.control;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
+
+import com.hexagone.delivery.algo.DeliveryComputer;
+import com.hexagone.delivery.algo.SolutionListener;
+import com.hexagone.delivery.models.DeliveryQuery;
+import com.hexagone.delivery.models.Map;
+import com.hexagone.delivery.models.RouteHelper;
+import com.hexagone.delivery.ui.ComputationDialog;
+import com.hexagone.delivery.ui.Popup;
+
+/**
+ * This class computes a tour off the event thread, the user following its
+ * progress in a ComputationDialog from which it can be stopped. The best tour
+ * found so far is drawn on the map meanwhile, so the user may keep it without
+ * waiting for the end of the search.
+ */
+class TourComputation {
+
+	/** Time in milliseconds between two refreshes of the progress */
+	private static final int PROGRESS_PERIOD = 200;
+
+	private TourComputation() {
+	}
+
+	/**
+	 * Computes the tour of a delivery query, and tells the user if none or
+	 * maybe not the best one was found. It is called from the event thread
+	 * and returns once the computation is over, the events being dispatched
+	 * meanwhile by the modal dialog.
+	 * 
+	 * @param map
+	 *            the map of the problem
+	 * @param delivery
+	 *            the delivery query to compute the tour of
+	 * @param preview
+	 *            displays the tours found during the computation
+	 * @return the computed route, null if no tour was found
+	 */
+	static RouteHelper computeDelivery(Map map, DeliveryQuery delivery, final TourPreview preview) {
+		final DeliveryComputer computer = new DeliveryComputer(map, delivery);
+		computer.setSolutionListener(new SolutionListener() {
+			@Override
+			public void solutionImproved(ArrayList<Integer> order, final long cost, long timestamp) {
+				/** The paths are known once the solvers run, the itinerary is built here */
+				final ArrayList<Integer> itinerary = new ArrayList<Integer>();
+				itinerary.add(order.get(0));
+				for (int i = 1; i < order.size(); i++) {
+					ArrayList<Integer> path = computer.getShortestPath(order.get(i - 1), order.get(i));
+					if (path.isEmpty()) {
+						/** No path between these points, the tour is not shown */
+						return;
+					}
+					itinerary.addAll(path.subList(1, path.size()));
+				}
+				SwingUtilities.invokeLater(new Runnable() {
+					@Override
+					public void run() {
+						preview.showTour(itinerary, cost);
+					}
+				});
+			}
+		});
+		final ComputationDialog dialog = new ComputationDialog(new Runnable() {
+			@Override
+			public void run() {
+				computer.cancel();
+			}
+		});
+		final long start = System.currentTimeMillis();
+		final Timer timer = new Timer(PROGRESS_PERIOD, new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				dialog.setProgress(computer.getExploredNodesNumber(), computer.getBestSolutionCost(),
+						System.currentTimeMillis() - start);
+			}
+		});
+		SwingWorker<Void, Void> worker = new SwingWorker<Void, Void>() {
+			@Override
+			protected Void doInBackground() {
+				computer.compute();
+				return null;
+			}
+
+			@Override
+			protected void done() {
+				timer.stop();
+				dialog.dispose();
+			}
+		};
+		worker.execute();
+		timer.start();
+		dialog.setVisible(true); // Returns once the worker disposed the dialog
+
+		try {
+			worker.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+
+		if (!computer.checkNotEmptySolution()) {
+			if (computer.checkTimeout()) {
+				Popup.showInformation("Aucune solution n'a été trouvée \ndans le temps imparti", "Temps de calcul écoulé");
+			} else {
+				Popup.showInformation("Il n'existe aucune tournée satisfaisante.", "Tournée impossible");
+			}
+			return null;
+		} else if (computer.checkTimeout()) {
+			Popup.showInformation("La tournée calculée n'est peut-être pas optimale.", "Temps de calcul écoulé");
+		}
+		computer.getDeliveryPoints();
+		return new RouteHelper(map, delivery, computer);
+	}
+}
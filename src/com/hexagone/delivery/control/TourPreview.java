@@ -0,0 +1,21 @@
+package com.hexagone.delivery.control;
+
+import java.util.ArrayList;
+
+/**
+ * This interface allows to display the tours found while a computation is
+ * still running
+ */
+public interface TourPreview {
+
+	/**
+	 * Displays the best tour found so far. It is called on the event thread.
+	 * 
+	 * @param itinerary
+	 *            the intersections to go through, from the warehouse back to
+	 *            the warehouse
+	 * @param cost
+	 *            the duration of the tour in seconds
+	 */
+	public void showTour(ArrayList<Integer> itinerary, long cost);
+}
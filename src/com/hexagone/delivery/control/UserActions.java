@@ -43,6 +43,14 @@ public interface UserActions {
 	 * @param idDP the identifier of the delivery point the user wants to look for
 	 */
 	public void searchDP(int idDP);
+
+	/**
+	 * Actions to make when the user clicks on the map
+	 * @param x the abscissa of the click in the drawing of the map
+	 * @param y the ordinate of the click in the drawing of the map
+	 * @param scale the scale at which the map is drawn
+	 */
+	public void mapClick(int x, int y, float scale);
 	
 	/**
 	 * This method is invoked when the user presses the delete key to remove a delivery point.
@@ -0,0 +1,335 @@
+package com.hexagone.delivery.launcher;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.hexagone.delivery.algo.DeliveryComputer;
+import com.hexagone.delivery.algo.SolvePolicy;
+import com.hexagone.delivery.models.ArrivalPoint;
+import com.hexagone.delivery.models.DeliveryQuery;
+import com.hexagone.delivery.models.Map;
+import com.hexagone.delivery.models.MapSnapshot;
+import com.hexagone.delivery.models.RouteHelper;
+import com.hexagone.delivery.xml.XMLDeserialiser;
+import com.hexagone.delivery.xml.XMLException;
+
+/**
+ * This class computes the plannings of many delivery queries on the same map,
+ * without the user interface. The map is loaded once and shared by all the
+ * computations, as well as the results of the shortest path searches. The
+ * queries are computed concurrently by a fixed number of threads, each tour
+ * being computed on one thread.
+ * 
+ * For each delivery query file, the planning is written in a text file of the
+ * same name, and a line is added to the summary file (summary.csv) of the
+ * output directory.
+ */
+public class BatchPlanner {
+
+	/** Name of the file summing up the computations */
+	private static final String SUMMARY_FILE = "summary.csv";
+	private static final String SUMMARY_HEADER = "query;deliveries;status;tour duration (s);computation time (ms);planning";
+
+	private static final String STATUS_OPTIMAL = "OK";
+	private static final String STATUS_TIMEOUT = "NOT_OPTIMAL";
+	private static final String STATUS_NO_TOUR = "NO_TOUR";
+	private static final String STATUS_ERROR = "ERROR";
+
+	private Map map;
+	private int threads;
+	private SolvePolicy solvePolicy;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param map
+	 *            the map shared by all the delivery queries
+	 * @param threads
+	 *            the number of tours computed at the same time
+	 * @param solvePolicy
+	 *            the limits of the computation of each tour
+	 */
+	public BatchPlanner(Map map, int threads, SolvePolicy solvePolicy) {
+		this.map = map;
+		this.threads = Math.max(1, threads);
+		this.solvePolicy = solvePolicy;
+	}
+
+	/**
+	 * Computes the plannings of the delivery queries and writes them, with the
+	 * summary, in the output directory. A query that cannot be loaded or has no
+	 * tour does not stop the others : it is reported in the summary.
+	 * 
+	 * @param queries
+	 *            the delivery query files
+	 * @param outputDirectory
+	 *            the directory of the plannings, created if needed
+	 * @return the lines of the summary, in the order of the queries
+	 * @throws IOException
+	 *             if the summary cannot be written
+	 * @throws InterruptedException
+	 *             if the thread is interrupted while waiting for the
+	 *             computations
+	 */
+	public ArrayList<String> plan(File[] queries, final File outputDirectory)
+			throws IOException, InterruptedException {
+		if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+			throw new IOException("Cannot create the directory " + outputDirectory);
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		ArrayList<Future<String>> results = new ArrayList<Future<String>>();
+		try {
+			for (final File query : queries) {
+				results.add(executor.submit(new Callable<String>() {
+					@Override
+					public String call() {
+						return plan(query, outputDirectory);
+					}
+				}));
+			}
+
+			ArrayList<String> summary = new ArrayList<String>();
+			for (Future<String> result : results) {
+				try {
+					summary.add(result.get());
+				} catch (ExecutionException e) {
+					/** plan(File, File) catches the errors of the computation */
+					throw new IllegalStateException(e.getCause());
+				}
+			}
+			writeSummary(summary, new File(outputDirectory, SUMMARY_FILE));
+			return summary;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Computes the planning of one delivery query and writes it in the output
+	 * directory
+	 * 
+	 * @param queryFile
+	 *            the delivery query file
+	 * @param outputDirectory
+	 *            the directory of the plannings
+	 * @return the line of the summary describing the computation
+	 */
+	private String plan(File queryFile, File outputDirectory) {
+		String name = queryFile.getName();
+		long start = System.currentTimeMillis();
+		try {
+			DeliveryQuery query = XMLDeserialiser.loadDeliveryQuery(queryFile);
+			int deliveries = query.getDeliveries().length;
+
+			DeliveryComputer computer = new DeliveryComputer(map, query);
+			/** The queries are computed in parallel, not each tour */
+			computer.setParallelism(1);
+			computer.setSolvePolicy(solvePolicy);
+			computer.compute();
+			long computationTime = System.currentTimeMillis() - start;
+			if (!computer.checkNotEmptySolution()) {
+				return summaryLine(name, deliveries, STATUS_NO_TOUR, "", computationTime, "");
+			}
+
+			RouteHelper routeHelper = new RouteHelper(map, query, computer);
+			File planning = new File(outputDirectory, planningName(name));
+			writePlanning(routeHelper, planning);
+
+			String status = computer.checkTimeout() ? STATUS_TIMEOUT : STATUS_OPTIMAL;
+			return summaryLine(name, deliveries, status, String.valueOf(tourDuration(query, routeHelper)),
+					computationTime, planning.getName());
+		} catch (XMLException | IOException | RuntimeException e) {
+			long computationTime = System.currentTimeMillis() - start;
+			System.err.println(name + " : " + e.getMessage());
+			return summaryLine(name, 0, STATUS_ERROR, "", computationTime, "");
+		}
+	}
+
+	/**
+	 * Gives the duration of the tour, from the departure from the warehouse to
+	 * the return to it
+	 * 
+	 * @param query
+	 *            the delivery query
+	 * @param routeHelper
+	 *            the route computed for the query
+	 * @return the duration in seconds
+	 */
+	private static long tourDuration(DeliveryQuery query, RouteHelper routeHelper) {
+		ArrivalPoint end = null;
+		for (ArrivalPoint arrivalPoint : routeHelper.getRoute().values()) {
+			end = arrivalPoint;
+		}
+		long departure = query.getWarehouse().getDepartureTime().getTime();
+		return (end.getDelivery().getArrivalTime().getTime() - departure) / 1000;
+	}
+
+	/**
+	 * Gives the name of the planning file of a delivery query file
+	 * 
+	 * @param queryName
+	 *            the name of the delivery query file
+	 * @return the name with the extension .txt
+	 */
+	private static String planningName(String queryName) {
+		int extension = queryName.lastIndexOf('.');
+		if (extension > 0) {
+			queryName = queryName.substring(0, extension);
+		}
+		return queryName + ".txt";
+	}
+
+	/**
+	 * @param summaryLine
+	 *            a line of the summary
+	 * @return true if the planning of the query was written
+	 */
+	private static boolean isPlanned(String summaryLine) {
+		String[] columns = summaryLine.split(";", -1);
+		String status = columns[columns.length - 4];
+		return status.equals(STATUS_OPTIMAL) || status.equals(STATUS_TIMEOUT);
+	}
+
+	private static String summaryLine(String query, int deliveries, String status, String tourDuration,
+			long computationTime, String planning) {
+		return query + ";" + deliveries + ";" + status + ";" + tourDuration + ";" + computationTime + ";" + planning;
+	}
+
+	private static void writePlanning(RouteHelper routeHelper, File file) throws IOException {
+		Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+		try {
+			routeHelper.writePlanning(writer);
+			writer.write(System.lineSeparator());
+		} finally {
+			writer.close();
+		}
+	}
+
+	private static void writeSummary(ArrayList<String> summary, File file) throws IOException {
+		PrintWriter writer = new PrintWriter(file, "UTF-8");
+		try {
+			writer.println(SUMMARY_HEADER);
+			for (String line : summary) {
+				writer.println(line);
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * Loads the map from its XML plan, or from its snapshot if the file has
+	 * the extension of the snapshots
+	 * 
+	 * @param file
+	 *            the plan or snapshot file
+	 * @return the map
+	 * @throws XMLException
+	 *             if the plan cannot be parsed
+	 * @throws IOException
+	 *             if the snapshot cannot be read
+	 */
+	static Map loadMap(File file) throws XMLException, IOException {
+		if (file.getName().endsWith(MapSnapshot.EXTENSION)) {
+			return MapSnapshot.load(file.toPath());
+		}
+		return XMLDeserialiser.loadMap(file);
+	}
+
+	/**
+	 * Gives the delivery query files of a directory, sorted by name
+	 * 
+	 * @param directory
+	 *            the directory of the delivery queries
+	 * @return the XML files of the directory
+	 * @throws IOException
+	 *             if the directory cannot be read
+	 */
+	private static File[] listQueries(File directory) throws IOException {
+		File[] queries = directory.listFiles(new FileFilter() {
+			@Override
+			public boolean accept(File file) {
+				return file.isFile() && file.getName().toLowerCase().endsWith(".xml");
+			}
+		});
+		if (queries == null) {
+			throw new IOException("Cannot read the directory " + directory);
+		}
+		Arrays.sort(queries);
+		return queries;
+	}
+
+	/**
+	 * Computes in batch the plannings of all the delivery queries of a
+	 * directory.
+	 * 
+	 * Usage : BatchPlanner map.xml queriesDirectory outputDirectory [-threads
+	 * n] [-time milliseconds]
+	 * 
+	 * The map may also be given as a snapshot (.hxmap file), which is loaded
+	 * much faster.
+	 * 
+	 * @param args
+	 *            the map file, the directory of the delivery queries, the
+	 *            directory of the plannings, and optionally the number of
+	 *            tours computed at the same time (one per processor by
+	 *            default) and the time limit of each tour
+	 */
+	public static void main(String[] args) {
+		int threads = Runtime.getRuntime().availableProcessors();
+		SolvePolicy solvePolicy = new SolvePolicy();
+		ArrayList<String> files = new ArrayList<String>();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-threads") && i + 1 < args.length) {
+				threads = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-time") && i + 1 < args.length) {
+				solvePolicy.setTimeLimit(Long.parseLong(args[++i]));
+			} else {
+				files.add(args[i]);
+			}
+		}
+		if (files.size() != 3) {
+			System.err.println(
+					"Usage : BatchPlanner map.xml queriesDirectory outputDirectory [-threads n] [-time milliseconds]");
+			System.exit(2);
+		}
+
+		try {
+			Map map = loadMap(new File(files.get(0)));
+			File[] queries = listQueries(new File(files.get(1)));
+			File outputDirectory = new File(files.get(2));
+
+			long start = System.currentTimeMillis();
+			ArrayList<String> summary = new BatchPlanner(map, threads, solvePolicy).plan(queries, outputDirectory);
+			int planned = 0;
+			for (String line : summary) {
+				if (isPlanned(line)) {
+					planned++;
+				}
+			}
+			System.out.println(planned + " plannings out of " + queries.length + " delivery queries written in "
+					+ outputDirectory + " (" + (System.currentTimeMillis() - start) + " ms)");
+			if (planned < queries.length) {
+				System.exit(1);
+			}
+		} catch (XMLException | IOException | InterruptedException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+		}
+	}
+}
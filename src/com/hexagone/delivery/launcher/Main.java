@@ -1,6 +1,13 @@
 package com.hexagone.delivery.launcher;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
 import com.hexagone.delivery.control.Controller;
+import com.hexagone.delivery.models.MapSnapshot;
+import com.hexagone.delivery.xml.XMLDeserialiser;
+import com.hexagone.delivery.xml.XMLException;
 
 /**
  * This class manages the launch of the application. Starting point of the
@@ -9,10 +16,29 @@ import com.hexagone.delivery.control.Controller;
 public class Main {
 
 	/**
-	 * Launching of the application. No parameters.
-	 * @param args no parameters needed
+	 * Launching of the application. Without parameters, the user interface is
+	 * opened. With -batch, the plannings are computed without it. With
+	 * -snapshot plan.xml snapshot.hxmap, the snapshot of a map is written.
+	 * @param args no parameters needed, or -batch followed by the parameters of
+	 *            BatchPlanner, or -snapshot followed by the plan and snapshot
+	 *            files
+	 * @see BatchPlanner#main(String[])
+	 * @see MapSnapshot
 	 */
 	public static void main(String[] args) {
+		if (args.length > 0 && args[0].equals("-batch")) {
+			BatchPlanner.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+		if (args.length == 3 && args[0].equals("-snapshot")) {
+			try {
+				MapSnapshot.write(XMLDeserialiser.loadMap(new File(args[1])), new File(args[2]).toPath());
+			} catch (XMLException | IOException e) {
+				System.err.println(e.getMessage());
+				System.exit(1);
+			}
+			return;
+		}
 		Controller c = new Controller();
 		c.launch();
 	}
@@ -0,0 +1,234 @@
+/**
+ * Package containing all the classes modelling our problem.
+ */
+package com.hexagone.delivery.models;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+
+/**
+ * This class is an immutable view of the road network of a Map, stored in
+ * compressed sparse row form so that the algorithms only deal with primitive
+ * arrays. It carries several information :
+ * <ul>
+ * <li>a dense index (from 0 to getIntersectionsNumber() - 1) for every
+ * intersection, and the translation table between indexes and identifiers</li>
+ * <li>the offsets : the roads starting from the intersection of index i are
+ * the roads of index offsets[i] (included) to offsets[i + 1] (excluded)</li>
+ * <li>the target intersection index of each road</li>
+ * <li>the time needed to travel down each road, in seconds</li>
+ * </ul>
+ * The arrays given back by the getters are the internal ones, they must not be
+ * modified.
+ * 
+ * @see Map#getCompactGraph()
+ */
+public class CompactGraph {
+
+	/** Identifier of the intersection of each index, in ascending order */
+	private final int[] identifiers;
+	/** First road of each intersection index, plus the total number of roads */
+	private final int[] offsets;
+	/** Index of the destination intersection of each road */
+	private final int[] targets;
+	/** Time needed to travel down each road in seconds */
+	private final double[] times;
+	/** Hash of the whole network, equal for two maps with the same roads */
+	private final long fingerprint;
+
+	/**
+	 * Builds the compact view of a map. Every intersection of the map, and
+	 * every origin or destination of its roads, gets an index.
+	 * 
+	 * @param map
+	 *            the map to freeze
+	 */
+	CompactGraph(Map map) {
+		HashSet<Integer> allIdentifiers = new HashSet<Integer>(map.getIntersections().keySet());
+		int nbRoads = 0;
+		for (ArrayList<Road> roadsFromOrigin : map.getRoads().values()) {
+			for (Road road : roadsFromOrigin) {
+				allIdentifiers.add(road.getOrigin());
+				allIdentifiers.add(road.getDestination());
+				nbRoads++;
+			}
+		}
+
+		identifiers = new int[allIdentifiers.size()];
+		int i = 0;
+		for (Integer identifier : allIdentifiers) {
+			identifiers[i++] = identifier;
+		}
+		Arrays.sort(identifiers);
+
+		offsets = new int[identifiers.length + 1];
+		targets = new int[nbRoads];
+		times = new double[nbRoads];
+		int road = 0;
+		for (int index = 0; index < identifiers.length; index++) {
+			offsets[index] = road;
+			ArrayList<Road> roadsFromOrigin = map.getRoadsStartingFrom(identifiers[index]);
+			if (roadsFromOrigin != null) {
+				for (Road r : roadsFromOrigin) {
+					targets[road] = getIndex(r.getDestination());
+					times[road] = r.getTime();
+					road++;
+				}
+			}
+		}
+		offsets[identifiers.length] = road;
+		fingerprint = fingerprint();
+	}
+
+	/**
+	 * Builds a compact view from its arrays, e.g. read from a snapshot of a
+	 * map. The arrays are used as they are, they must not be modified
+	 * afterwards.
+	 * 
+	 * @param identifiers
+	 *            the identifier of the intersection of each index, in
+	 *            ascending order
+	 * @param offsets
+	 *            the first road of each intersection index, plus the number
+	 *            of roads
+	 * @param targets
+	 *            the index of the destination intersection of each road
+	 * @param times
+	 *            the time needed to travel down each road in seconds
+	 * @see MapSnapshot
+	 */
+	CompactGraph(int[] identifiers, int[] offsets, int[] targets, double[] times) {
+		this.identifiers = identifiers;
+		this.offsets = offsets;
+		this.targets = targets;
+		this.times = times;
+		this.fingerprint = fingerprint();
+	}
+
+	/**
+	 * Hashes the arrays of the graph on 64 bits. Each value is scrambled
+	 * before being combined, so that changes of several values do not cancel
+	 * out as they would with a plain polynomial hash.
+	 */
+	private long fingerprint() {
+		long hash = combine(1125899906842597L, identifiers.length);
+		hash = combine(hash, targets.length);
+		for (int identifier : identifiers) {
+			hash = combine(hash, identifier);
+		}
+		for (int offset : offsets) {
+			hash = combine(hash, offset);
+		}
+		for (int target : targets) {
+			hash = combine(hash, target);
+		}
+		for (double time : times) {
+			hash = combine(hash, Double.doubleToLongBits(time));
+		}
+		return scramble(hash);
+	}
+
+	/**
+	 * Adds a value to a hash, the result depending on the order of the values
+	 */
+	private static long combine(long hash, long value) {
+		return Long.rotateLeft((hash ^ scramble(value)) * 0x9E3779B97F4A7C15L, 31);
+	}
+
+	/**
+	 * Mixes the bits of a value, each bit of the result depending on all the
+	 * bits of the value (finalizer of SplitMix64)
+	 */
+	private static long scramble(long value) {
+		long z = value + 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Gives the number of intersections of the graph
+	 * 
+	 * @return the number of intersection indexes
+	 */
+	public int getIntersectionsNumber() {
+		return identifiers.length;
+	}
+
+	/**
+	 * Gives the number of roads of the graph
+	 * 
+	 * @return the number of roads
+	 */
+	public int getRoadsNumber() {
+		return targets.length;
+	}
+
+	/**
+	 * Gives the dense index of an intersection
+	 * 
+	 * @param identifier
+	 *            the unique identifier of the intersection
+	 * @return the index of the intersection, or -1 if it is not part of the
+	 *         graph
+	 */
+	public int getIndex(int identifier) {
+		int index = Arrays.binarySearch(identifiers, identifier);
+		return index < 0 ? -1 : index;
+	}
+
+	/**
+	 * Gives the identifier of the intersection of a given index
+	 * 
+	 * @param index
+	 *            the dense index of the intersection
+	 * @return the unique identifier of the intersection
+	 */
+	public int getIdentifier(int index) {
+		return identifiers[index];
+	}
+
+	/**
+	 * @return the identifier of the intersection of each index
+	 */
+	public int[] getIdentifiers() {
+		return identifiers;
+	}
+
+	/**
+	 * @return the offsets of the roads starting from each intersection index
+	 */
+	public int[] getOffsets() {
+		return offsets;
+	}
+
+	/**
+	 * @return the destination intersection index of each road
+	 */
+	public int[] getTargets() {
+		return targets;
+	}
+
+	/**
+	 * @return the time needed to travel down each road, in seconds
+	 */
+	public double[] getTimes() {
+		return times;
+	}
+
+	/**
+	 * Gives a hash of the whole road network, so that the results computed on
+	 * a map can be reused on another map with the same intersections and roads
+	 * 
+	 * @return the 64 bits hash of the graph
+	 */
+	public long getFingerprint() {
+		return fingerprint;
+	}
+
+	@Override
+	public String toString() {
+		return "CompactGraph [intersections = " + identifiers.length + ", roads = " + targets.length + "]";
+	}
+}
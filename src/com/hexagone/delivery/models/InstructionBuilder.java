@@ -0,0 +1,282 @@
+/**
+ * Package containing all the classes modelling our problem.
+ */
+package com.hexagone.delivery.models;
+
+import java.awt.Point;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+
+/**
+ * This class writes the planning of a route : the departure from the
+ * warehouse, then for each arrival point the roads to take and the delivery.
+ * Each road is described by the way to turn into it and by its rank among the
+ * roads turning the same way, counted from the smallest angle.
+ * 
+ * The angles are computed from the headings of the roads, kept once per map,
+ * and the planning is written as it goes to any Appendable, so that it costs
+ * one pass over the roads of the route.
+ * 
+ * @see RoadHeadings
+ */
+class InstructionBuilder {
+
+	private static final String ONE_INDENT = "        ";
+	private static final String TWO_INDENT = "                ";
+	/** Width in degrees of the angles counted as going straight on */
+	private static final int THRESHOLD = 10;
+
+	private final Map map;
+	private final HashMap<Integer, Intersection> intersections;
+	private final RoadHeadings headings;
+
+	/**
+	 * Constructor
+	 * 
+	 * @param map
+	 *            the map the routes go through
+	 */
+	InstructionBuilder(Map map) {
+		this.map = map;
+		this.intersections = map.getIntersections();
+		this.headings = map.getRoadHeadings();
+	}
+
+	/**
+	 * Writes the planning of a route
+	 * 
+	 * @param out
+	 *            where to write the planning
+	 * @param deliveryQuery
+	 *            the delivery query the route answers
+	 * @param route
+	 *            the arrival points of the route, in order, with their times
+	 *            already computed
+	 * @throws IOException
+	 *             if the planning could not be written
+	 */
+	void appendPlanning(Appendable out, DeliveryQuery deliveryQuery, LinkedHashMap<Integer, ArrivalPoint> route)
+			throws IOException {
+		// Setting formats
+		SimpleDateFormat full = new SimpleDateFormat("dd MMMM. yyyy", Locale.FRENCH);
+		SimpleDateFormat small = new SimpleDateFormat("HH:mm", Locale.FRENCH);
+		// Displaying title
+		Date departureTime = deliveryQuery.getWarehouse().getDepartureTime();
+		out.append("Mon planning (").append(full.format(departureTime)).append(")\n\n");
+		out.append(ONE_INDENT).append("Départ de l'entrepôt à ").append(small.format(departureTime)).append(". ");
+		out.append("Rejoindre l'intersection ")
+				.append(String.valueOf(route.values().iterator().next().getRoads().get(0).getOrigin())).append(".\n");
+
+		// Iterating over arrival points
+		int deliveryCounter = 0;
+		for (ArrivalPoint arrivalPoint : route.values()) {
+			Delivery delivery = arrivalPoint.getDelivery();
+			if (deliveryCounter > 0) {
+				out.append(ONE_INDENT).append("Départ du point de livraison à ").append(small.format(departureTime))
+						.append(".\n");
+			}
+
+			Road lastRoad = null;
+			int roadCounter = 1;
+			for (Road road : arrivalPoint.getRoads()) {
+				int deg = 0;
+				int pos = 0;
+				if (lastRoad != null) {
+					/** Move from the crossroads back to where the last road started */
+					Point from = intersections.get(lastRoad.getOrigin()).getCoordinates();
+					Point crossroads = intersections.get(road.getOrigin()).getCoordinates();
+					int backX = from.x - crossroads.x;
+					int backY = from.y - crossroads.y;
+					deg = getAngle(road, backX, backY);
+					pos = getPosition(road, backX, backY, deg);
+				}
+				out.append(TWO_INDENT).append(String.valueOf(roadCounter)).append("- Prendre la ");
+				appendPosition(out, pos);
+				out.append(' ').append(getDirection(deg)).append(" jusqu'à l'intersection ")
+						.append(String.valueOf(road.getDestination())).append('\n');
+				lastRoad = road;
+				roadCounter++;
+			}
+			if (deliveryCounter != route.size() - 1) {
+				out.append(ONE_INDENT).append("Livraison du point ")
+						.append(String.valueOf(delivery.getIntersection().getId())).append(". Arrivée: ")
+						.append(small.format(delivery.getArrivalTime())).append(".\n");
+			} else {
+				out.append(ONE_INDENT).append("Fin de la tournée à ").append(small.format(delivery.getArrivalTime()));
+			}
+			if (delivery.getWaitingTime() != 0) {
+				out.append(ONE_INDENT).append("Attendre ").append(String.valueOf(delivery.getWaitingTime()))
+						.append(" minutes puis procéder à la livraison.\n");
+			}
+			out.append('\n');
+			deliveryCounter++;
+			departureTime = delivery.getDepartureTime();
+		}
+	}
+
+	/**
+	 * Gives the rank of a road among the roads of its origin turning the same
+	 * way, counted from the smallest angle. Ties with the road itself are
+	 * ranked as the sort of the list of those roads ranks them.
+	 * 
+	 * @param road
+	 *            the road taken
+	 * @param backX
+	 *            the move along x from the origin of the road back to where
+	 *            the previous road started
+	 * @param backY
+	 *            the same move along y
+	 * @param deg
+	 *            the angle between the previous road and the road
+	 * @return the rank from 1, 0 if the road goes straight on
+	 */
+	private int getPosition(Road road, int backX, int backY, int deg) {
+		int side = getSide(deg);
+		if (side == 0) {
+			return 0;
+		}
+		ArrayList<Road> roads = map.getRoadsStartingFrom(road.getOrigin());
+		int[] moves = headings.getHeadings(road.getOrigin());
+		int index = indexOf(roads, road);
+		if (index < 0) {
+			return 0;
+		}
+		int smaller = 0;
+		boolean tie = false;
+		for (int i = 0; i < roads.size(); i++) {
+			if (i != index) {
+				int angle = getAngle(backX, backY, moves[2 * i], moves[2 * i + 1]);
+				if (getSide(angle) == side) {
+					if (angle < deg) {
+						smaller++;
+					} else if (angle == deg) {
+						tie = true;
+					}
+				}
+			}
+		}
+		if (!tie) {
+			return 1 + smaller;
+		}
+
+		/** Same angles : the order given by the sort depends on the order of the roads */
+		final int[] angles = new int[roads.size()];
+		ArrayList<Integer> sameSide = new ArrayList<Integer>();
+		for (int i = 0; i < roads.size(); i++) {
+			angles[i] = getAngle(backX, backY, moves[2 * i], moves[2 * i + 1]);
+			if (getSide(angles[i]) == side) {
+				sameSide.add(i);
+			}
+		}
+		Integer[] sorted = sameSide.toArray(new Integer[sameSide.size()]);
+		Arrays.sort(sorted, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer i1, Integer i2) {
+				return angles[i1] > angles[i2] ? 1 : -1;
+			}
+		});
+		return 1 + Arrays.asList(sorted).indexOf(index);
+	}
+
+	/**
+	 * Gives the angle between the previous road and a road
+	 */
+	private int getAngle(Road road, int backX, int backY) {
+		int index = indexOf(map.getRoadsStartingFrom(road.getOrigin()), road);
+		if (index < 0) {
+			/** A road which is not part of the map any more */
+			Point origin = intersections.get(road.getOrigin()).getCoordinates();
+			Point destination = intersections.get(road.getDestination()).getCoordinates();
+			return getAngle(backX, backY, destination.x - origin.x, destination.y - origin.y);
+		}
+		int[] moves = headings.getHeadings(road.getOrigin());
+		return getAngle(backX, backY, moves[2 * index], moves[2 * index + 1]);
+	}
+
+	/**
+	 * Returns the angle at a point between the directions of two other points
+	 * 
+	 * @param x0
+	 *            the move along x from the point to the first one
+	 * @param y0
+	 *            the move along y from the point to the first one
+	 * @param x2
+	 *            the move along x from the point to the second one
+	 * @param y2
+	 *            the move along y from the point to the second one
+	 * @return the angle in degrees, between 0 and 180
+	 */
+	static int getAngle(long x0, long y0, long x2, long y2) {
+		double b = x0 * x0 + y0 * y0;
+		double a = x2 * x2 + y2 * y2;
+		double c = (x2 - x0) * (x2 - x0) + (y2 - y0) * (y2 - y0);
+		double res = Math.acos((a + b - c) / Math.sqrt(4 * a * b));
+		res = res * 180 / Math.PI;
+		return (int) res;
+	}
+
+	/**
+	 * Tells which way an angle turns
+	 * 
+	 * @return 1 for the right, 2 for the left, 0 for straight on
+	 */
+	private static int getSide(int deg) {
+		if (deg > THRESHOLD / 2 && deg < 90) {
+			return 1;
+		}
+		if (deg > 90 && deg < (360 - THRESHOLD / 2)) {
+			return 2;
+		}
+		return 0;
+	}
+
+	/**
+	 * Interprets a degree and gives its direction
+	 */
+	private static String getDirection(int deg) {
+		switch (getSide(deg)) {
+		case 1:
+			return "à droite";
+		case 2:
+			return "à gauche";
+		default:
+			return "tout droit";
+		}
+	}
+
+	/**
+	 * Writes a position as its number and suffix, followed by "rue"
+	 */
+	private static void appendPosition(Appendable out, int pos) throws IOException {
+		if (pos > 1) {
+			out.append(String.valueOf(pos)).append("ème ");
+		}
+		if (pos == 1) {
+			out.append("1ère ");
+		}
+		out.append("rue");
+	}
+
+	/**
+	 * Gives the position of a road in a list, the roads being compared as
+	 * objects
+	 */
+	private static int indexOf(ArrayList<Road> roads, Road road) {
+		if (roads == null) {
+			return -1;
+		}
+		for (int i = 0; i < roads.size(); i++) {
+			if (roads.get(i) == road) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
@@ -26,6 +26,21 @@ public class Map {
 	 * from this intersection
 	 */
 	private HashMap<Integer, ArrayList<Road>> roads;
+	/**
+	 * Compact view of the roads, built on demand and discarded each time the
+	 * map is modified
+	 */
+	private CompactGraph compactGraph;
+	/**
+	 * Grid over the intersections and roads, built on demand and discarded
+	 * each time the map is modified
+	 */
+	private SpatialIndex spatialIndex;
+	/**
+	 * Heading of every road, built on demand and discarded each time the map
+	 * is modified
+	 */
+	private RoadHeadings roadHeadings;
 
 	/**
 	 * Getter for all the Roads present in the map
@@ -56,6 +71,9 @@ public class Map {
 	 */
 	public void setRoads(HashMap<Integer, ArrayList<Road>> roads) {
 		this.roads = roads;
+		this.compactGraph = null;
+		this.spatialIndex = null;
+		this.roadHeadings = null;
 	}
 
 	/**
@@ -80,6 +98,9 @@ public class Map {
 	 */
 	public void addIntersection(Intersection intersection) {
 		intersections.put(intersection.getId(), intersection);
+		compactGraph = null;
+		spatialIndex = null;
+		roadHeadings = null;
 	}
 
 	/**
@@ -98,6 +119,66 @@ public class Map {
 		}
 		roadListFromOrigin.add(r);
 		roads.put(r.getOrigin(), roadListFromOrigin);
+		compactGraph = null;
+		spatialIndex = null;
+		roadHeadings = null;
+	}
+
+	/**
+	 * Freezes the road network of the map into an immutable compressed sparse
+	 * row view, used by the shortest path algorithms. The view is built on the
+	 * first call and kept until the map is modified through one of its adders
+	 * or setters. Modifying the collections given back by getRoads or
+	 * getIntersections directly is not detected.
+	 * 
+	 * @return the compact view of the current road network
+	 */
+	public synchronized CompactGraph getCompactGraph() {
+		if (compactGraph == null) {
+			compactGraph = new CompactGraph(this);
+		}
+		return compactGraph;
+	}
+
+	/**
+	 * Gives the map a compact view built beforehand, e.g. read from a snapshot
+	 * along with the map, instead of building it on the first call to
+	 * getCompactGraph
+	 * 
+	 * @param compactGraph
+	 *            the compact view of the current road network
+	 */
+	synchronized void setCompactGraph(CompactGraph compactGraph) {
+		this.compactGraph = compactGraph;
+	}
+
+	/**
+	 * Gives a grid over the intersections and roads of the map, to find what
+	 * lies in an area or close to a point. The grid is built on the first call
+	 * and kept until the map is modified through one of its adders or
+	 * setters, as the compact graph.
+	 * 
+	 * @return the grid over the current intersections and roads
+	 */
+	public synchronized SpatialIndex getSpatialIndex() {
+		if (spatialIndex == null) {
+			spatialIndex = new SpatialIndex(this);
+		}
+		return spatialIndex;
+	}
+
+	/**
+	 * Gives the heading of every road of the map, used to describe the turns
+	 * of a route. The headings are computed on the first call and kept until
+	 * the map is modified through one of its adders or setters.
+	 * 
+	 * @return the headings of the current roads
+	 */
+	synchronized RoadHeadings getRoadHeadings() {
+		if (roadHeadings == null) {
+			roadHeadings = new RoadHeadings(this);
+		}
+		return roadHeadings;
 	}
 
 	public HashMap<Integer, Intersection> getIntersections() {
@@ -106,6 +187,9 @@ public class Map {
 
 	public void setIntersections(HashMap<Integer, Intersection> intersections) {
 		this.intersections = intersections;
+		this.compactGraph = null;
+		this.spatialIndex = null;
+		this.roadHeadings = null;
 	}
 
 	/*
@@ -0,0 +1,330 @@
+/**
+ * Package containing all the classes modelling our problem.
+ */
+package com.hexagone.delivery.models;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class builds a Map from the intersections and roads read by a loader,
+ * given as blocks of primitive arrays, e.g. the blocks of a file parsed by
+ * several threads. The blocks are given in the order of the file, and the map
+ * built is the one the successive calls to addIntersection and addRoad would
+ * give, but the work is shared by several threads :
+ * <ul>
+ * <li>the roads are first sorted by origin in compressed sparse row arrays,
+ * sized once from the number of roads of each origin</li>
+ * <li>the intersections and roads of each origin are then created by the
+ * thread in charge of a range of origins, so that no list is shared between
+ * threads</li>
+ * </ul>
+ * The compact graph of the map is built along with it.
+ * 
+ * @see CompactGraph
+ */
+public class MapBuilder {
+
+	/** Number of intersection indexes below which a task does not split */
+	private static final int TASK_SIZE = 4096;
+
+	private final int parallelism;
+	private ArrayList<IntersectionBlock> intersectionBlocks = new ArrayList<IntersectionBlock>();
+	private ArrayList<RoadBlock> roadBlocks = new ArrayList<RoadBlock>();
+
+	/**
+	 * Constructor
+	 * 
+	 * @param parallelism
+	 *            the number of threads building the map, 1 to build it on the
+	 *            calling thread
+	 */
+	public MapBuilder(int parallelism) {
+		this.parallelism = Math.max(1, parallelism);
+	}
+
+	/**
+	 * Adds a block of intersections. An intersection whose identifier was
+	 * already given replaces the previous one, as in Map.addIntersection.
+	 * 
+	 * @param identifiers
+	 *            the identifier of each intersection
+	 * @param xs
+	 *            the abscissa of each intersection
+	 * @param ys
+	 *            the ordinate of each intersection
+	 * @param count
+	 *            the number of intersections of the block, at the start of the
+	 *            arrays
+	 */
+	public void addIntersections(int[] identifiers, int[] xs, int[] ys, int count) {
+		intersectionBlocks.add(new IntersectionBlock(identifiers, xs, ys, count));
+	}
+
+	/**
+	 * Adds a block of roads. The roads starting from the same intersection
+	 * keep the order in which they are given.
+	 * 
+	 * @param origins
+	 *            the identifier of the origin of each road
+	 * @param destinations
+	 *            the identifier of the destination of each road
+	 * @param lengths
+	 *            the length of each road in decimetres
+	 * @param speeds
+	 *            the average speed on each road in Km/h
+	 * @param names
+	 *            the street name of each road
+	 * @param count
+	 *            the number of roads of the block, at the start of the arrays
+	 */
+	public void addRoads(int[] origins, int[] destinations, int[] lengths, int[] speeds, String[] names, int count) {
+		roadBlocks.add(new RoadBlock(origins, destinations, lengths, speeds, names, count));
+	}
+
+	/**
+	 * Builds the map from all the blocks given
+	 * 
+	 * @return the map, with its compact graph already built
+	 */
+	public Map build() {
+		final int[] identifiers = collectIdentifiers();
+		final int nbIndexes = identifiers.length;
+
+		/** Last intersection given for each index, as (block, position) */
+		final int[] intersectionBlock = new int[nbIndexes];
+		final int[] intersectionPosition = new int[nbIndexes];
+		Arrays.fill(intersectionBlock, -1);
+		for (int block = 0; block < intersectionBlocks.size(); block++) {
+			IntersectionBlock intersections = intersectionBlocks.get(block);
+			for (int i = 0; i < intersections.count; i++) {
+				int index = Arrays.binarySearch(identifiers, intersections.identifiers[i]);
+				intersectionBlock[index] = block;
+				intersectionPosition[index] = i;
+			}
+		}
+
+		/** Origin and destination indexes of the roads, block by block */
+		final int[][] originIndexes = new int[roadBlocks.size()][];
+		final int[][] targetIndexes = new int[roadBlocks.size()][];
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			pool.invoke(new RangeTask(new RangeWork() {
+				@Override
+				public void computeRange(int from, int to) {
+					for (int block = from; block < to; block++) {
+						RoadBlock roads = roadBlocks.get(block);
+						originIndexes[block] = new int[roads.count];
+						targetIndexes[block] = new int[roads.count];
+						for (int i = 0; i < roads.count; i++) {
+							originIndexes[block][i] = Arrays.binarySearch(identifiers, roads.origins[i]);
+							targetIndexes[block][i] = Arrays.binarySearch(identifiers, roads.destinations[i]);
+						}
+					}
+				}
+			}, 0, roadBlocks.size(), 1));
+
+			/** Compressed sparse row arrays, the roads of each origin in the order given */
+			final int[] offsets = new int[nbIndexes + 1];
+			int nbRoads = 0;
+			for (int block = 0; block < roadBlocks.size(); block++) {
+				for (int i = 0; i < roadBlocks.get(block).count; i++) {
+					offsets[originIndexes[block][i] + 1]++;
+				}
+				nbRoads += roadBlocks.get(block).count;
+			}
+			for (int index = 0; index < nbIndexes; index++) {
+				offsets[index + 1] += offsets[index];
+			}
+			final int[] targets = new int[nbRoads];
+			final int[] roadBlock = new int[nbRoads];
+			final int[] roadPosition = new int[nbRoads];
+			int[] cursors = Arrays.copyOf(offsets, nbIndexes);
+			for (int block = 0; block < roadBlocks.size(); block++) {
+				for (int i = 0; i < roadBlocks.get(block).count; i++) {
+					int road = cursors[originIndexes[block][i]]++;
+					targets[road] = targetIndexes[block][i];
+					roadBlock[road] = block;
+					roadPosition[road] = i;
+				}
+			}
+
+			/** Objects of the model, each range of origins on its own thread */
+			final Intersection[] intersections = new Intersection[nbIndexes];
+			@SuppressWarnings({ "unchecked", "rawtypes" })
+			final ArrayList<Road>[] roads = new ArrayList[nbIndexes];
+			final double[] times = new double[nbRoads];
+			pool.invoke(new RangeTask(new RangeWork() {
+				@Override
+				public void computeRange(int from, int to) {
+					for (int index = from; index < to; index++) {
+						Integer identifier = identifiers[index];
+						if (intersectionBlock[index] >= 0) {
+							IntersectionBlock block = intersectionBlocks.get(intersectionBlock[index]);
+							int i = intersectionPosition[index];
+							intersections[index] = new Intersection(identifier, block.xs[i], block.ys[i]);
+						}
+						if (offsets[index + 1] > offsets[index]) {
+							ArrayList<Road> roadsFromOrigin = new ArrayList<Road>(offsets[index + 1] - offsets[index]);
+							for (int road = offsets[index]; road < offsets[index + 1]; road++) {
+								RoadBlock block = roadBlocks.get(roadBlock[road]);
+								int i = roadPosition[road];
+								Road r = new Road(identifier, block.destinations[i], block.lengths[i], block.speeds[i],
+										block.names[i]);
+								times[road] = r.getTime();
+								roadsFromOrigin.add(r);
+							}
+							roads[index] = roadsFromOrigin;
+						}
+					}
+				}
+			}, 0, nbIndexes, TASK_SIZE));
+
+			HashMap<Integer, Intersection> intersectionsMap = new HashMap<Integer, Intersection>(
+					nbIndexes * 4 / 3 + 1);
+			HashMap<Integer, ArrayList<Road>> roadsMap = new HashMap<Integer, ArrayList<Road>>(nbIndexes * 4 / 3 + 1);
+			for (int index = 0; index < nbIndexes; index++) {
+				if (intersections[index] != null) {
+					intersectionsMap.put(identifiers[index], intersections[index]);
+				}
+				if (roads[index] != null) {
+					roadsMap.put(identifiers[index], roads[index]);
+				}
+			}
+
+			Map map = new Map();
+			map.setIntersections(intersectionsMap);
+			map.setRoads(roadsMap);
+			map.setCompactGraph(new CompactGraph(identifiers, offsets, targets, times));
+			return map;
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Gives the identifiers of all the intersections and of all the origins and
+	 * destinations of the roads
+	 * 
+	 * @return the identifiers, sorted in ascending order without duplicates
+	 */
+	private int[] collectIdentifiers() {
+		int size = 0;
+		for (IntersectionBlock block : intersectionBlocks) {
+			size += block.count;
+		}
+		for (RoadBlock block : roadBlocks) {
+			size += 2 * block.count;
+		}
+		int[] all = new int[size];
+		int i = 0;
+		for (IntersectionBlock block : intersectionBlocks) {
+			System.arraycopy(block.identifiers, 0, all, i, block.count);
+			i += block.count;
+		}
+		for (RoadBlock block : roadBlocks) {
+			System.arraycopy(block.origins, 0, all, i, block.count);
+			i += block.count;
+			System.arraycopy(block.destinations, 0, all, i, block.count);
+			i += block.count;
+		}
+		if (parallelism > 1) {
+			Arrays.parallelSort(all);
+		} else {
+			Arrays.sort(all);
+		}
+
+		int distinct = 0;
+		for (i = 0; i < all.length; i++) {
+			if (distinct == 0 || all[i] != all[distinct - 1]) {
+				all[distinct++] = all[i];
+			}
+		}
+		return Arrays.copyOf(all, distinct);
+	}
+
+	/**
+	 * The intersections given by one call to addIntersections
+	 */
+	private static final class IntersectionBlock {
+
+		private final int[] identifiers;
+		private final int[] xs;
+		private final int[] ys;
+		private final int count;
+
+		IntersectionBlock(int[] identifiers, int[] xs, int[] ys, int count) {
+			this.identifiers = identifiers;
+			this.xs = xs;
+			this.ys = ys;
+			this.count = count;
+		}
+	}
+
+	/**
+	 * The roads given by one call to addRoads
+	 */
+	private static final class RoadBlock {
+
+		private final int[] origins;
+		private final int[] destinations;
+		private final int[] lengths;
+		private final int[] speeds;
+		private final String[] names;
+		private final int count;
+
+		RoadBlock(int[] origins, int[] destinations, int[] lengths, int[] speeds, String[] names, int count) {
+			this.origins = origins;
+			this.destinations = destinations;
+			this.lengths = lengths;
+			this.speeds = speeds;
+			this.names = names;
+			this.count = count;
+		}
+	}
+
+	/**
+	 * Work done on a range of elements
+	 */
+	private interface RangeWork {
+
+		/**
+		 * Does the work on the elements 'from' (included) to 'to' (excluded)
+		 */
+		void computeRange(int from, int to);
+	}
+
+	/**
+	 * Task doing a work on the elements 'from' (included) to 'to' (excluded),
+	 * splitting itself until it has at most 'size' elements
+	 */
+	private static final class RangeTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final RangeWork work;
+		private final int from;
+		private final int to;
+		private final int size;
+
+		RangeTask(RangeWork work, int from, int to, int size) {
+			this.work = work;
+			this.from = from;
+			this.to = to;
+			this.size = size;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= size) {
+				work.computeRange(from, to);
+			} else {
+				int middle = (from + to) >>> 1;
+				invokeAll(new RangeTask(work, from, middle, size), new RangeTask(work, middle, to, size));
+			}
+		}
+	}
+}
@@ -0,0 +1,279 @@
+/**
+ * Package containing all the classes modelling our problem.
+ */
+package com.hexagone.delivery.models;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+
+/**
+ * This class saves a loaded Map in a binary snapshot, and loads it back much
+ * faster than its XML plan : the file is memory-mapped and its arrays are
+ * copied in bulk, without parsing any text. The compact view of the roads is
+ * read from the snapshot too, so it is not built again on the first
+ * computation. Since the file is only mapped for reading, several processes
+ * loading the same snapshot share its pages in the system cache.
+ * 
+ * The snapshot holds, in big-endian order :
+ * <ul>
+ * <li>a header : magic number, version, number of intersections, of roads
+ * and of street names, fingerprint of the compact graph</li>
+ * <li>for each intersection index, the identifier, whether the map has an
+ * Intersection of this identifier, and its coordinates</li>
+ * <li>the roads in compressed sparse row form : offsets, targets, street name
+ * indexes, lengths, speeds and travel times</li>
+ * <li>the street names, each one stored once in UTF-8</li>
+ * </ul>
+ * 
+ * @see CompactGraph
+ */
+public class MapSnapshot {
+
+	/** Usual extension of the snapshot files */
+	public static final String EXTENSION = ".hxmap";
+
+	/** "HXMP" */
+	private static final int MAGIC = 0x48584d50;
+	/** To be increased each time the format changes */
+	private static final int VERSION = 2;
+	/** Size of the header in bytes */
+	private static final int HEADER_SIZE = 5 * 4 + 8;
+
+	private MapSnapshot() {
+	}
+
+	/**
+	 * Writes the snapshot of a map
+	 * 
+	 * @param map
+	 *            the map to save
+	 * @param file
+	 *            the snapshot file, replaced if it exists
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	public static void write(Map map, Path file) throws IOException {
+		CompactGraph graph = map.getCompactGraph();
+		int[] identifiers = graph.getIdentifiers();
+		int nbIntersections = identifiers.length;
+		int nbRoads = graph.getRoadsNumber();
+
+		/** The roads are stored in the order of the compact graph */
+		LinkedHashMap<String, Integer> names = new LinkedHashMap<String, Integer>();
+		int[] nameIndexes = new int[nbRoads];
+		double[] lengths = new double[nbRoads];
+		double[] speeds = new double[nbRoads];
+		int road = 0;
+		for (int index = 0; index < nbIntersections; index++) {
+			ArrayList<Road> roadsFromOrigin = map.getRoadsStartingFrom(identifiers[index]);
+			if (roadsFromOrigin != null) {
+				for (Road r : roadsFromOrigin) {
+					String name = r.getRoadName() == null ? "" : r.getRoadName();
+					Integer nameIndex = names.get(name);
+					if (nameIndex == null) {
+						nameIndex = names.size();
+						names.put(name, nameIndex);
+					}
+					nameIndexes[road] = nameIndex;
+					lengths[road] = r.getLength();
+					speeds[road] = r.getSpeed();
+					road++;
+				}
+			}
+		}
+
+		byte[][] encodedNames = new byte[names.size()][];
+		long size = HEADER_SIZE + 4L * (5 * nbIntersections + 1) + 4L * 2 * nbRoads + 8L * 3 * nbRoads;
+		for (String name : names.keySet()) {
+			byte[] encoded = name.getBytes(StandardCharsets.UTF_8);
+			encodedNames[names.get(name)] = encoded;
+			size += 4 + encoded.length;
+		}
+		if (size > Integer.MAX_VALUE) {
+			throw new IOException("The map is too large for a snapshot");
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocate((int) size);
+		buffer.putInt(MAGIC).putInt(VERSION).putInt(nbIntersections).putInt(nbRoads).putInt(encodedNames.length);
+		buffer.putLong(graph.getFingerprint());
+		HashMap<Integer, Intersection> intersections = map.getIntersections();
+		int[] defined = new int[nbIntersections];
+		int[] xs = new int[nbIntersections];
+		int[] ys = new int[nbIntersections];
+		for (int index = 0; index < nbIntersections; index++) {
+			Intersection intersection = intersections.get(identifiers[index]);
+			if (intersection != null) {
+				defined[index] = 1;
+				if (intersection.getCoordinates() != null) {
+					xs[index] = intersection.getCoordinates().x;
+					ys[index] = intersection.getCoordinates().y;
+				}
+			}
+		}
+		putInts(buffer, identifiers);
+		putInts(buffer, defined);
+		putInts(buffer, xs);
+		putInts(buffer, ys);
+		putInts(buffer, graph.getOffsets());
+		putInts(buffer, graph.getTargets());
+		putInts(buffer, nameIndexes);
+		putDoubles(buffer, lengths);
+		putDoubles(buffer, speeds);
+		putDoubles(buffer, graph.getTimes());
+		for (byte[] encoded : encodedNames) {
+			buffer.putInt(encoded.length).put(encoded);
+		}
+		buffer.flip();
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		}
+	}
+
+	/**
+	 * Loads a map from its snapshot. The compact view of its roads is given
+	 * to the map along with it.
+	 * 
+	 * @param file
+	 *            the snapshot file
+	 * @return the map saved in the snapshot
+	 * @throws IOException
+	 *             if the file cannot be read, or is not a snapshot of this
+	 *             version
+	 */
+	public static Map load(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Not a map snapshot : " + file);
+			}
+			return load(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	/**
+	 * Loads a map from the content of a snapshot, between the position and
+	 * the limit of the buffer, which are left unchanged
+	 * 
+	 * @param snapshot
+	 *            the content of the snapshot
+	 * @return the map saved in the snapshot
+	 * @throws IOException
+	 *             if the content is not a snapshot of this version
+	 */
+	public static Map load(ByteBuffer snapshot) throws IOException {
+		/** Read through a view, in big-endian order whatever the order of the buffer */
+		ByteBuffer buffer = snapshot.duplicate();
+		try {
+			if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+				throw new IOException("Not a map snapshot");
+			}
+			int version = buffer.getInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported map snapshot version " + version);
+			}
+			int nbIntersections = buffer.getInt();
+			int nbRoads = buffer.getInt();
+			int nbNames = buffer.getInt();
+			long fingerprint = buffer.getLong();
+			if (nbIntersections < 0 || nbRoads < 0 || nbNames < 0
+					|| 4L * (5 * (long) nbIntersections + 1) + 32L * nbRoads + 4L * nbNames > buffer.remaining()) {
+				throw new IOException("Corrupted map snapshot");
+			}
+
+			int[] identifiers = getInts(buffer, nbIntersections);
+			int[] defined = getInts(buffer, nbIntersections);
+			int[] xs = getInts(buffer, nbIntersections);
+			int[] ys = getInts(buffer, nbIntersections);
+			int[] offsets = getInts(buffer, nbIntersections + 1);
+			int[] targets = getInts(buffer, nbRoads);
+			int[] nameIndexes = getInts(buffer, nbRoads);
+			double[] lengths = getDoubles(buffer, nbRoads);
+			double[] speeds = getDoubles(buffer, nbRoads);
+			double[] times = getDoubles(buffer, nbRoads);
+			String[] names = new String[nbNames];
+			for (int i = 0; i < nbNames; i++) {
+				byte[] encoded = new byte[buffer.getInt()];
+				buffer.get(encoded);
+				names[i] = new String(encoded, StandardCharsets.UTF_8);
+			}
+
+			CompactGraph graph = new CompactGraph(identifiers, offsets, targets, times);
+			if (graph.getFingerprint() != fingerprint) {
+				throw new IOException("Corrupted map snapshot");
+			}
+			return buildMap(graph, defined, xs, ys, nameIndexes, lengths, speeds, names);
+		} catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException e) {
+			throw new IOException("Truncated or corrupted map snapshot");
+		}
+	}
+
+	/**
+	 * Creates the intersections and the roads of the map from the arrays of
+	 * the snapshot
+	 */
+	private static Map buildMap(CompactGraph graph, int[] defined, int[] xs, int[] ys, int[] nameIndexes,
+			double[] lengths, double[] speeds, String[] names) {
+		int[] identifiers = graph.getIdentifiers();
+		int[] offsets = graph.getOffsets();
+		int[] targets = graph.getTargets();
+
+		HashMap<Integer, Intersection> intersections = new HashMap<Integer, Intersection>(
+				identifiers.length * 4 / 3 + 1);
+		HashMap<Integer, ArrayList<Road>> roads = new HashMap<Integer, ArrayList<Road>>(identifiers.length * 4 / 3 + 1);
+		for (int index = 0; index < identifiers.length; index++) {
+			Integer identifier = identifiers[index];
+			if (defined[index] != 0) {
+				intersections.put(identifier, new Intersection(identifier, xs[index], ys[index]));
+			}
+			if (offsets[index + 1] > offsets[index]) {
+				ArrayList<Road> roadsFromOrigin = new ArrayList<Road>(offsets[index + 1] - offsets[index]);
+				for (int road = offsets[index]; road < offsets[index + 1]; road++) {
+					roadsFromOrigin.add(new Road(identifier, identifiers[targets[road]], lengths[road], speeds[road],
+							names[nameIndexes[road]]));
+				}
+				roads.put(identifier, roadsFromOrigin);
+			}
+		}
+
+		Map map = new Map();
+		map.setIntersections(intersections);
+		map.setRoads(roads);
+		map.setCompactGraph(graph);
+		return map;
+	}
+
+	private static void putInts(ByteBuffer buffer, int[] values) {
+		buffer.asIntBuffer().put(values);
+		buffer.position(buffer.position() + 4 * values.length);
+	}
+
+	private static void putDoubles(ByteBuffer buffer, double[] values) {
+		buffer.asDoubleBuffer().put(values);
+		buffer.position(buffer.position() + 8 * values.length);
+	}
+
+	private static int[] getInts(ByteBuffer buffer, int length) {
+		int[] values = new int[length];
+		buffer.asIntBuffer().get(values);
+		buffer.position(buffer.position() + 4 * length);
+		return values;
+	}
+
+	private static double[] getDoubles(ByteBuffer buffer, int length) {
+		double[] values = new double[length];
+		buffer.asDoubleBuffer().get(values);
+		buffer.position(buffer.position() + 8 * length);
+		return values;
+	}
+}
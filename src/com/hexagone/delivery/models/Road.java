@@ -65,6 +65,20 @@ public class Road {
 		return new Integer(destination);
 	}
 
+	/**
+	 * @return the length of the road in decimetres
+	 */
+	public double getLength() {
+		return length;
+	}
+
+	/**
+	 * @return the average speed on the road in Km/h
+	 */
+	public double getSpeed() {
+		return speed;
+	}
+
 	public String getRoadName() {
 		return roadName;
 	}
@@ -0,0 +1,61 @@
+/**
+ * Package containing all the classes modelling our problem.
+ */
+package com.hexagone.delivery.models;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map.Entry;
+
+/**
+ * This class keeps the heading of every road of a Map, as the move along x and
+ * y from its origin to its destination, so that the turns of a route can be
+ * told apart without looking the intersections up again. The headings of the
+ * roads starting from an intersection are kept two by two in one array, in
+ * the order of Map.getRoadsStartingFrom.
+ * 
+ * @see Map#getRoadHeadings()
+ */
+class RoadHeadings {
+
+	private final HashMap<Integer, int[]> headings;
+
+	/**
+	 * Computes the headings of all the roads of a map
+	 * 
+	 * @param map
+	 *            the map whose roads are read
+	 */
+	RoadHeadings(Map map) {
+		HashMap<Integer, Intersection> intersections = map.getIntersections();
+		headings = new HashMap<Integer, int[]>(map.getRoads().size() * 4 / 3 + 1);
+		for (Entry<Integer, ArrayList<Road>> entry : map.getRoads().entrySet()) {
+			ArrayList<Road> roads = entry.getValue();
+			int[] moves = new int[2 * roads.size()];
+			for (int i = 0; i < roads.size(); i++) {
+				Intersection origin = intersections.get(roads.get(i).getOrigin());
+				Intersection destination = intersections.get(roads.get(i).getDestination());
+				if (origin != null && destination != null) {
+					Point o = origin.getCoordinates();
+					Point d = destination.getCoordinates();
+					moves[2 * i] = d.x - o.x;
+					moves[2 * i + 1] = d.y - o.y;
+				}
+			}
+			headings.put(entry.getKey(), moves);
+		}
+	}
+
+	/**
+	 * Gives the headings of the roads starting from an intersection
+	 * 
+	 * @param origin
+	 *            the identifier of the intersection
+	 * @return the moves along x and y of each road, two by two, null if no
+	 *         road starts from the intersection
+	 */
+	int[] getHeadings(Integer origin) {
+		return headings.get(origin);
+	}
+}
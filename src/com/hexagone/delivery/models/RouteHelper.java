@@ -1,19 +1,18 @@
 package com.hexagone.delivery.models;
 
 import java.awt.Point;
-import java.io.File;
-import java.io.PrintWriter;
-import java.text.SimpleDateFormat;
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
-import java.util.Locale;
 import java.util.Set;
 
 import com.hexagone.delivery.algo.DeliveryComputer;
@@ -39,22 +38,16 @@ public class RouteHelper {
 
 	private DeliveryComputer deliveryComputer;
 
+	/** Text of the planning, written on the first call to getPlanning */
 	private String planning;
 
-	private HashMap<Integer, Intersection> intersections;
-
 	private int oldDuration;
 
-	private static String ONE_INDENT = "        ";
-	private static String TWO_INDENT = "                ";
-	
 	public RouteHelper(Map map, DeliveryQuery dq, DeliveryComputer dc) {
 		this.map = map;
 		this.deliveryQuery = dq;
 		this.deliveryComputer = dc;
-		this.intersections = map.getIntersections();
 		this.route = generateRoute();
-		this.planning = generatePlanning();
 	}
 
 	public boolean routeFound(){
@@ -70,9 +63,16 @@ public class RouteHelper {
 	}
 
 	public String getPlanning() {
+		if (planning == null) {
+			planning = generatePlanning();
+		}
 		return planning;
 	}
 
+	public DeliveryComputer getDeliveryComputer() {
+		return deliveryComputer;
+	}
+
 	/**
 	 * Generates a route, from the calculation of the intersections of the map,
 	 * the delivery points, the roads between two intersections
@@ -115,75 +115,54 @@ public class RouteHelper {
 		return route;
 	}
 
+	/**
+	 * Writes the planning to a text file, as it is generated
+	 * 
+	 * @param pathName
+	 *            the path of the file
+	 */
 	public void writeToTxt(String pathName) {
-		String planning = this.getPlanning();
-		File outfile = new File(pathName);
-		PrintWriter writer;
 		try {
-			writer = new PrintWriter(outfile, "UTF-8");
-			writer.println(planning);
-			writer.close();
+			Writer writer = new BufferedWriter(
+					new OutputStreamWriter(new FileOutputStream(pathName), StandardCharsets.UTF_8));
+			try {
+				writePlanning(writer);
+				writer.write(System.lineSeparator());
+			} finally {
+				writer.close();
+			}
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
 	}
 
-	public String generatePlanning() {
-		// Setting formats
-		SimpleDateFormat full = new SimpleDateFormat("dd MMMM. yyyy", Locale.FRENCH);
-		SimpleDateFormat small = new SimpleDateFormat("HH:mm", Locale.FRENCH);
-		String res = "";
-		// Displaying title
-		Date departureTime = deliveryQuery.getWarehouse().getDepartureTime();
-		String planningDate = full.format(departureTime);
-		res += "Mon planning (" + planningDate + ")\n\n";
-		res += ONE_INDENT + "Départ de l'entrepôt à " + small.format(departureTime) + ". ";
-		// Record for longest java call ?
-		res += "Rejoindre l'intersection " + route.entrySet().iterator().next().getValue().getRoads().get(0).getOrigin()
-				+ ".\n";
-
-		// Iterating over arrival points
-		int deliveryCounter = 0;
-		int waitingTime = 0;
-		Integer origin;
-		Date arrivalTime;
-		for (Integer it : route.keySet()) {
-			origin = route.get(it).getDelivery().getIntersection().getId();
-			waitingTime = route.get(it).getDelivery().getWaitingTime();
-			arrivalTime = route.get(it).getDelivery().getArrivalTime();
-
-			if (deliveryCounter > 0) {
-				res += ONE_INDENT + "Départ du point de livraison à " + small.format(departureTime) + ".\n";
-			}
+	/**
+	 * Writes the planning of the route, as it is generated
+	 * 
+	 * @param out
+	 *            where to write the planning
+	 * @throws IOException
+	 *             if the planning could not be written
+	 */
+	public void writePlanning(Appendable out) throws IOException {
+		new InstructionBuilder(map).appendPlanning(out, deliveryQuery, route);
+	}
 
-			Road lastRoad = null;
-			int deg = 0;
-			int pos = 0;
-			int roadCounter = 1;
-			for (Road road : route.get(it).getRoads()) {
-				if (lastRoad != null) {
-					deg = getAngleBetweenRoads(lastRoad, road);
-					pos = getPosition(road, lastRoad, deg);
-				}
-				res += TWO_INDENT + roadCounter + "- Prendre la " + getPlainPosition(pos) + " " + getPlainDegree(deg)
-				+ " jusqu'à l'intersection " + road.getDestination() + "\n";
-				lastRoad = road;
-				roadCounter++;
-			}
-			if (deliveryCounter != route.values().size() - 1) {
-				res += ONE_INDENT + "Livraison du point " + origin + ". Arrivée: " + small.format(arrivalTime) + ".\n";
-			} else {
-				res += ONE_INDENT + "Fin de la tournée à " + small.format(arrivalTime);
-			}
-			if (waitingTime != 0) {
-				res += ONE_INDENT + "Attendre " + waitingTime + " minutes puis procéder à la livraison.\n";
-			}
-			res += "\n";
-			deliveryCounter++;
-			departureTime = route.get(it).getDelivery().getDepartureTime();
+	/**
+	 * Generates the text of the planning : the roads to take and the time of
+	 * each delivery
+	 * 
+	 * @return the planning
+	 */
+	public String generatePlanning() {
+		StringBuilder res = new StringBuilder();
+		try {
+			writePlanning(res);
+		} catch (IOException e) {
+			/** A StringBuilder does not throw */
+			throw new IllegalStateException(e);
 		}
-		// Fin des instructions
-		return res;
+		return res.toString();
 	}
 
 	/**
@@ -304,96 +283,6 @@ public class RouteHelper {
 		return null;
 	}
 
-	private int getPosition(Road road, Road lastRoad, int deg) {
-		Point p1 = intersections.get(lastRoad.getOrigin()).getCoordinates();
-		Point p2 = intersections.get(road.getOrigin()).getCoordinates();
-
-		ArrayList<Road> roads = new ArrayList<Road>();
-		for (Road rr : map.getRoadsStartingFrom(road.getOrigin())) {
-			int threshhold = 10;
-			Point p4 = intersections.get(rr.getDestination()).getCoordinates();
-			int new_angle = getAngle(p1, p2, p4);
-			if (deg > threshhold / 2 && deg < 90) {
-				if (new_angle > threshhold / 2 && new_angle < 90) {
-					roads.add(rr);
-				}
-			}
-			if (deg > 90 && deg < (360 - threshhold / 2)) {
-				if (new_angle > 90 && new_angle < (360 - threshhold / 2)) {
-					roads.add(rr);
-				}
-			}
-		}
-		// Filter those NOT left or not right ok ?
-		Collections.sort(roads, new Comparator<Road>() {
-			@Override
-			public int compare(Road r1, Road r2) {
-				Point pp1 = intersections.get(r1.getDestination()).getCoordinates();
-				Point pp2 = intersections.get(r2.getDestination()).getCoordinates();
-				int angle1 = getAngle(p1, p2, pp1);
-				int angle2 = getAngle(p1, p2, pp2);
-				if (angle1 > angle2) {
-					return 1;
-				} else {
-					return -1;
-				}
-			}
-		});
-		int pos = 1 + roads.indexOf(road);
-		return pos;
-	}
-
-	private int getAngleBetweenRoads(Road lastRoad, Road road) {
-		Point p1 = intersections.get(lastRoad.getOrigin()).getCoordinates();
-		Point p2 = intersections.get(road.getOrigin()).getCoordinates();
-		Point p3 = intersections.get(road.getDestination()).getCoordinates();
-		int deg = getAngle(p1, p2, p3);
-		return deg;
-	}
-
-	/**
-	 * Interprets a position and gives its number and suffix
-	 * 
-	 * @param pos
-	 *            : position as an Integer
-	 * @return the plain position as a String : number of the position and
-	 *         suffix
-	 */
-	private String getPlainPosition(int pos) {
-		String res = "";
-		String num = String.valueOf(pos); // default value
-		if (pos > 1) {
-			res += num;
-			res += "ème ";
-		}
-		if (pos == 1) {
-			res += num;
-			res += "ère ";
-		}
-		res += "rue";
-		return res;
-	}
-
-	/**
-	 * Interprets a degree and gives its direction
-	 * 
-	 * @param deg
-	 *            : degree as an Integer
-	 * @return the plain degree as a String : the direction depending on the
-	 *         angle
-	 */
-	private String getPlainDegree(int deg) {
-		String dir = "tout droit"; // default value
-		int threshhold = 10;
-		if (deg > threshhold / 2 && deg < 90) {
-			dir = "à droite";
-		}
-		if (deg > 90 && deg < (360 - threshhold / 2)) {
-			dir = "à gauche";
-		}
-		return dir;
-	}
-
 	/**
 	 * Returns the angle between three points (marked as p1/p2/p3)
 	 * 
@@ -401,12 +290,7 @@ public class RouteHelper {
 	 * @return the angle as an Integer
 	 */
 	public int getAngle(Point p0, Point p1, Point p2) {
-		double b = Math.pow(p1.x - p0.x, 2) + Math.pow(p1.y - p0.y, 2);
-		double a = Math.pow(p1.x - p2.x, 2) + Math.pow(p1.y - p2.y, 2);
-		double c = Math.pow(p2.x - p0.x, 2) + Math.pow(p2.y - p0.y, 2);
-		double res = Math.acos((a + b - c) / Math.sqrt(4 * a * b));
-		res = res * 180 / Math.PI;
-		return (int) res;
+		return InstructionBuilder.getAngle(p0.x - p1.x, p0.y - p1.y, p2.x - p1.x, p2.y - p1.y);
 	}
 
 	/**
@@ -0,0 +1,378 @@
+/**
+ * Package containing all the classes modelling our problem.
+ */
+package com.hexagone.delivery.models;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * This class is an immutable uniform grid over the intersections and roads of
+ * a Map, in the coordinates of the map. It answers without going through the
+ * whole map :
+ * <ul>
+ * <li>which intersections lie in an area, and which roads may cross it, to
+ * draw only the visible part of the map</li>
+ * <li>which intersection is the closest to a point, to find the intersection
+ * under the mouse</li>
+ * </ul>
+ * The cells are sized so that each one holds a couple of intersections. Each
+ * cell keeps the intersections lying in it, and the roads whose bounding box
+ * covers it. The few roads covering many cells are kept aside with their
+ * bounding box instead. Roads whose origin or destination is not an
+ * intersection of the map are left out.
+ * 
+ * @see Map#getSpatialIndex()
+ */
+public class SpatialIndex {
+
+	/** Average number of intersections per cell */
+	private static final int INTERSECTIONS_PER_CELL = 2;
+	/** Number of cells above which a road is kept aside */
+	private static final int MAX_CELLS_PER_ROAD = 16;
+
+	/** Coordinates of the top left corner of the grid */
+	private final int minX;
+	private final int minY;
+	/** Side of the cells */
+	private final int cellSize;
+	private final int columns;
+	private final int rows;
+	/** Bounds of all the intersections, null if there are none */
+	private final Rectangle bounds;
+
+	/**
+	 * The intersections of the cell c are cellIntersections[intersectionOffsets[c]]
+	 * (included) to cellIntersections[intersectionOffsets[c + 1]] (excluded)
+	 */
+	private final int[] intersectionOffsets;
+	private final Intersection[] cellIntersections;
+	/**
+	 * Same for the roads, with the first column and row covered by each road
+	 * so that a road covering several cells is given only once
+	 */
+	private final int[] roadOffsets;
+	private final Road[] cellRoads;
+	private final int[] roadFirstColumns;
+	private final int[] roadFirstRows;
+	/** Roads covering too many cells, with their bounding box */
+	private final ArrayList<Road> longRoads = new ArrayList<Road>();
+	private final ArrayList<Rectangle> longRoadBounds = new ArrayList<Rectangle>();
+
+	/**
+	 * Builds the grid of a map
+	 * 
+	 * @param map
+	 *            the map to index
+	 */
+	SpatialIndex(Map map) {
+		HashMap<Integer, Intersection> intersections = map.getIntersections();
+		int nbIntersections = intersections.size();
+
+		Rectangle box = null;
+		for (Intersection intersection : intersections.values()) {
+			Point p = intersection.getCoordinates();
+			if (box == null) {
+				box = new Rectangle(p.x, p.y, 0, 0);
+			} else {
+				box.add(p);
+			}
+		}
+		bounds = box;
+		if (box == null) {
+			box = new Rectangle();
+		}
+		minX = box.x;
+		minY = box.y;
+		double area = Math.max(1.0, (double) (box.width + 1) * (box.height + 1));
+		cellSize = (int) Math.max(1, Math.ceil(Math.sqrt(area * INTERSECTIONS_PER_CELL / Math.max(1, nbIntersections))));
+		columns = box.width / cellSize + 1;
+		rows = box.height / cellSize + 1;
+
+		/** Intersections, counted then placed cell by cell */
+		intersectionOffsets = new int[columns * rows + 1];
+		for (Intersection intersection : intersections.values()) {
+			intersectionOffsets[cellOf(intersection.getCoordinates()) + 1]++;
+		}
+		for (int c = 0; c < columns * rows; c++) {
+			intersectionOffsets[c + 1] += intersectionOffsets[c];
+		}
+		cellIntersections = new Intersection[nbIntersections];
+		int[] cursors = intersectionOffsets.clone();
+		for (Intersection intersection : intersections.values()) {
+			cellIntersections[cursors[cellOf(intersection.getCoordinates())]++] = intersection;
+		}
+
+		/** Roads, in every cell covered by their bounding box */
+		roadOffsets = new int[columns * rows + 1];
+		int nbEntries = 0;
+		for (ArrayList<Road> roadsFromOrigin : map.getRoads().values()) {
+			for (Road road : roadsFromOrigin) {
+				int[] cells = cellsOf(road, intersections);
+				if (cells != null && isLong(cells)) {
+					Point o = intersections.get(road.getOrigin()).getCoordinates();
+					Rectangle roadBounds = new Rectangle(o);
+					roadBounds.add(intersections.get(road.getDestination()).getCoordinates());
+					longRoads.add(road);
+					longRoadBounds.add(roadBounds);
+				} else if (cells != null) {
+					for (int row = cells[1]; row <= cells[3]; row++) {
+						for (int column = cells[0]; column <= cells[2]; column++) {
+							roadOffsets[row * columns + column + 1]++;
+							nbEntries++;
+						}
+					}
+				}
+			}
+		}
+		for (int c = 0; c < columns * rows; c++) {
+			roadOffsets[c + 1] += roadOffsets[c];
+		}
+		cellRoads = new Road[nbEntries];
+		roadFirstColumns = new int[nbEntries];
+		roadFirstRows = new int[nbEntries];
+		cursors = roadOffsets.clone();
+		for (ArrayList<Road> roadsFromOrigin : map.getRoads().values()) {
+			for (Road road : roadsFromOrigin) {
+				int[] cells = cellsOf(road, intersections);
+				if (cells != null && !isLong(cells)) {
+					for (int row = cells[1]; row <= cells[3]; row++) {
+						for (int column = cells[0]; column <= cells[2]; column++) {
+							int entry = cursors[row * columns + column]++;
+							cellRoads[entry] = road;
+							roadFirstColumns[entry] = cells[0];
+							roadFirstRows[entry] = cells[1];
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gives the smallest rectangle holding all the intersections
+	 * 
+	 * @return the bounds of the intersections, null if the map has none
+	 */
+	public Rectangle getBounds() {
+		return bounds == null ? null : new Rectangle(bounds);
+	}
+
+	/**
+	 * Gives the average space between the intersections, as if they were
+	 * evenly spread over their bounds
+	 * 
+	 * @return the average space, 0 if the map has less than two intersections
+	 */
+	public double getSpacing() {
+		if (bounds == null || cellIntersections.length < 2) {
+			return 0;
+		}
+		double area = (double) (bounds.width + 1) * (bounds.height + 1);
+		return Math.max(Math.sqrt(area / cellIntersections.length),
+				(double) Math.max(bounds.width, bounds.height) / cellIntersections.length);
+	}
+
+	/**
+	 * Gives the intersections lying in an area, borders included
+	 * 
+	 * @param area
+	 *            the area, in the coordinates of the map
+	 * @return the intersections of the area, in no particular order
+	 */
+	public ArrayList<Intersection> getIntersections(Rectangle area) {
+		ArrayList<Intersection> found = new ArrayList<Intersection>();
+		int[] cells = cellsOf(area);
+		if (cells == null) {
+			return found;
+		}
+		for (int row = cells[1]; row <= cells[3]; row++) {
+			for (int column = cells[0]; column <= cells[2]; column++) {
+				int c = row * columns + column;
+				for (int i = intersectionOffsets[c]; i < intersectionOffsets[c + 1]; i++) {
+					Point p = cellIntersections[i].getCoordinates();
+					if (p.x >= area.x && p.y >= area.y && p.x <= area.x + area.width
+							&& p.y <= area.y + area.height) {
+						found.add(cellIntersections[i]);
+					}
+				}
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Gives the roads which may cross an area : all the roads crossing it are
+	 * given, each one once, along with a few roads passing close by.
+	 * 
+	 * @param area
+	 *            the area, in the coordinates of the map
+	 * @return the roads of the area, in no particular order
+	 */
+	public ArrayList<Road> getRoads(Rectangle area) {
+		ArrayList<Road> found = new ArrayList<Road>();
+		int[] cells = cellsOf(area);
+		if (cells == null) {
+			return found;
+		}
+		for (int row = cells[1]; row <= cells[3]; row++) {
+			for (int column = cells[0]; column <= cells[2]; column++) {
+				int c = row * columns + column;
+				for (int i = roadOffsets[c]; i < roadOffsets[c + 1]; i++) {
+					/** A road is given by the first of its cells inside the area */
+					if (Math.max(roadFirstColumns[i], cells[0]) == column && Math.max(roadFirstRows[i], cells[1]) == row) {
+						found.add(cellRoads[i]);
+					}
+				}
+			}
+		}
+		Rectangle closedArea = new Rectangle(area.x, area.y, area.width + 1, area.height + 1);
+		for (int i = 0; i < longRoads.size(); i++) {
+			Rectangle roadBounds = longRoadBounds.get(i);
+			if (closedArea.intersects(roadBounds.x, roadBounds.y, roadBounds.width + 1, roadBounds.height + 1)) {
+				found.add(longRoads.get(i));
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Gives the intersection closest to a point
+	 * 
+	 * @param x
+	 *            the abscissa of the point, in the coordinates of the map
+	 * @param y
+	 *            the ordinate of the point, in the coordinates of the map
+	 * @return the closest intersection, null if the map has none
+	 */
+	public Intersection getNearestIntersection(int x, int y) {
+		return getNearestIntersection(x, y, Double.POSITIVE_INFINITY);
+	}
+
+	/**
+	 * Gives the intersection closest to a point, within a distance. The cells
+	 * are looked through in rings around the point, and the search stops as
+	 * soon as the cells left are further than the best intersection found.
+	 * 
+	 * @param x
+	 *            the abscissa of the point, in the coordinates of the map
+	 * @param y
+	 *            the ordinate of the point, in the coordinates of the map
+	 * @param maxDistance
+	 *            the largest distance allowed between the point and the
+	 *            intersection
+	 * @return the closest intersection, null if there is none within the
+	 *         distance
+	 */
+	public Intersection getNearestIntersection(int x, int y, double maxDistance) {
+		if (bounds == null) {
+			return null;
+		}
+		int centerColumn = clamp((int) Math.floor((x - (double) minX) / cellSize), columns);
+		int centerRow = clamp((int) Math.floor((y - (double) minY) / cellSize), rows);
+
+		Intersection nearest = null;
+		double nearestDistance = maxDistance;
+		for (int ring = 0;; ring++) {
+			int firstColumn = centerColumn - ring;
+			int lastColumn = centerColumn + ring;
+			int firstRow = centerRow - ring;
+			int lastRow = centerRow + ring;
+			for (int row = Math.max(0, firstRow); row <= Math.min(rows - 1, lastRow); row++) {
+				boolean borderRow = row == firstRow || row == lastRow;
+				for (int column = Math.max(0, firstColumn); column <= Math.min(columns - 1, lastColumn); column++) {
+					if (!borderRow && column != firstColumn && column != lastColumn) {
+						/** Inner cells were looked through by the previous rings */
+						column = lastColumn - 1;
+						continue;
+					}
+					int c = row * columns + column;
+					for (int i = intersectionOffsets[c]; i < intersectionOffsets[c + 1]; i++) {
+						Point p = cellIntersections[i].getCoordinates();
+						double distance = Math.hypot(p.x - (double) x, p.y - (double) y);
+						if (distance <= nearestDistance) {
+							nearest = cellIntersections[i];
+							nearestDistance = distance;
+						}
+					}
+				}
+			}
+
+			/** Distance from the point to the cells out of the rings looked through */
+			double remaining = Double.POSITIVE_INFINITY;
+			if (firstColumn > 0) {
+				remaining = Math.min(remaining, x - ((double) minX + (double) firstColumn * cellSize));
+			}
+			if (lastColumn < columns - 1) {
+				remaining = Math.min(remaining, (double) minX + (double) (lastColumn + 1) * cellSize - x);
+			}
+			if (firstRow > 0) {
+				remaining = Math.min(remaining, y - ((double) minY + (double) firstRow * cellSize));
+			}
+			if (lastRow < rows - 1) {
+				remaining = Math.min(remaining, (double) minY + (double) (lastRow + 1) * cellSize - y);
+			}
+			if (remaining == Double.POSITIVE_INFINITY || remaining > nearestDistance) {
+				return nearest;
+			}
+		}
+	}
+
+	/**
+	 * Gives the cell of a point of the grid
+	 */
+	private int cellOf(Point p) {
+		return ((p.y - minY) / cellSize) * columns + (p.x - minX) / cellSize;
+	}
+
+	/**
+	 * Gives the first column, first row, last column and last row of the cells
+	 * covered by the bounding box of a road, null if one of its ends is not an
+	 * intersection of the map
+	 */
+	private int[] cellsOf(Road road, HashMap<Integer, Intersection> intersections) {
+		Intersection origin = intersections.get(road.getOrigin());
+		Intersection destination = intersections.get(road.getDestination());
+		if (origin == null || destination == null) {
+			return null;
+		}
+		Point o = origin.getCoordinates();
+		Point d = destination.getCoordinates();
+		return new int[] { (Math.min(o.x, d.x) - minX) / cellSize, (Math.min(o.y, d.y) - minY) / cellSize,
+				(Math.max(o.x, d.x) - minX) / cellSize, (Math.max(o.y, d.y) - minY) / cellSize };
+	}
+
+	/**
+	 * Tells whether a road covers too many cells to be kept in each one
+	 */
+	private static boolean isLong(int[] cells) {
+		return (long) (cells[2] - cells[0] + 1) * (cells[3] - cells[1] + 1) > MAX_CELLS_PER_ROAD;
+	}
+
+	/**
+	 * Gives the first column, first row, last column and last row of the cells
+	 * covered by an area, null if the area is out of the grid
+	 */
+	private int[] cellsOf(Rectangle area) {
+		if (bounds == null || area.width < 0 || area.height < 0) {
+			return null;
+		}
+		double left = Math.floor((area.x - (double) minX) / cellSize);
+		double top = Math.floor((area.y - (double) minY) / cellSize);
+		double right = Math.floor((area.x + (double) area.width - minX) / cellSize);
+		double bottom = Math.floor((area.y + (double) area.height - minY) / cellSize);
+		if (right < 0 || bottom < 0 || left >= columns || top >= rows) {
+			return null;
+		}
+		return new int[] { clamp(left, columns), clamp(top, rows), clamp(right, columns), clamp(bottom, rows) };
+	}
+
+	/**
+	 * Brings a column or row back into the grid
+	 */
+	private static int clamp(double cell, int size) {
+		return (int) Math.max(0, Math.min(size - 1, cell));
+	}
+}
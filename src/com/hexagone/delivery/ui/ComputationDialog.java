@@ -0,0 +1,95 @@
+package com.hexagone.delivery.ui;
+
+import java.awt.BorderLayout;
+import java.awt.Frame;
+import java.awt.GridLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+import javax.swing.BorderFactory;
+import javax.swing.JButton;
+import javax.swing.JDialog;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+
+/**
+ * Modal dialog displayed while a tour is computed. It shows the progress of
+ * the computation and lets the user stop it, keeping the best tour found so
+ * far : once a tour is found, the cancel button becomes a button to accept
+ * it. The event thread keeps running while it is displayed, so the
+ * application is repainted.
+ */
+public class ComputationDialog extends JDialog {
+
+	private static final long serialVersionUID = 1L;
+
+	private JLabel exploredNodesLabel;
+	private JLabel bestCostLabel;
+	private JLabel elapsedTimeLabel;
+	private JButton cancelButton;
+
+	/**
+	 * Constructor for the computation dialog
+	 * 
+	 * @param cancelAction
+	 *            what to do when the user clicks on the cancel button
+	 */
+	public ComputationDialog(final Runnable cancelAction) {
+		super((Frame) null, "Calcul de la tournée", true);
+		setDefaultCloseOperation(DO_NOTHING_ON_CLOSE);
+
+		JPanel progressPanel = new JPanel(new GridLayout(3, 2, 15, 5));
+		progressPanel.setBorder(BorderFactory.createEmptyBorder(15, 15, 15, 15));
+		progressPanel.add(new JLabel("Noeuds explorés :"));
+		exploredNodesLabel = new JLabel("0");
+		progressPanel.add(exploredNodesLabel);
+		progressPanel.add(new JLabel("Meilleure tournée :"));
+		bestCostLabel = new JLabel("-");
+		progressPanel.add(bestCostLabel);
+		progressPanel.add(new JLabel("Temps écoulé :"));
+		elapsedTimeLabel = new JLabel(formatDuration(0));
+		progressPanel.add(elapsedTimeLabel);
+
+		cancelButton = new JButton("Annuler");
+		cancelButton.setToolTipText("Arrête le calcul et garde la meilleure tournée trouvée");
+		cancelButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				cancelButton.setEnabled(false);
+				cancelButton.setText("Arrêt en cours...");
+				cancelAction.run();
+			}
+		});
+		JPanel buttonPanel = new JPanel();
+		buttonPanel.add(cancelButton);
+
+		getContentPane().add(progressPanel, BorderLayout.CENTER);
+		getContentPane().add(buttonPanel, BorderLayout.SOUTH);
+		pack();
+		setLocationRelativeTo(null);
+	}
+
+	/**
+	 * Displays the progress of the computation
+	 * 
+	 * @param exploredNodes
+	 *            the number of nodes explored so far
+	 * @param bestCost
+	 *            the duration in seconds of the best tour found so far, -1 if
+	 *            there is none
+	 * @param elapsedTime
+	 *            the time spent computing, in milliseconds
+	 */
+	public void setProgress(long exploredNodes, long bestCost, long elapsedTime) {
+		exploredNodesLabel.setText(String.format("%,d", exploredNodes));
+		bestCostLabel.setText(bestCost < 0 ? "-" : formatDuration(bestCost));
+		if (bestCost >= 0 && cancelButton.isEnabled()) {
+			cancelButton.setText("Garder cette tournée");
+		}
+		elapsedTimeLabel.setText(formatDuration(elapsedTime / 1000));
+	}
+
+	private static String formatDuration(long seconds) {
+		return String.format("%d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
+	}
+}
@@ -5,10 +5,13 @@ import java.awt.Dimension;
 import java.awt.GridLayout;
 import java.awt.KeyEventDispatcher;
 import java.awt.KeyboardFocusManager;
+import java.awt.Point;
 import java.awt.Toolkit;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 import java.util.Vector;
 
 import javax.swing.JButton;
@@ -33,7 +36,7 @@ public class MainFrame extends JFrame {
 	/** JPanel containing the top row of buttons */
 	private JPanel headerPanel;
 	/** JPanel containing the map drawing */
-	private JPanel mapPanel;
+	private MapPanel mapPanel;
 	/** JPanel on the top right corner of the screen with buttons to navigate */
 	private JPanel tourNavigationPanel;
 	/** JPanel on the right side of the window, below the tourNavigationPanel */
@@ -104,6 +107,7 @@ public class MainFrame extends JFrame {
 		leftPanel.add(tourNavigationPanel, BorderLayout.SOUTH);
 
 		mapPanel = new MapPanel(painter);
+		mapPanel.addMouseListener(new MapClickListener());
 		leftPanel.add(mapPanel, BorderLayout.CENTER);
 
 		centerPanel.add(leftPanel);
@@ -227,6 +231,25 @@ public class MainFrame extends JFrame {
 
 	}
 
+	/**
+	 * Class handling what to do when the user clicks on the map
+	 */
+	private class MapClickListener extends MouseAdapter {
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.awt.event.MouseAdapter#mouseClicked(java.awt.event.
+		 * MouseEvent)
+		 */
+		@Override
+		public void mouseClicked(MouseEvent e) {
+			Point origin = mapPanel.getOrigin();
+			controller.mapClick(e.getX() + origin.x, e.getY() + origin.y, mapPanel.getScale());
+		}
+
+	}
+
 	/**
 	 * Class handling keyboard events.
 	 */
@@ -3,20 +3,37 @@ package com.hexagone.delivery.ui;
 import java.awt.Dimension;
 import java.awt.FlowLayout;
 import java.awt.Graphics;
+import java.awt.Point;
 import java.awt.Toolkit;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
 
 import javax.swing.JPanel;
 
 import com.hexagone.delivery.control.MapPainter;
 
 /**
- * Panel that contains the map.
+ * Panel that contains the map. The map can be zoomed with the mouse wheel,
+ * around the mouse, and moved by dragging it.
  *
  */
 public class MapPanel extends JPanel {
 
 	MapPainter painter;
+	/** Scale at which the map is first drawn */
 	private static final float SCALE = 1.25f;
+	/** Bounds of the scale, in units of the map per pixel */
+	private static final float MIN_SCALE = 0.05f;
+	private static final float MAX_SCALE = 1000f;
+	/** Change of the scale for each notch of the mouse wheel */
+	private static final double ZOOM_FACTOR = 1.25;
+
+	private float scale = SCALE;
+	/** Point of the drawing of the map shown in the top left corner */
+	private Point origin = new Point();
+	/** Last position of the mouse while the map is dragged */
+	private Point dragPoint;
 
 	/**
 	 * Constructor for the MapPanel
@@ -30,6 +47,30 @@ public class MapPanel extends JPanel {
 		this.painter = painter;
 
 		setLayout(new FlowLayout());
+		NavigationListener listener = new NavigationListener();
+		addMouseListener(listener);
+		addMouseMotionListener(listener);
+		addMouseWheelListener(listener);
+	}
+
+	/**
+	 * Gives the scale at which the map is drawn
+	 * 
+	 * @return the number of units of the map per pixel
+	 */
+	public float getScale() {
+		return scale;
+	}
+
+	/**
+	 * Gives the point of the drawing of the map shown in the top left corner
+	 * of the panel, to turn a position in the panel into a position in the
+	 * drawing
+	 * 
+	 * @return the point of the drawing, in pixels
+	 */
+	public Point getOrigin() {
+		return new Point(origin);
 	}
 
 	@Override
@@ -39,12 +80,57 @@ public class MapPanel extends JPanel {
 	}
 
 	/**
-	 * Calls the painter to draw the map
+	 * Calls the painter to draw the part of the map shown
 	 */
 	@Override
 	public void paint(Graphics g) {
 		super.paint(g);
-		painter.draw(g, SCALE);
+		Graphics view = g.create();
+		view.translate(-origin.x, -origin.y);
+		painter.draw(view, scale);
+		view.dispose();
+	}
+
+	/**
+	 * Class handling the zoom and the moves of the map with the mouse
+	 */
+	private class NavigationListener extends MouseAdapter {
+
+		@Override
+		public void mousePressed(MouseEvent e) {
+			dragPoint = e.getPoint();
+		}
+
+		@Override
+		public void mouseReleased(MouseEvent e) {
+			dragPoint = null;
+		}
+
+		@Override
+		public void mouseDragged(MouseEvent e) {
+			if (dragPoint != null) {
+				origin.translate(dragPoint.x - e.getX(), dragPoint.y - e.getY());
+				dragPoint = e.getPoint();
+				repaint();
+			}
+		}
+
+		/**
+		 * Zooms in or out, keeping the point of the map under the mouse where
+		 * it is
+		 */
+		@Override
+		public void mouseWheelMoved(MouseWheelEvent e) {
+			float newScale = (float) (scale * Math.pow(ZOOM_FACTOR, e.getPreciseWheelRotation()));
+			newScale = Math.max(MIN_SCALE, Math.min(MAX_SCALE, newScale));
+			if (newScale != scale) {
+				double ratio = scale / newScale;
+				origin.setLocation(Math.round((origin.x + e.getX()) * ratio - e.getX()),
+						Math.round((origin.y + e.getY()) * ratio - e.getY()));
+				scale = newScale;
+				repaint();
+			}
+		}
 	}
 
 }
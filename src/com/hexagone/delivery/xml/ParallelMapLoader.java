@@ -0,0 +1,552 @@
+/**
+ * Package containing all the classes that deal with loading and parsing XML files into object of our model
+ */
+package com.hexagone.delivery.xml;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.hexagone.delivery.models.Map;
+import com.hexagone.delivery.models.MapBuilder;
+
+/**
+ * This class loads the large plan files on several threads. The content is
+ * cut into chunks, each one starting at a tag, and the intersections and roads
+ * of each chunk are read by one thread into primitive arrays, which a
+ * MapBuilder then turns into the map.
+ * 
+ * The chunks are scanned directly, without a full XML parser : only the
+ * elements, their attributes and the predefined entities are understood.
+ * Each chunk notes the elements it leaves open and the end tags of elements
+ * opened before it, so that the nesting of the whole document and its single
+ * root are checked when the chunks are put together. When a chunk holds
+ * anything else (comment, CDATA section, document type, encoding other than
+ * UTF-8, unexpected attribute value...), or when the document is not well
+ * formed, the loader gives up and XMLDeserialiser parses the content with its
+ * streaming parser, which also reports the errors. The map built is the one
+ * the streaming parser would give.
+ * 
+ * @see MapBuilder
+ */
+class ParallelMapLoader {
+
+	/** Size of the chunks read by one task */
+	static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+
+	private static final byte[] NOEUD = "noeud".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] TRONCON = "troncon".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] ID = "id".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] X = "x".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] Y = "y".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] ORIGINE = "origine".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] DESTINATION = "destination".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] LONGUEUR = "longueur".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] VITESSE = "vitesse".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] NOM_RUE = "nomRue".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] ENCODING = "encoding".getBytes(StandardCharsets.US_ASCII);
+	/** Attributes read on the intersections and on the roads, in the order of the values */
+	private static final byte[][] INTERSECTION_ATTRIBUTES = { ID, X, Y };
+	private static final byte[][] ROAD_ATTRIBUTES = { ORIGINE, DESTINATION, LONGUEUR, VITESSE, NOM_RUE };
+	private static final byte[][] NO_ATTRIBUTES = {};
+
+	private ParallelMapLoader() {
+	}
+
+	/**
+	 * Loads a map from the content of a plan file, between the position and
+	 * the limit of the buffer, which are left unchanged
+	 * 
+	 * @param content
+	 *            the content of the plan file
+	 * @param parallelism
+	 *            the number of threads reading the chunks
+	 * @param chunkSize
+	 *            the number of bytes of the chunks
+	 * @return the map, or null if the content holds something the loader does
+	 *         not understand or is not a valid map
+	 * @throws XMLException
+	 *             if the thread is interrupted
+	 */
+	static Map load(ByteBuffer content, int parallelism, int chunkSize) throws XMLException {
+		final ByteBuffer buffer = content.slice();
+		int size = buffer.limit();
+
+		/** Each chunk starts at the first tag after its nominal start */
+		ArrayList<Integer> starts = new ArrayList<Integer>();
+		for (int start = 0; start < size; start += chunkSize) {
+			int tag = indexOf(buffer, (byte) '<', start, size);
+			if (tag < 0) {
+				break;
+			}
+			if (starts.isEmpty() || tag > starts.get(starts.size() - 1)) {
+				starts.add(tag);
+			}
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, parallelism));
+		ArrayList<Future<Chunk>> futures = new ArrayList<Future<Chunk>>();
+		try {
+			for (int i = 0; i < starts.size(); i++) {
+				final int start = starts.get(i);
+				final int end = i + 1 < starts.size() ? starts.get(i + 1) : size;
+				futures.add(executor.submit(new Callable<Chunk>() {
+					@Override
+					public Chunk call() {
+						Chunk chunk = new Chunk(buffer.duplicate());
+						return chunk.read(start, end) ? chunk : null;
+					}
+				}));
+			}
+
+			MapBuilder builder = new MapBuilder(parallelism);
+			/** Names of the elements opened and not yet closed, the root first */
+			ArrayList<String> openElements = new ArrayList<String>();
+			int roots = 0;
+			for (Future<Chunk> future : futures) {
+				Chunk chunk = future.get();
+				if (chunk == null) {
+					return null;
+				}
+				int chunkRoots = chunk.continueNesting(openElements);
+				if (chunkRoots < 0) {
+					return null;
+				}
+				roots += chunkRoots;
+				if (roots > 1) {
+					return null;
+				}
+				builder.addIntersections(chunk.identifiers, chunk.xs, chunk.ys, chunk.nbIntersections);
+				builder.addRoads(chunk.origins, chunk.destinations, chunk.lengths, chunk.speeds, chunk.names,
+						chunk.nbRoads);
+			}
+			if (!openElements.isEmpty() || roots != 1) {
+				return null;
+			}
+			Map map = builder.build();
+			if (map.getAllIntersectionIdentifiers().size() < 2 || map.getRoads().size() < 2) {
+				return null;
+			}
+			return map;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new XMLException("Could not parse Map xml file.");
+		} catch (ExecutionException e) {
+			return null;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Gives the position of the first occurrence of a byte
+	 * 
+	 * @return the position, -1 if the byte is not found before 'to'
+	 */
+	private static int indexOf(ByteBuffer buffer, byte b, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (buffer.get(i) == b) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * The intersections and roads of one chunk, in the order of the file
+	 */
+	private static final class Chunk {
+
+		private final ByteBuffer buffer;
+		private final int limit;
+
+		private int[] identifiers = new int[256];
+		private int[] xs = new int[256];
+		private int[] ys = new int[256];
+		private int nbIntersections;
+
+		private int[] origins = new int[1024];
+		private int[] destinations = new int[1024];
+		private int[] lengths = new int[1024];
+		private int[] speeds = new int[1024];
+		private String[] names = new String[1024];
+		private int nbRoads;
+
+		/** Names of the elements opened in the chunk and not yet closed */
+		private ArrayList<String> openElements = new ArrayList<String>();
+		/** Names of the end tags closing elements opened before the chunk */
+		private ArrayList<String> outerEndTags = new ArrayList<String>();
+		/**
+		 * Number of elements both opened and closed at the outer level of the
+		 * chunk, before each outer end tag
+		 */
+		private ArrayList<Integer> outerElements = new ArrayList<Integer>();
+		/** Number of those elements after the last outer end tag */
+		private int lastOuterElements;
+		/** Whether the last element read was an empty-element tag */
+		private boolean emptyElement;
+
+		/** Street names already read, so that each one is kept once */
+		private HashMap<String, String> knownNames = new HashMap<String, String>();
+		private byte[] bytes = new byte[64];
+
+		/** Bounds of the values of the attributes of the current element */
+		private int[] valueStarts = new int[5];
+		private int[] valueEnds = new int[5];
+
+		Chunk(ByteBuffer buffer) {
+			this.buffer = buffer;
+			this.limit = buffer.limit();
+		}
+
+		/**
+		 * Reads the elements starting in [start, end[. The last one may end
+		 * after 'end'.
+		 * 
+		 * @return false if the chunk holds something not understood
+		 */
+		boolean read(int start, int end) {
+			int i = start;
+			while (true) {
+				i = indexOf(buffer, (byte) '<', i, end);
+				if (i < 0) {
+					return true;
+				}
+				if (i + 1 >= limit) {
+					return false;
+				}
+				byte next = buffer.get(i + 1);
+				if (next == '?') {
+					i = readDeclaration(i + 2);
+				} else if (next == '/') {
+					i = readEndTag(i + 2);
+				} else if (next == '!') {
+					return false;
+				} else {
+					int nameStart = i + 1;
+					i = readElement(nameStart);
+					if (i >= 0 && !emptyElement) {
+						openElements.add(decode(nameStart, nameEnd(nameStart)));
+					} else if (i >= 0 && openElements.isEmpty()) {
+						lastOuterElements++;
+					}
+				}
+				if (i < 0) {
+					return false;
+				}
+			}
+		}
+
+		/**
+		 * Reads an end tag, matching it with the element it closes when it
+		 * was opened in the chunk
+		 * 
+		 * @param i
+		 *            the position of the name of the element
+		 * @return the position after the end tag, -1 if it is not understood
+		 *         or closes another element
+		 */
+		private int readEndTag(int i) {
+			int nameEnd = nameEnd(i);
+			int j = nameEnd;
+			while (j < limit && isSpace(buffer.get(j))) {
+				j++;
+			}
+			if (j >= limit || buffer.get(j) != '>' || nameEnd == i) {
+				return -1;
+			}
+			String name = decode(i, nameEnd);
+			if (openElements.isEmpty()) {
+				outerEndTags.add(name);
+				outerElements.add(lastOuterElements);
+				lastOuterElements = 0;
+			} else {
+				if (!openElements.remove(openElements.size() - 1).equals(name)) {
+					return -1;
+				}
+				if (openElements.isEmpty()) {
+					lastOuterElements++;
+				}
+			}
+			return j + 1;
+		}
+
+		/**
+		 * Carries on the nesting of the chunks before this one
+		 * 
+		 * @param elements
+		 *            the elements left open by the chunks before this one,
+		 *            updated with the ones left open by this chunk
+		 * @return the number of root elements started in this chunk, -1 if an
+		 *         end tag does not close the last element opened
+		 */
+		int continueNesting(ArrayList<String> elements) {
+			int roots = 0;
+			for (int k = 0; k < outerEndTags.size(); k++) {
+				if (elements.isEmpty()) {
+					roots += outerElements.get(k);
+				}
+				if (elements.isEmpty() || !elements.remove(elements.size() - 1).equals(outerEndTags.get(k))) {
+					return -1;
+				}
+			}
+			if (elements.isEmpty()) {
+				roots += lastOuterElements + (openElements.isEmpty() ? 0 : 1);
+			}
+			elements.addAll(openElements);
+			return roots;
+		}
+
+		/**
+		 * Skips a processing instruction, checking the encoding of the XML
+		 * declaration
+		 * 
+		 * @return the position after it, -1 if it is not understood
+		 */
+		private int readDeclaration(int i) {
+			for (int end = i; end + 1 < limit; end++) {
+				if (buffer.get(end) == '?' && buffer.get(end + 1) == '>') {
+					String declaration = decode(i, end);
+					int encoding = declaration.indexOf(new String(ENCODING, StandardCharsets.US_ASCII));
+					if (encoding >= 0) {
+						String rest = declaration.substring(encoding).toUpperCase();
+						if (!rest.contains("UTF-8") && !rest.contains("US-ASCII")) {
+							return -1;
+						}
+					}
+					return end + 2;
+				}
+			}
+			return -1;
+		}
+
+		/**
+		 * Reads an element, adding it to the chunk if it is an intersection or
+		 * a road
+		 * 
+		 * @param i
+		 *            the position of the name of the element
+		 * @return the position after the start tag, -1 if it is not understood
+		 */
+		private int readElement(int i) {
+			int nameEnd = nameEnd(i);
+			if (nameEnd == i) {
+				return -1;
+			}
+			byte[][] attributes;
+			boolean intersection = matches(i, nameEnd, NOEUD);
+			if (intersection) {
+				attributes = INTERSECTION_ATTRIBUTES;
+			} else if (matches(i, nameEnd, TRONCON)) {
+				attributes = ROAD_ATTRIBUTES;
+			} else {
+				attributes = NO_ATTRIBUTES;
+			}
+			Arrays.fill(valueStarts, -1);
+
+			int j = nameEnd;
+			while (true) {
+				while (j < limit && isSpace(buffer.get(j))) {
+					j++;
+				}
+				if (j >= limit) {
+					return -1;
+				}
+				byte b = buffer.get(j);
+				if (b == '>') {
+					emptyElement = false;
+					j++;
+					break;
+				}
+				if (b == '/') {
+					if (j + 1 >= limit || buffer.get(j + 1) != '>') {
+						return -1;
+					}
+					emptyElement = true;
+					j += 2;
+					break;
+				}
+				int attributeStart = j;
+				while (j < limit && buffer.get(j) != '=' && !isSpace(buffer.get(j))) {
+					j++;
+				}
+				int attributeEnd = j;
+				while (j < limit && isSpace(buffer.get(j))) {
+					j++;
+				}
+				if (j >= limit || buffer.get(j) != '=') {
+					return -1;
+				}
+				j++;
+				while (j < limit && isSpace(buffer.get(j))) {
+					j++;
+				}
+				if (j >= limit || (buffer.get(j) != '"' && buffer.get(j) != '\'')) {
+					return -1;
+				}
+				int valueEnd = indexOf(buffer, buffer.get(j), j + 1, limit);
+				if (valueEnd < 0) {
+					return -1;
+				}
+				for (int a = 0; a < attributes.length; a++) {
+					if (matches(attributeStart, attributeEnd, attributes[a])) {
+						valueStarts[a] = j + 1;
+						valueEnds[a] = valueEnd;
+					}
+				}
+				j = valueEnd + 1;
+			}
+
+			if (attributes.length == 0) {
+				return j;
+			}
+			/** The street name is optional, the other attributes are not */
+			for (int a = 0; a < Math.min(attributes.length, 4); a++) {
+				if (valueStarts[a] < 0) {
+					return -1;
+				}
+			}
+			try {
+				if (intersection) {
+					addIntersection(parseInt(0), parseInt(1), parseInt(2));
+				} else {
+					String name = valueStarts[4] < 0 ? "" : decodeName(valueStarts[4], valueEnds[4]);
+					if (name == null) {
+						return -1;
+					}
+					addRoad(parseInt(0), parseInt(1), parseInt(2), parseInt(3), name);
+				}
+			} catch (NumberFormatException e) {
+				return -1;
+			}
+			return j;
+		}
+
+		/**
+		 * Gives the position after the name of an element
+		 */
+		private int nameEnd(int i) {
+			while (i < limit && !isSpace(buffer.get(i)) && buffer.get(i) != '>' && buffer.get(i) != '/') {
+				i++;
+			}
+			return i;
+		}
+
+		private void addIntersection(int identifier, int x, int y) {
+			if (nbIntersections == identifiers.length) {
+				int capacity = 2 * nbIntersections;
+				identifiers = Arrays.copyOf(identifiers, capacity);
+				xs = Arrays.copyOf(xs, capacity);
+				ys = Arrays.copyOf(ys, capacity);
+			}
+			identifiers[nbIntersections] = identifier;
+			xs[nbIntersections] = x;
+			ys[nbIntersections] = y;
+			nbIntersections++;
+		}
+
+		private void addRoad(int origin, int destination, int length, int speed, String name) {
+			if (nbRoads == origins.length) {
+				int capacity = 2 * nbRoads;
+				origins = Arrays.copyOf(origins, capacity);
+				destinations = Arrays.copyOf(destinations, capacity);
+				lengths = Arrays.copyOf(lengths, capacity);
+				speeds = Arrays.copyOf(speeds, capacity);
+				names = Arrays.copyOf(names, capacity);
+			}
+			origins[nbRoads] = origin;
+			destinations[nbRoads] = destination;
+			lengths[nbRoads] = length;
+			speeds[nbRoads] = speed;
+			names[nbRoads] = name;
+			nbRoads++;
+		}
+
+		/**
+		 * Parses the value of an attribute as Integer.parseInt would
+		 * 
+		 * @param attribute
+		 *            the index of the attribute in the element
+		 * @throws NumberFormatException
+		 *             if the value is not an integer
+		 */
+		private int parseInt(int attribute) {
+			int i = valueStarts[attribute];
+			int end = valueEnds[attribute];
+			boolean negative = i < end && buffer.get(i) == '-';
+			if (negative || (i < end && buffer.get(i) == '+')) {
+				i++;
+			}
+			if (i == end || end - i > 9) {
+				/** Empty, or may overflow : left to Integer.parseInt */
+				return Integer.parseInt(decode(valueStarts[attribute], end));
+			}
+			int value = 0;
+			for (; i < end; i++) {
+				int digit = buffer.get(i) - '0';
+				if (digit < 0 || digit > 9) {
+					throw new NumberFormatException();
+				}
+				value = 10 * value + digit;
+			}
+			return negative ? -value : value;
+		}
+
+		/**
+		 * Decodes a street name, sharing the strings of the names already read
+		 * 
+		 * @return the name, null if it holds an entity not understood
+		 */
+		private String decodeName(int start, int end) {
+			String name = decode(start, end);
+			if (name.indexOf('&') >= 0) {
+				name = name.replace("&lt;", "<").replace("&gt;", ">").replace("&quot;", "\"")
+						.replace("&apos;", "'");
+				if (name.replace("&amp;", "").indexOf('&') >= 0) {
+					return null;
+				}
+				name = name.replace("&amp;", "&");
+			}
+			String known = knownNames.get(name);
+			if (known == null) {
+				knownNames.put(name, name);
+				known = name;
+			}
+			return known;
+		}
+
+		private String decode(int start, int end) {
+			int length = end - start;
+			if (bytes.length < length) {
+				bytes = new byte[Math.max(length, 2 * bytes.length)];
+			}
+			for (int i = 0; i < length; i++) {
+				bytes[i] = buffer.get(start + i);
+			}
+			return new String(bytes, 0, length, StandardCharsets.UTF_8);
+		}
+
+		private boolean matches(int start, int end, byte[] name) {
+			if (end - start != name.length) {
+				return false;
+			}
+			for (int i = 0; i < name.length; i++) {
+				if (buffer.get(start + i) != name[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private static boolean isSpace(byte b) {
+			return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+		}
+	}
+}
@@ -3,16 +3,23 @@
  */
 package com.hexagone.delivery.xml;
 
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import com.hexagone.delivery.models.DeliveryQuery;
 import com.hexagone.delivery.models.Intersection;
@@ -28,6 +35,14 @@ import com.hexagone.delivery.models.Road;
  */
 public class XMLDeserialiser {
 
+	/** Size in bytes from which the maps are parsed on several threads */
+	private static final int PARALLEL_LOADING_THRESHOLD = 2 * ParallelMapLoader.DEFAULT_CHUNK_SIZE;
+	/** Number of threads parsing the large maps */
+	private static final int PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+	/** Shared by all the loadings of delivery queries */
+	private static JAXBContext deliveryQueryContext;
+
 	/**
 	 * This method allows the user to select an XML file on the file system and
 	 * convert it to a Map object the application is going to use afterwards.
@@ -42,15 +57,104 @@ public class XMLDeserialiser {
 	 * @see com.hexagone.delivery.models.Map
 	 */
 	public static Map loadMap() throws XMLException, NoFileChosenException {
-		File xml = XMLFileOpener.getInstance().open();
+		return loadMap(XMLFileOpener.getInstance().open());
+	}
+
+	/**
+	 * This method converts an XML file to a Map object, without asking the
+	 * user to choose it.
+	 * 
+	 * @param xml
+	 *            the XML file of the map
+	 * @return a properly formed Map object
+	 * @throws XMLException
+	 *             in case of a reading or parsing problem
+	 * @see com.hexagone.delivery.models.Map
+	 */
+	public static Map loadMap(File xml) throws XMLException {
+		return loadMap(xml.toPath());
+	}
 
+	/**
+	 * This method converts an XML file to a Map object, without asking the
+	 * user to choose it. The large files are memory-mapped and parsed on
+	 * several threads.
+	 * 
+	 * @param xml
+	 *            the path of the XML file of the map
+	 * @return a properly formed Map object
+	 * @throws XMLException
+	 *             in case of a reading or parsing problem
+	 * @see com.hexagone.delivery.models.Map
+	 */
+	public static Map loadMap(Path xml) throws XMLException {
+		try (FileChannel channel = FileChannel.open(xml, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size >= PARALLEL_LOADING_THRESHOLD && size <= Integer.MAX_VALUE && PARALLELISM > 1) {
+				return loadMap(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+			}
+		} catch (IOException e) {
+			throw new XMLException("Could not read Map xml file.");
+		}
+		try (InputStream stream = new BufferedInputStream(Files.newInputStream(xml))) {
+			return loadMap(stream);
+		} catch (IOException e) {
+			throw new XMLException("Could not read Map xml file.");
+		}
+	}
+
+	/**
+	 * This method converts the XML content of a buffer, e.g. a memory-mapped
+	 * file, to a Map object. The content read is the one between the position
+	 * and the limit of the buffer, which are left unchanged. A large content
+	 * is parsed on several threads.
+	 * 
+	 * @param xml
+	 *            the buffer holding the XML map
+	 * @return a properly formed Map object
+	 * @throws XMLException
+	 *             in case of a parsing problem
+	 * @see com.hexagone.delivery.models.Map
+	 */
+	public static Map loadMap(ByteBuffer xml) throws XMLException {
+		if (xml.remaining() >= PARALLEL_LOADING_THRESHOLD && PARALLELISM > 1) {
+			Map map = ParallelMapLoader.load(xml, PARALLELISM, ParallelMapLoader.DEFAULT_CHUNK_SIZE);
+			if (map != null) {
+				return map;
+			}
+		}
+		return loadMap(new ByteBufferInputStream(xml));
+	}
+
+	/**
+	 * This method converts an XML stream to a Map object. The stream is read
+	 * to its end but not closed. It is parsed in one pass, each intersection
+	 * and road being added to the map as soon as it is read : unlike a DOM
+	 * parser, the whole document is never held in memory besides the map.
+	 * 
+	 * @param xml
+	 *            the stream of the XML map
+	 * @return a properly formed Map object
+	 * @throws XMLException
+	 *             in case of a reading or parsing problem
+	 * @see com.hexagone.delivery.models.Map
+	 */
+	public static Map loadMap(InputStream xml) throws XMLException {
+		XMLStreamReader reader = null;
 		try {
-			DocumentBuilder docBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
-			Document document = docBuilder.parse(xml);
-			Element racine = document.getDocumentElement();
-			return buildMap(racine);
+			/** The factories may reuse their readers, so they are not shared between threads */
+			reader = XMLInputFactory.newInstance().createXMLStreamReader(new UncloseableInputStream(xml));
+			return buildMap(reader);
 		} catch (Exception e) {
 			throw new XMLException("Could not parse Map xml file.");
+		} finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (XMLStreamException e) {
+					/** Nothing left to release */
+				}
+			}
 		}
 	}
 
@@ -66,12 +170,76 @@ public class XMLDeserialiser {
 	 * @see DeliveryQuery
 	 */
 	public static DeliveryQuery loadDeliveryQuery() throws XMLException, NoFileChosenException {
-		File xml = XMLFileOpener.getInstance().open();
+		return loadDeliveryQuery(XMLFileOpener.getInstance().open());
+	}
+
+	/**
+	 * This method converts an XML file to a DeliveryQuery, without asking the
+	 * user to choose it. It can be called from several threads at once.
+	 * 
+	 * @param xml
+	 *            the XML file of the delivery query
+	 * @return a properly formated DeliveryQuery
+	 * @throws XMLException
+	 *             in case the file cannot be read or is not a correct
+	 *             DeliveryQuery
+	 * @see DeliveryQuery
+	 */
+	public static DeliveryQuery loadDeliveryQuery(File xml) throws XMLException {
+		return loadDeliveryQuery(xml.toPath());
+	}
+
+	/**
+	 * This method converts an XML file to a DeliveryQuery, without asking the
+	 * user to choose it. It can be called from several threads at once.
+	 * 
+	 * @param xml
+	 *            the path of the XML file of the delivery query
+	 * @return a properly formated DeliveryQuery
+	 * @throws XMLException
+	 *             in case the file cannot be read or is not a correct
+	 *             DeliveryQuery
+	 * @see DeliveryQuery
+	 */
+	public static DeliveryQuery loadDeliveryQuery(Path xml) throws XMLException {
+		try (InputStream stream = new BufferedInputStream(Files.newInputStream(xml))) {
+			return loadDeliveryQuery(stream);
+		} catch (IOException e) {
+			throw new XMLException("Could not read Delivery Query xml file.");
+		}
+	}
+
+	/**
+	 * This method converts the XML content of a buffer to a DeliveryQuery. The
+	 * content read is the one between the position and the limit of the
+	 * buffer, which are left unchanged.
+	 * 
+	 * @param xml
+	 *            the buffer holding the XML delivery query
+	 * @return a properly formated DeliveryQuery
+	 * @throws XMLException
+	 *             in case the content is not a correct DeliveryQuery
+	 * @see DeliveryQuery
+	 */
+	public static DeliveryQuery loadDeliveryQuery(ByteBuffer xml) throws XMLException {
+		return loadDeliveryQuery(new ByteBufferInputStream(xml));
+	}
 
+	/**
+	 * This method converts an XML stream to a DeliveryQuery. The stream is
+	 * read but not closed.
+	 * 
+	 * @param xml
+	 *            the stream of the XML delivery query
+	 * @return a properly formated DeliveryQuery
+	 * @throws XMLException
+	 *             in case the content is not a correct DeliveryQuery
+	 * @see DeliveryQuery
+	 */
+	public static DeliveryQuery loadDeliveryQuery(InputStream xml) throws XMLException {
 		try {
-			JAXBContext jaxbContext = JAXBContext.newInstance(DeliveryQuery.class);
-			javax.xml.bind.Unmarshaller jaxbUnmarshaller = jaxbContext.createUnmarshaller();
-			DeliveryQuery deliveryQuery = (DeliveryQuery) jaxbUnmarshaller.unmarshal(xml);
+			javax.xml.bind.Unmarshaller jaxbUnmarshaller = getDeliveryQueryContext().createUnmarshaller();
+			DeliveryQuery deliveryQuery = (DeliveryQuery) jaxbUnmarshaller.unmarshal(new UncloseableInputStream(xml));
 			if (deliveryQuery.getWarehouse() == null || deliveryQuery.getPassagePointsNumber() < 1) {
 				throw new XMLException("Not a valid DeliveryQuery");
 			}
@@ -82,25 +250,43 @@ public class XMLDeserialiser {
 	}
 
 	/**
-	 * This method creates a Map from the root node of a properly formed xml
-	 * document.
+	 * Gives the JAXB context of the delivery queries. Creating it is much
+	 * longer than parsing a file, so it is created once and shared : unlike
+	 * the unmarshallers, it can be used from several threads.
 	 * 
-	 * @param root
-	 *            the root node of the xml maps file
-	 * @return Map object corresponding to the node given as parameter
+	 * @return the JAXB context bound to DeliveryQuery
+	 * @throws JAXBException
+	 *             if the context cannot be created
+	 */
+	private static synchronized JAXBContext getDeliveryQueryContext() throws JAXBException {
+		if (deliveryQueryContext == null) {
+			deliveryQueryContext = JAXBContext.newInstance(DeliveryQuery.class);
+		}
+		return deliveryQueryContext;
+	}
+
+	/**
+	 * This method creates a Map from the elements read by a stream reader,
+	 * until the end of the document.
+	 * 
+	 * @param reader
+	 *            the reader of the xml maps file
+	 * @return Map object corresponding to the document read
 	 * @throws XMLException in case the xml file does not comply with the consistency of a Map
+	 * @throws XMLStreamException in case the xml file is not properly formed
 	 * @see Map
 	 */
-	private static Map buildMap(Element root) throws XMLException {
+	private static Map buildMap(XMLStreamReader reader) throws XMLException, XMLStreamException {
 		Map map = new Map();
-		NodeList intersections = root.getElementsByTagName("noeud");
-		for (int i = 0; i < intersections.getLength(); i++) {
-			map.addIntersection(createIntersection((Element) intersections.item(i)));
-		}
-
-		NodeList roads = root.getElementsByTagName("troncon");
-		for (int i = 0; i < roads.getLength(); i++) {
-			map.addRoad(createRoad((Element) roads.item(i)));
+		while (reader.hasNext()) {
+			if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+				String name = reader.getLocalName();
+				if (name.equals("noeud")) {
+					map.addIntersection(createIntersection(reader));
+				} else if (name.equals("troncon")) {
+					map.addRoad(createRoad(reader));
+				}
+			}
 		}
 
 		if (map.getAllIntersectionIdentifiers().size() < 2 || map.getRoads().size() < 2) {
@@ -112,35 +298,90 @@ public class XMLDeserialiser {
 
 	/**
 	 * This method creates an Intersection instance, given the appropriate xml
-	 * node.
+	 * element.
 	 * 
 	 * @param elementXML
-	 *            the node corresponding to an intersection
+	 *            the reader positioned on the start of an intersection
+	 *            element
 	 * @return an intersection object corresponding to the information given in
-	 *         the node provided as parameter
+	 *         the element
 	 * @see Intersection
 	 */
-	private static Intersection createIntersection(Element elementXML) {
-		int id = Integer.parseInt(elementXML.getAttribute("id"));
-		int x = Integer.parseInt(elementXML.getAttribute("x"));
-		int y = Integer.parseInt(elementXML.getAttribute("y"));
+	private static Intersection createIntersection(XMLStreamReader elementXML) {
+		int id = Integer.parseInt(elementXML.getAttributeValue(null, "id"));
+		int x = Integer.parseInt(elementXML.getAttributeValue(null, "x"));
+		int y = Integer.parseInt(elementXML.getAttributeValue(null, "y"));
 		Intersection intersection = new Intersection(id, x, y);
 		return intersection;
 	}
 
 	/**
-	 * This method creates a Road instance, given the appropriate xml node.
+	 * This method creates a Road instance, given the appropriate xml element.
 	 * 
 	 * @param elementXML
-	 *            the node corresponding to a road
-	 * @return a road corresponding to the xml node provided as parameter
-	 */
-	private static Road createRoad(Element elementXML) {
-		Integer origin = Integer.parseInt(elementXML.getAttribute("origine"));
-		Integer destination = Integer.parseInt(elementXML.getAttribute("destination"));
-		int length = Integer.parseInt(elementXML.getAttribute("longueur"));
-		int speed = Integer.parseInt(elementXML.getAttribute("vitesse"));
-		String name = elementXML.getAttribute("nomRue");
+	 *            the reader positioned on the start of a road element
+	 * @return a road corresponding to the element
+	 */
+	private static Road createRoad(XMLStreamReader elementXML) {
+		Integer origin = Integer.parseInt(elementXML.getAttributeValue(null, "origine"));
+		Integer destination = Integer.parseInt(elementXML.getAttributeValue(null, "destination"));
+		int length = Integer.parseInt(elementXML.getAttributeValue(null, "longueur"));
+		int speed = Integer.parseInt(elementXML.getAttributeValue(null, "vitesse"));
+		String name = elementXML.getAttributeValue(null, "nomRue");
+		if (name == null) {
+			name = "";
+		}
 		return new Road(origin, destination, length, speed, name);
 	}
+
+	/**
+	 * Reads the content of a buffer between its position and its limit,
+	 * without moving them
+	 */
+	private static final class ByteBufferInputStream extends InputStream {
+
+		private final ByteBuffer buffer;
+
+		ByteBufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer.duplicate();
+		}
+
+		@Override
+		public int read() {
+			return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+		}
+
+		@Override
+		public int read(byte[] bytes, int offset, int length) {
+			if (length == 0) {
+				return 0;
+			}
+			if (!buffer.hasRemaining()) {
+				return -1;
+			}
+			int read = Math.min(length, buffer.remaining());
+			buffer.get(bytes, offset, read);
+			return read;
+		}
+
+		@Override
+		public int available() {
+			return buffer.remaining();
+		}
+	}
+
+	/**
+	 * Keeps the parsers from closing the streams given by the callers, who
+	 * close them
+	 */
+	private static final class UncloseableInputStream extends FilterInputStream {
+
+		UncloseableInputStream(InputStream stream) {
+			super(stream);
+		}
+
+		@Override
+		public void close() {
+		}
+	}
 }
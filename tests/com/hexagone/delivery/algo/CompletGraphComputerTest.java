@@ -67,6 +67,36 @@ public class CompletGraphComputerTest {
 		assertEquals(new Integer(2),pathFromDeliv1ToDeliv2.get(1));
 		assertEquals(new Integer(3),pathFromDeliv1ToDeliv2.get(2));
 	}
+
+	/**
+	 * There is no path towards an intersection that cannot be reached
+	 */
+	@Test
+	public void testUnreachablePath() {
+		Map map = new Map();
+		map.addIntersection(new Intersection(0, 0, 0));
+		map.addIntersection(new Intersection(1, 1, 0));
+		map.addIntersection(new Intersection(2, 1, 1));
+		map.addRoad(new Road(0, 1, 1, 1, "r0"));
+		map.addRoad(new Road(1, 0, 1, 1, "r1"));
+
+		DeliveryQuery delivery = new DeliveryQuery();
+		Warehouse w = new Warehouse();
+		w.setIntersection(new Intersection(0, 0, 0));
+		Delivery[] deliveryArray = new Delivery[2];
+		deliveryArray[0] = new Delivery(new Intersection(1, 1, 0));
+		deliveryArray[1] = new Delivery(new Intersection(2, 1, 1));
+		delivery.setWarehouse(w);
+		delivery.setDelivery(deliveryArray);
+
+		CompleteGraphComputer computer = new CompleteGraphComputer(map, delivery);
+		Double[][] matrix = computer.getAdjacencyMatrix();
+
+		assertTrue(matrix[0][2].isInfinite());
+		assertTrue(computer.getIntersectionPath(0, 2).isEmpty());
+		assertTrue(computer.getIntersectionPath(2, 1).isEmpty());
+		assertEquals(2, computer.getIntersectionPath(0, 1).size());
+	}
 	
 	@Test
 	public void testSmallestCost() throws Exception {
@@ -137,6 +167,87 @@ public class CompletGraphComputerTest {
 				
 	}
 	
+	/**
+	 * Both Dijkstra engines must give the same costs on the same map
+	 * @throws Exception
+	 */
+	@Test
+	public void testEnginesGiveSameCosts() throws Exception {
+		Map map = CompleteGraphComputerBenchmark.generateGrid(12, 7);
+
+		HashMap<Integer,Integer> prevScan = new HashMap<Integer,Integer>();
+		HashMap<Integer,Double> costScan = new HashMap<Integer,Double>();
+		CompleteGraphComputer graphComputer = new CompleteGraphComputer(map, null);
+		graphComputer.setEngine(CompleteGraphComputer.DijkstraEngine.LINEAR_SCAN);
+		graphComputer.computeCosts(new Integer(17), prevScan, costScan);
+
+		HashMap<Integer,Integer> prevHeap = new HashMap<Integer,Integer>();
+		HashMap<Integer,Double> costHeap = new HashMap<Integer,Double>();
+		graphComputer.setEngine(CompleteGraphComputer.DijkstraEngine.BINARY_HEAP);
+		graphComputer.computeCosts(new Integer(17), prevHeap, costHeap);
+
+		assertEquals(costScan.keySet(), costHeap.keySet());
+		for (Integer intersection : costScan.keySet()) {
+			assertEquals(costScan.get(intersection), costHeap.get(intersection), 1e-9);
+		}
+	}
+	
+	/**
+	 * The matrix and the paths computed in parallel must be the same as the
+	 * ones computed sequentially
+	 * @throws Exception
+	 */
+	@Test
+	public void testParallelAdjacencyMatrix() throws Exception {
+		Map map = CompleteGraphComputerBenchmark.generateGrid(20, 3);
+		DeliveryQuery query = CompleteGraphComputerBenchmark.generateQuery(20, 12, 5);
+		Integer[] passagePoints = query.getDeliveryPassageIdentifiers();
+
+		CompleteGraphComputer sequential = new CompleteGraphComputer(map, query);
+		CompleteGraphComputer parallel = new CompleteGraphComputer(map, query);
+		parallel.setParallelism(4);
+
+		Double[][] expected = sequential.getAdjacencyMatrix();
+		Double[][] actual = parallel.getAdjacencyMatrix();
+		for (int i = 0; i < passagePoints.length; i++) {
+			for (int j = 0; j < passagePoints.length; j++) {
+				assertEquals(expected[i][j], actual[i][j]);
+				assertEquals(sequential.getIntersectionPath(passagePoints[i], passagePoints[j]),
+						parallel.getIntersectionPath(passagePoints[i], passagePoints[j]));
+			}
+		}
+	}
+	
+	/**
+	 * The targeted searches must give the same matrix and paths as the full
+	 * ones, while settling less intersections when the passage points are close
+	 * @throws Exception
+	 */
+	@Test
+	public void testTargetedSearch() throws Exception {
+		Map map = CompleteGraphComputerBenchmark.generateGrid(30, 11);
+		DeliveryQuery query = CompleteGraphComputerBenchmark.generateQuery(30, 6, 13, 6);
+		Integer[] passagePoints = query.getDeliveryPassageIdentifiers();
+
+		CompleteGraphComputer full = new CompleteGraphComputer(map, query);
+		full.setTargetedSearch(false);
+		CompleteGraphComputer targeted = new CompleteGraphComputer(map, query);
+		targeted.setTargetedSearch(true);
+
+		Double[][] expected = full.getAdjacencyMatrix();
+		Double[][] actual = targeted.getAdjacencyMatrix();
+		for (int i = 0; i < passagePoints.length; i++) {
+			for (int j = 0; j < passagePoints.length; j++) {
+				assertEquals(expected[i][j], actual[i][j]);
+				assertEquals(full.getIntersectionPath(passagePoints[i], passagePoints[j]),
+						targeted.getIntersectionPath(passagePoints[i], passagePoints[j]));
+			}
+		}
+
+		assertEquals(30 * 30 * passagePoints.length, full.getSettledIntersectionsNumber());
+		assertTrue(targeted.getSettledIntersectionsNumber() < full.getSettledIntersectionsNumber());
+	}
+	
 	/**
 	 * Test of the method getAdjacencyMatrix 
 	 * @throws Exception
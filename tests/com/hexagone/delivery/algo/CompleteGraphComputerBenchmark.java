@@ -0,0 +1,199 @@
+package com.hexagone.delivery.algo;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import com.hexagone.delivery.models.Delivery;
+import com.hexagone.delivery.models.DeliveryQuery;
+import com.hexagone.delivery.models.Intersection;
+import com.hexagone.delivery.models.Map;
+import com.hexagone.delivery.models.Road;
+import com.hexagone.delivery.models.Warehouse;
+
+/**
+ * Compares the time needed by the different Dijkstra engines of the
+ * CompleteGraphComputer to build the adjacency matrix of generated maps. The
+ * maps are square grids with two-way roads of random lengths and speeds. The
+ * binary heap engine is timed with full and targeted searches, the linear scan
+ * only on the smaller maps.
+ * 
+ * Usage : CompleteGraphComputerBenchmark [grid side...] [-deliveries n]
+ * [-threads n] [-zone n]
+ * 
+ * With -zone, the deliveries are picked in the n * n square at the center of
+ * the grid.
+ */
+public class CompleteGraphComputerBenchmark {
+
+	private static final long SEED = 42;
+	/** Above this number of intersections, the linear scan takes minutes */
+	private static final int LINEAR_SCAN_LIMIT = 10000;
+
+	public static void main(String[] args) {
+		int deliveries = 40;
+		int threads = Runtime.getRuntime().availableProcessors();
+		int zone = 0;
+		int[] sides = { 50, 100 };
+
+		if (args.length > 0) {
+			int nbSides = 0;
+			int[] givenSides = new int[args.length];
+			for (int i = 0; i < args.length; i++) {
+				if (args[i].equals("-deliveries")) {
+					deliveries = Integer.parseInt(args[++i]);
+				} else if (args[i].equals("-threads")) {
+					threads = Integer.parseInt(args[++i]);
+				} else if (args[i].equals("-zone")) {
+					zone = Integer.parseInt(args[++i]);
+				} else {
+					givenSides[nbSides++] = Integer.parseInt(args[i]);
+				}
+			}
+			if (nbSides > 0) {
+				sides = Arrays.copyOf(givenSides, nbSides);
+			}
+		}
+
+		System.out.println("intersections;roads;passage points;engine;targeted;threads;settled;time (ms)");
+		for (int side : sides) {
+			Map map = generateGrid(side, SEED);
+			DeliveryQuery query = generateQuery(side, deliveries, SEED, zone > 0 ? Math.min(zone, side) : side);
+			int nbRoads = 0;
+			for (Integer origin : map.getRoads().keySet()) {
+				nbRoads += map.getRoadsStartingFrom(origin).size();
+			}
+
+			Double[][] reference = null;
+			reference = run(map, query, CompleteGraphComputer.DijkstraEngine.BINARY_HEAP, false, 1, reference, nbRoads);
+			if (side * side <= LINEAR_SCAN_LIMIT) {
+				run(map, query, CompleteGraphComputer.DijkstraEngine.LINEAR_SCAN, false, 1, reference, nbRoads);
+			}
+			run(map, query, CompleteGraphComputer.DijkstraEngine.BINARY_HEAP, true, 1, reference, nbRoads);
+			if (threads > 1) {
+				run(map, query, CompleteGraphComputer.DijkstraEngine.BINARY_HEAP, true, threads, reference, nbRoads);
+			}
+		}
+	}
+
+	/**
+	 * Times the computation of one adjacency matrix and checks it against the
+	 * reference matrix
+	 * 
+	 * @return the computed matrix
+	 */
+	private static Double[][] run(Map map, DeliveryQuery query, CompleteGraphComputer.DijkstraEngine engine,
+			boolean targeted, int threads, Double[][] reference, int nbRoads) {
+		CompleteGraphComputer computer = new CompleteGraphComputer(map, query);
+		computer.setEngine(engine);
+		computer.setTargetedSearch(targeted);
+		computer.setParallelism(threads);
+
+		long start = System.nanoTime();
+		Double[][] matrix = computer.getAdjacencyMatrix();
+		long elapsed = (System.nanoTime() - start) / 1000000;
+
+		if (reference != null && !sameMatrix(reference, matrix)) {
+			throw new IllegalStateException("The engines do not agree on " + map.getIntersections().size()
+					+ " intersections");
+		}
+		System.out.println(map.getIntersections().size() + ";" + nbRoads + ";" + matrix.length + ";" + engine + ";"
+				+ targeted + ";" + threads + ";" + computer.getSettledIntersectionsNumber() + ";" + elapsed);
+		return matrix;
+	}
+
+	/**
+	 * Generates a square grid map whose intersections are linked to their
+	 * neighbours by two-way roads
+	 * 
+	 * @param side
+	 *            the number of intersections on each side of the grid
+	 * @param seed
+	 *            the seed of the random lengths and speeds
+	 * @return the generated map
+	 */
+	static Map generateGrid(int side, long seed) {
+		Random random = new Random(seed);
+		Map map = new Map();
+		for (int y = 0; y < side; y++) {
+			for (int x = 0; x < side; x++) {
+				map.addIntersection(new Intersection(y * side + x, x * 10, y * 10));
+			}
+		}
+		for (int y = 0; y < side; y++) {
+			for (int x = 0; x < side; x++) {
+				int id = y * side + x;
+				if (x + 1 < side) {
+					addTwoWayRoad(map, random, id, id + 1);
+				}
+				if (y + 1 < side) {
+					addTwoWayRoad(map, random, id, id + side);
+				}
+			}
+		}
+		return map;
+	}
+
+	/**
+	 * Generates a delivery query on a grid generated by generateGrid
+	 * 
+	 * @param side
+	 *            the side of the grid
+	 * @param deliveries
+	 *            the number of deliveries to make
+	 * @param seed
+	 *            the seed used to pick the delivery intersections
+	 * @return the generated delivery query
+	 */
+	static DeliveryQuery generateQuery(int side, int deliveries, long seed) {
+		return generateQuery(side, deliveries, seed, side);
+	}
+
+	/**
+	 * Generates a delivery query whose passage points are all in the square of
+	 * side 'zone' at the center of a grid generated by generateGrid
+	 * 
+	 * @param side
+	 *            the side of the grid
+	 * @param deliveries
+	 *            the number of deliveries to make
+	 * @param seed
+	 *            the seed used to pick the delivery intersections
+	 * @param zone
+	 *            the side of the delivery zone
+	 * @return the generated delivery query
+	 */
+	static DeliveryQuery generateQuery(int side, int deliveries, long seed, int zone) {
+		Random random = new Random(seed);
+		int corner = (side - zone) / 2;
+		Warehouse warehouse = new Warehouse();
+		warehouse.setIntersection(new Intersection(
+				(corner + random.nextInt(zone)) * side + corner + random.nextInt(zone)));
+		Delivery[] deliveryArray = new Delivery[deliveries];
+		for (int i = 0; i < deliveries; i++) {
+			deliveryArray[i] = new Delivery(new Intersection(
+					(corner + random.nextInt(zone)) * side + corner + random.nextInt(zone)));
+		}
+		DeliveryQuery query = new DeliveryQuery();
+		query.setWarehouse(warehouse);
+		query.setDelivery(deliveryArray);
+		return query;
+	}
+
+	private static void addTwoWayRoad(Map map, Random random, int a, int b) {
+		int length = 500 + random.nextInt(2000);
+		int speed = 20 + random.nextInt(40);
+		map.addRoad(new Road(a, b, length, speed, "r" + a + "-" + b));
+		map.addRoad(new Road(b, a, length, speed, "r" + b + "-" + a));
+	}
+
+	private static boolean sameMatrix(Double[][] a, Double[][] b) {
+		for (int i = 0; i < a.length; i++) {
+			for (int j = 0; j < a[i].length; j++) {
+				if (Math.abs(a[i][j] - b[i][j]) > 1e-6) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,140 @@
+package com.hexagone.delivery.algo;
+
+import static org.junit.Assert.*;
+
+import java.util.Date;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.hexagone.delivery.models.Delivery;
+import com.hexagone.delivery.models.DeliveryQuery;
+
+public class HeldKarpTest {
+
+	/**
+	 * Without time windows, the dynamic programming and the branch and bound
+	 * must find tours of the same cost
+	 */
+	@Test
+	public void testSameCostAsBranchAndBound() {
+		for (long seed = 0; seed < 5; seed++) {
+			Double[][] costs = TSPSolverBenchmark.generateCosts(10, seed);
+			DeliveryQuery query = TSPSolverBenchmark.generateQuery(9, seed);
+
+			TSPSolverV3 branchAndBound = new TSPSolverV3(costs, query);
+			branchAndBound.computeSolution();
+			HeldKarpSolver heldKarp = new HeldKarpSolver(costs, query);
+			heldKarp.computeSolution();
+
+			assertEquals(TSPSolverBenchmark.tourCost(costs, query, branchAndBound.getBestSolution()),
+					TSPSolverBenchmark.tourCost(costs, query, heldKarp.getBestSolution()));
+		}
+	}
+
+	/**
+	 * With time windows, the tours must also end at the same time, waits
+	 * included
+	 */
+	@Test
+	public void testSameCostWithTimeWindows() {
+		for (long seed = 0; seed < 5; seed++) {
+			Double[][] costs = TSPSolverBenchmark.generateCosts(9, seed);
+			DeliveryQuery query = TSPSolverBenchmark.generateQuery(8, seed);
+			addWindows(query, seed);
+
+			TSPSolverV3 branchAndBound = new TSPSolverV3(costs, query);
+			branchAndBound.computeSolution();
+			HeldKarpSolver heldKarp = new HeldKarpSolver(costs, query);
+			heldKarp.computeSolution();
+
+			TourProblem problem = new TourProblem(costs, query);
+			assertEquals(TSPSolverBenchmark.endTime(problem, branchAndBound.getBestSolution()),
+					TSPSolverBenchmark.endTime(problem, heldKarp.getBestSolution()));
+		}
+	}
+
+	/**
+	 * A tour that cannot respect the windows is reported at once as empty,
+	 * without reaching the time limit
+	 */
+	@Test
+	public void testImpossibleTour() {
+		Double[][] costs = TSPSolverBenchmark.generateCosts(5, 3);
+		DeliveryQuery query = TSPSolverBenchmark.generateQuery(4, 3);
+		long departure = query.getWarehouse().getDepartureTime().getTime();
+		// Each delivery lasts at least one minute
+		query.getDeliveries()[1].setEndSchedule(new Date(departure + 30 * 1000));
+
+		HeldKarpSolver heldKarp = new HeldKarpSolver(costs, query);
+		heldKarp.computeSolution();
+
+		assertTrue(heldKarp.getBestSolution().isEmpty());
+		assertFalse(heldKarp.timeLimitReached());
+	}
+
+	/**
+	 * No solver takes a leg towards a delivery that cannot be reached : the
+	 * tours avoid it when they can, and are empty otherwise
+	 */
+	@Test
+	public void testUnreachableDeliveries() {
+		Double[][] costs = TSPSolverBenchmark.generateCosts(8, 4);
+		DeliveryQuery query = TSPSolverBenchmark.generateQuery(7, 4);
+		costs[5][3] = Double.POSITIVE_INFINITY;
+		costs[6][3] = Double.POSITIVE_INFINITY;
+		costs[3][0] = Double.POSITIVE_INFINITY;
+		TourProblem problem = new TourProblem(costs, query);
+
+		HeldKarpSolver heldKarp = new HeldKarpSolver(costs, query);
+		heldKarp.computeSolution();
+		long optimal = problem.endTime(heldKarp.getBestSolution());
+		assertTrue(optimal >= 0);
+		for (int parallelism = 1; parallelism <= 4; parallelism += 3) {
+			TSPSolverV3 branchAndBound = new TSPSolverV3(costs, query);
+			branchAndBound.setParallelism(parallelism);
+			branchAndBound.computeSolution();
+			assertEquals(optimal, problem.endTime(branchAndBound.getBestSolution()));
+		}
+		HeuristicTSPSolver heuristic = new HeuristicTSPSolver(costs, query);
+		heuristic.setTimeLimit(100);
+		heuristic.computeSolution();
+		assertTrue(problem.endTime(heuristic.getBestSolution()) >= optimal);
+
+		/** Delivery 3 cannot be reached at all */
+		for (int i = 0; i < costs.length; i++) {
+			if (i != 3) {
+				costs[i][3] = Double.POSITIVE_INFINITY;
+			}
+		}
+		TourSolver[] solvers = { new HeldKarpSolver(costs, query), new TSPSolverV3(costs, query),
+				new HeuristicTSPSolver(costs, query) };
+		for (TourSolver solver : solvers) {
+			solver.computeSolution();
+			assertTrue(solver.getBestSolution().isEmpty());
+		}
+	}
+
+	@Test
+	public void testMemoryNeeded() {
+		assertEquals(0, HeldKarpSolver.memoryNeeded(1));
+		assertEquals(4 * 2 * 5, HeldKarpSolver.memoryNeeded(3));
+		assertEquals(Long.MAX_VALUE, HeldKarpSolver.memoryNeeded(HeldKarpSolver.MAX_DELIVERIES + 2));
+	}
+
+	/**
+	 * Gives windows of one hour to half of the deliveries, starting during the
+	 * first two hours
+	 */
+	private static void addWindows(DeliveryQuery query, long seed) {
+		Random random = new Random(seed);
+		long departure = query.getWarehouse().getDepartureTime().getTime();
+		for (Delivery delivery : query.getDeliveries()) {
+			if (random.nextBoolean()) {
+				long start = departure + random.nextInt(7200) * 1000L;
+				delivery.setStartSchedule(new Date(start));
+				delivery.setEndSchedule(new Date(start + 3600 * 1000));
+			}
+		}
+	}
+}
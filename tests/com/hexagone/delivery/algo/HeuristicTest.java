@@ -0,0 +1,128 @@
+package com.hexagone.delivery.algo;
+
+import static org.junit.Assert.*;
+
+import java.util.Date;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.hexagone.delivery.models.Delivery;
+import com.hexagone.delivery.models.DeliveryQuery;
+
+public class HeuristicTest {
+
+	/**
+	 * A large round gets a valid tour from the first local search, in much less
+	 * than the time limit of the exact solvers
+	 */
+	@Test
+	public void testLargeRound() {
+		Double[][] costs = TSPSolverBenchmark.generateCosts(121, 0);
+		DeliveryQuery query = TSPSolverBenchmark.generateQuery(120, 0);
+
+		HeuristicTSPSolver heuristic = new HeuristicTSPSolver(costs, query);
+		heuristic.setIteratedSearch(false);
+		long start = System.currentTimeMillis();
+		heuristic.computeSolution();
+
+		assertTrue(System.currentTimeMillis() - start < 5000);
+		assertTrue(new TourProblem(costs, query).endTime(heuristic.getBestSolution()) >= 0);
+	}
+
+	/**
+	 * The time limit and the policy also stop the first local search
+	 */
+	@Test
+	public void testTimeLimit() {
+		Double[][] costs = TSPSolverBenchmark.generateCosts(401, 0);
+		DeliveryQuery query = TSPSolverBenchmark.generateQuery(400, 0);
+
+		HeuristicTSPSolver heuristic = new HeuristicTSPSolver(costs, query);
+		heuristic.setTimeLimit(50);
+		long start = System.currentTimeMillis();
+		heuristic.computeSolution();
+		assertTrue(System.currentTimeMillis() - start < 1000);
+
+		SolvePolicy policy = new SolvePolicy();
+		policy.setNodeLimit(1000);
+		heuristic = new HeuristicTSPSolver(costs, query);
+		heuristic.setSolvePolicy(policy);
+		heuristic.computeSolution();
+		assertTrue(heuristic.getExploredNodesNumber() < 1000 + 2 * 400);
+	}
+
+	/**
+	 * On small rounds, the heuristic finds tours close to the best ones
+	 */
+	@Test
+	public void testCloseToOptimal() {
+		for (long seed = 0; seed < 5; seed++) {
+			Double[][] costs = TSPSolverBenchmark.generateCosts(10, seed);
+			DeliveryQuery query = TSPSolverBenchmark.generateQuery(9, seed);
+
+			HeldKarpSolver heldKarp = new HeldKarpSolver(costs, query);
+			heldKarp.computeSolution();
+			HeuristicTSPSolver heuristic = new HeuristicTSPSolver(costs, query);
+			heuristic.setTimeLimit(100);
+			heuristic.computeSolution();
+
+			TourProblem problem = new TourProblem(costs, query);
+			long optimal = problem.endTime(heldKarp.getBestSolution());
+			assertTrue(problem.endTime(heuristic.getBestSolution()) <= optimal * 105 / 100);
+		}
+	}
+
+	/**
+	 * When there is a tour respecting the windows, the heuristic finds one
+	 */
+	@Test
+	public void testRespectsTimeWindows() {
+		for (long seed = 0; seed < 5; seed++) {
+			Double[][] costs = TSPSolverBenchmark.generateCosts(11, seed);
+			DeliveryQuery query = TSPSolverBenchmark.generateQuery(10, seed);
+			Random random = new Random(seed);
+			long departure = query.getWarehouse().getDepartureTime().getTime();
+			for (Delivery delivery : query.getDeliveries()) {
+				if (random.nextBoolean()) {
+					long start = departure + random.nextInt(3600) * 1000L;
+					delivery.setStartSchedule(new Date(start));
+					delivery.setEndSchedule(new Date(start + 3600 * 1000));
+				}
+			}
+
+			HeldKarpSolver heldKarp = new HeldKarpSolver(costs, query);
+			heldKarp.computeSolution();
+			HeuristicTSPSolver heuristic = new HeuristicTSPSolver(costs, query);
+			heuristic.setTimeLimit(100);
+			heuristic.computeSolution();
+
+			TourProblem problem = new TourProblem(costs, query);
+			if (!heldKarp.getBestSolution().isEmpty()) {
+				assertTrue(problem.endTime(heuristic.getBestSolution()) >= 0);
+			}
+		}
+	}
+
+	/**
+	 * Given the best tour as initial solution, the branch and bound keeps it
+	 * and explores less of the tree
+	 */
+	@Test
+	public void testWarmStart() {
+		Double[][] costs = TSPSolverBenchmark.generateCosts(12, 1);
+		DeliveryQuery query = TSPSolverBenchmark.generateQuery(11, 1);
+
+		HeldKarpSolver heldKarp = new HeldKarpSolver(costs, query);
+		heldKarp.computeSolution();
+		TSPSolverV3 cold = new TSPSolverV3(costs, query);
+		cold.computeSolution();
+		TSPSolverV3 warm = new TSPSolverV3(costs, query);
+		warm.setInitialSolution(heldKarp.getBestSolution());
+		warm.computeSolution();
+
+		TourProblem problem = new TourProblem(costs, query);
+		assertEquals(problem.endTime(heldKarp.getBestSolution()), problem.endTime(warm.getBestSolution()));
+		assertTrue(warm.getExploredNodesNumber() < cold.getExploredNodesNumber());
+	}
+}
@@ -0,0 +1,178 @@
+package com.hexagone.delivery.algo;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+import com.hexagone.delivery.models.Delivery;
+import com.hexagone.delivery.models.DeliveryQuery;
+import com.hexagone.delivery.models.Intersection;
+import com.hexagone.delivery.models.Map;
+
+public class ReplanTest {
+
+	private static final int SIDE = 20;
+
+	/**
+	 * Removing a delivery keeps the other ones in a tour that cannot be longer
+	 * without windows, and leaves the original query untouched
+	 */
+	@Test
+	public void testRemoval() {
+		Map map = CompleteGraphComputerBenchmark.generateGrid(SIDE, 3);
+		DeliveryQuery query = generateQuery(10, 3);
+		DeliveryComputer computer = computeTour(map, query);
+
+		Delivery removed = query.getDeliveries()[3];
+		DeliveryComputer replanned = computer.replanRemoval(removed);
+
+		assertEquals(10, query.getDeliveries().length);
+		DeliveryQuery newQuery = replanned.getDeliveryQuery();
+		assertEquals(9, newQuery.getDeliveries().length);
+		assertFalse(Arrays.asList(newQuery.getDeliveries()).contains(removed));
+		assertTrue(replanned.checkNotEmptySolution());
+		assertTrue(endTime(map, newQuery, replanned) >= 0);
+		assertTrue(endTime(map, newQuery, replanned) <= endTime(map, query, computer));
+	}
+
+	/**
+	 * An added delivery is inserted in the tour, only the search from its
+	 * intersection being made
+	 */
+	@Test
+	public void testAddition() {
+		Map map = CompleteGraphComputerBenchmark.generateGrid(SIDE, 4);
+		DeliveryQuery query = generateQuery(10, 4);
+		DeliveryComputer computer = computeTour(map, query);
+
+		int intersection = 0;
+		HashSet<Integer> passagePoints = new HashSet<Integer>(Arrays.asList(query.getDeliveryPassageIdentifiers()));
+		while (passagePoints.contains(intersection)) {
+			intersection++;
+		}
+		ShortestPathCache cache = ShortestPathCache.getInstance();
+		long misses = cache.getMissesNumber();
+		DeliveryComputer replanned = computer.replanAddition(new Delivery(new Intersection(intersection)));
+
+		assertEquals(misses + 1, cache.getMissesNumber());
+		DeliveryQuery newQuery = replanned.getDeliveryQuery();
+		assertEquals(11, newQuery.getDeliveries().length);
+		ArrayList<Integer> tour = replanned.getCurrentTour();
+		assertEquals(12, tour.size());
+		assertEquals(12, new HashSet<Integer>(tour).size());
+		assertTrue(endTime(map, newQuery, replanned) >= 0);
+	}
+
+	/**
+	 * A delivery whose window is moved is made in its new window
+	 */
+	@Test
+	public void testModification() {
+		Map map = CompleteGraphComputerBenchmark.generateGrid(SIDE, 5);
+		DeliveryQuery query = generateQuery(8, 5);
+		DeliveryComputer computer = computeTour(map, query);
+
+		/** The last delivery of the tour has to be made first */
+		ArrayList<Integer> tour = computer.getCurrentTour();
+		Delivery previous = query.getDeliveries()[tour.get(tour.size() - 1) - 1];
+		Delivery modified = new Delivery(previous.getIntersection());
+		long departure = query.getWarehouse().getDepartureTime().getTime();
+		modified.setStartSchedule(new Date(departure));
+		modified.setEndSchedule(new Date(departure + 600 * 1000));
+		DeliveryComputer replanned = computer.replanModification(previous, modified);
+
+		DeliveryQuery newQuery = replanned.getDeliveryQuery();
+		assertSame(modified, newQuery.getDeliveries()[tour.get(tour.size() - 1) - 1]);
+		assertTrue(replanned.checkNotEmptySolution());
+		assertTrue(endTime(map, newQuery, replanned) >= 0);
+	}
+
+	/**
+	 * The exact solver started after a repair never gives back a longer tour
+	 */
+	@Test
+	public void testImproveInBackground() throws InterruptedException {
+		Map map = CompleteGraphComputerBenchmark.generateGrid(SIDE, 6);
+		DeliveryQuery query = generateQuery(12, 6);
+		DeliveryComputer computer = computeTour(map, query);
+		DeliveryComputer replanned = computer.replanRemoval(query.getDeliveries()[0]);
+		long repairedEnd = endTime(map, replanned.getDeliveryQuery(), replanned);
+
+		Thread thread = replanned.improveInBackground(null);
+		assertNotNull(thread);
+		thread.join();
+
+		assertTrue(endTime(map, replanned.getDeliveryQuery(), replanned) <= repairedEnd);
+		assertTrue(endTime(map, replanned.getDeliveryQuery(), replanned) >= 0);
+	}
+
+	/**
+	 * A repair finding no tour gives back an empty tour instead of computing
+	 * it from scratch
+	 */
+	@Test
+	public void testImpossibleModification() {
+		Map map = CompleteGraphComputerBenchmark.generateGrid(SIDE, 7);
+		DeliveryQuery query = generateQuery(8, 7);
+		DeliveryComputer computer = computeTour(map, query);
+
+		Delivery previous = query.getDeliveries()[0];
+		Delivery modified = new Delivery(previous.getIntersection());
+		long departure = query.getWarehouse().getDepartureTime().getTime();
+		modified.setStartSchedule(new Date(departure));
+		modified.setEndSchedule(new Date(departure + 1000));
+		DeliveryComputer replanned = computer.replanModification(previous, modified);
+
+		assertFalse(replanned.checkNotEmptySolution());
+	}
+
+	/**
+	 * The exact solver started after a repair stops once cancelled, keeping
+	 * the repaired tour
+	 */
+	@Test
+	public void testCancelInBackground() throws InterruptedException {
+		Map map = CompleteGraphComputerBenchmark.generateGrid(SIDE, 9);
+		DeliveryQuery query = generateQuery(21, 9);
+		DeliveryComputer computer = new DeliveryComputer(map, query);
+		computer.setParallelism(1);
+		computer.setExactSolverMaxDeliveries(0);
+		computer.setHeuristicTimeLimit(0);
+		computer.compute();
+		DeliveryComputer replanned = computer.replanRemoval(query.getDeliveries()[0]);
+		replanned.setExactSolverMaxDeliveries(20);
+		replanned.setHeldKarpMemoryBudget(0);
+
+		Thread thread = replanned.improveInBackground(null);
+		assertNotNull(thread);
+		Thread.sleep(100);
+		replanned.cancel();
+		thread.join(2000);
+
+		assertFalse(thread.isAlive());
+		assertTrue(endTime(map, replanned.getDeliveryQuery(), replanned) >= 0);
+	}
+
+	private static DeliveryQuery generateQuery(int deliveries, long seed) {
+		DeliveryQuery query = CompleteGraphComputerBenchmark.generateQuery(SIDE, deliveries, seed);
+		query.getWarehouse().setDepartureTime(new Date(8 * 3600 * 1000));
+		return query;
+	}
+
+	private static DeliveryComputer computeTour(Map map, DeliveryQuery query) {
+		DeliveryComputer computer = new DeliveryComputer(map, query);
+		computer.setParallelism(1);
+		computer.compute();
+		return computer;
+	}
+
+	private static long endTime(Map map, DeliveryQuery query, DeliveryComputer computer) {
+		Double[][] costs = new CompleteGraphComputer(map, query).getAdjacencyMatrix();
+		return new TourProblem(costs, query).endTime(computer.getCurrentTour());
+	}
+}
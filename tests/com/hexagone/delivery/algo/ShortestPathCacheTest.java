@@ -0,0 +1,121 @@
+package com.hexagone.delivery.algo;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+import com.hexagone.delivery.models.Delivery;
+import com.hexagone.delivery.models.DeliveryQuery;
+import com.hexagone.delivery.models.Intersection;
+import com.hexagone.delivery.models.Map;
+
+public class ShortestPathCacheTest {
+
+	/**
+	 * After one delivery is moved, only the search from its new intersection
+	 * is made, and the matrix and paths are the ones computed without cache
+	 */
+	@Test
+	public void testOneSearchAfterEdit() {
+		Map map = CompleteGraphComputerBenchmark.generateGrid(20, 1);
+		DeliveryQuery query = CompleteGraphComputerBenchmark.generateQuery(20, 6, 1);
+		ShortestPathCache cache = new ShortestPathCache();
+
+		CompleteGraphComputer first = new CompleteGraphComputer(map, query);
+		first.setCache(cache);
+		first.getAdjacencyMatrix();
+		assertEquals(distinctPassagePoints(query) * 20 * 20, first.getSettledIntersectionsNumber());
+
+		/** The map is loaded again and the third delivery is moved */
+		Map sameMap = CompleteGraphComputerBenchmark.generateGrid(20, 1);
+		int moved = 0;
+		while (new HashSet<Integer>(Arrays.asList(query.getDeliveryPassageIdentifiers())).contains(moved)) {
+			moved++;
+		}
+		Delivery[] deliveries = query.getDeliveries();
+		deliveries[2] = new Delivery(new Intersection(moved));
+		query.setDelivery(deliveries);
+
+		CompleteGraphComputer second = new CompleteGraphComputer(sameMap, query);
+		second.setCache(cache);
+		Double[][] cached = second.getAdjacencyMatrix();
+		assertEquals(20 * 20, second.getSettledIntersectionsNumber());
+
+		CompleteGraphComputer reference = new CompleteGraphComputer(sameMap, query);
+		Double[][] expected = reference.getAdjacencyMatrix();
+		Integer[] passagePoints = query.getDeliveryPassageIdentifiers();
+		for (int i = 0; i < expected.length; i++) {
+			for (int j = 0; j < expected.length; j++) {
+				assertEquals(expected[i][j], cached[i][j], 1e-9);
+				assertEquals(reference.getIntersectionPath(passagePoints[i], passagePoints[j]),
+						second.getIntersectionPath(passagePoints[i], passagePoints[j]));
+			}
+		}
+	}
+
+	/**
+	 * The least recently used searches are dropped to respect the budget
+	 */
+	@Test
+	public void testMemoryBudget() {
+		Map map = CompleteGraphComputerBenchmark.generateGrid(20, 2);
+		DeliveryQuery query = CompleteGraphComputerBenchmark.generateQuery(20, 4, 2);
+		DeliveryQuery otherQuery = CompleteGraphComputerBenchmark.generateQuery(20, 4, 3);
+		ShortestPathCache cache = new ShortestPathCache();
+		long entrySize = new ShortestPaths(new double[20 * 20], new int[20 * 20]).getMemorySize();
+		long budget = Math.max(distinctPassagePoints(query), distinctPassagePoints(otherQuery)) * entrySize;
+		cache.setMemoryBudget(budget);
+
+		CompleteGraphComputer computer = new CompleteGraphComputer(map, query);
+		computer.setCache(cache);
+		computer.getAdjacencyMatrix();
+		CompleteGraphComputer other = new CompleteGraphComputer(map, otherQuery);
+		other.setCache(cache);
+		other.getAdjacencyMatrix();
+		assertTrue(cache.getMemoryUsed() <= budget);
+
+		/** The searches of the first query were the least recently used, some were dropped */
+		CompleteGraphComputer again = new CompleteGraphComputer(map, query);
+		again.setCache(cache);
+		again.getAdjacencyMatrix();
+		assertTrue(again.getSettledIntersectionsNumber() > 0);
+		assertTrue(cache.getMemoryUsed() <= budget);
+	}
+
+	/**
+	 * A round whose searches do not fit in the budget makes targeted searches,
+	 * as without cache, instead of complete searches dropped before being used
+	 */
+	@Test
+	public void testRoundLargerThanBudget() {
+		Map map = CompleteGraphComputerBenchmark.generateGrid(20, 2);
+		DeliveryQuery query = CompleteGraphComputerBenchmark.generateQuery(20, 6, 2);
+		ShortestPathCache cache = new ShortestPathCache();
+		long entrySize = new ShortestPaths(new double[20 * 20], new int[20 * 20]).getMemorySize();
+		cache.setMemoryBudget((distinctPassagePoints(query) - 1) * entrySize);
+
+		CompleteGraphComputer computer = new CompleteGraphComputer(map, query);
+		computer.setCache(cache);
+		Double[][] matrix = computer.getAdjacencyMatrix();
+		CompleteGraphComputer reference = new CompleteGraphComputer(map, query);
+		Double[][] expected = reference.getAdjacencyMatrix();
+
+		assertEquals(0, cache.getMemoryUsed());
+		assertEquals(reference.getSettledIntersectionsNumber(), computer.getSettledIntersectionsNumber());
+		assertTrue(computer.getSettledIntersectionsNumber() < distinctPassagePoints(query) * 20 * 20);
+		for (int i = 0; i < expected.length; i++) {
+			assertArrayEquals(expected[i], matrix[i]);
+		}
+	}
+
+	/**
+	 * Gives the number of searches needed by a query, each intersection being
+	 * searched once whatever the number of passage points on it
+	 */
+	private static int distinctPassagePoints(DeliveryQuery query) {
+		return new HashSet<Integer>(Arrays.asList(query.getDeliveryPassageIdentifiers())).size();
+	}
+}
@@ -0,0 +1,115 @@
+package com.hexagone.delivery.algo;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import com.hexagone.delivery.models.DeliveryQuery;
+
+public class SolvePolicyTest {
+
+	private static final int DELIVERIES = 22;
+
+	/**
+	 * The branch and bound stops after about the number of nodes asked
+	 */
+	@Test
+	public void testNodeLimit() {
+		SolvePolicy policy = new SolvePolicy();
+		policy.setNodeLimit(100000);
+		TSPSolverV3 solver = createSolver(policy);
+		solver.computeSolution();
+
+		assertTrue(solver.timeLimitReached());
+		assertTrue(solver.getExploredNodesNumber() >= 100000);
+		assertTrue(solver.getExploredNodesNumber() < 100000 + 2 * 4096);
+		assertFalse(solver.getBestSolution().isEmpty());
+	}
+
+	/**
+	 * The branch and bound stops soon after the time limit
+	 */
+	@Test
+	public void testTimeLimit() {
+		SolvePolicy policy = new SolvePolicy();
+		policy.setTimeLimit(300);
+		TSPSolverV3 solver = createSolver(policy);
+		long start = System.currentTimeMillis();
+		solver.computeSolution();
+
+		assertTrue(solver.timeLimitReached());
+		assertTrue(System.currentTimeMillis() - start < 3000);
+	}
+
+	/**
+	 * With a large gap, the initial solution is accepted at once
+	 */
+	@Test
+	public void testTargetGap() {
+		SolvePolicy policy = new SolvePolicy();
+		policy.setTargetGap(1);
+		TSPSolverV3 solver = createSolver(policy);
+		solver.computeSolution();
+
+		assertTrue(solver.timeLimitReached());
+		assertEquals(1, solver.getExploredNodesNumber());
+		assertEquals(initialSolution(), solver.getBestSolution());
+	}
+
+	/**
+	 * The search stops when it no longer improves the tour
+	 */
+	@Test
+	public void testStagnationTime() {
+		SolvePolicy policy = new SolvePolicy();
+		policy.setStagnationTime(200);
+		TSPSolverV3 solver = createSolver(policy);
+		long start = System.currentTimeMillis();
+		solver.computeSolution();
+
+		assertTrue(solver.timeLimitReached());
+		assertTrue(System.currentTimeMillis() - start < 10000);
+	}
+
+	/**
+	 * Held-Karp stopped by a limit gives back the initial solution
+	 */
+	@Test
+	public void testHeldKarpNodeLimit() {
+		SolvePolicy policy = new SolvePolicy();
+		policy.setNodeLimit(1000);
+		Double[][] costs = TSPSolverBenchmark.generateCosts(15, 0);
+		DeliveryQuery query = TSPSolverBenchmark.generateQuery(14, 0);
+		HeuristicTSPSolver heuristic = new HeuristicTSPSolver(costs, query);
+		heuristic.setIteratedSearch(false);
+		heuristic.computeSolution();
+
+		HeldKarpSolver solver = new HeldKarpSolver(costs, query);
+		solver.setInitialSolution(heuristic.getBestSolution());
+		solver.setSolvePolicy(policy);
+		solver.computeSolution();
+
+		assertTrue(solver.timeLimitReached());
+		assertEquals(heuristic.getBestSolution(), solver.getBestSolution());
+	}
+
+	private static TSPSolverV3 createSolver(SolvePolicy policy) {
+		Double[][] costs = TSPSolverBenchmark.generateCosts(DELIVERIES + 1, 0);
+		DeliveryQuery query = TSPSolverBenchmark.generateQuery(DELIVERIES, 0);
+		TSPSolverV3 solver = new TSPSolverV3(costs, query);
+		solver.setInitialSolution(initialSolution());
+		solver.setSolvePolicy(policy);
+		return solver;
+	}
+
+	private static ArrayList<Integer> initialSolution() {
+		Double[][] costs = TSPSolverBenchmark.generateCosts(DELIVERIES + 1, 0);
+		DeliveryQuery query = TSPSolverBenchmark.generateQuery(DELIVERIES, 0);
+		HeuristicTSPSolver heuristic = new HeuristicTSPSolver(costs, query);
+		heuristic.setIteratedSearch(false);
+		heuristic.computeSolution();
+		return heuristic.getBestSolution();
+	}
+}
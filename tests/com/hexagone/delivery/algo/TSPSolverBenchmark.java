@@ -0,0 +1,173 @@
+package com.hexagone.delivery.algo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Random;
+
+import com.hexagone.delivery.models.Delivery;
+import com.hexagone.delivery.models.DeliveryQuery;
+import com.hexagone.delivery.models.Intersection;
+import com.hexagone.delivery.models.Warehouse;
+
+/**
+ * Compares the different TSP solvers on the same generated cost matrices :
+ * number of nodes of the search tree (or of states) explored, computation time
+ * and cost of the best tour found. The passage points are placed at random in
+ * a square and the costs are the distances between them.
+ * 
+ * Usage : TSPSolverBenchmark [number of deliveries...] [-threads n]
+ * 
+ * With more than one thread, TSPSolverV3 is also timed exploring the tree in
+ * parallel. The heuristic is timed with its first local search only, and with
+ * one second of iterated local search.
+ */
+public class TSPSolverBenchmark {
+
+	private static final long SEED = 42;
+	/** Above this number of deliveries, the branch and bound always times out */
+	private static final int BRANCH_AND_BOUND_LIMIT = 20;
+	private static final long[] HEURISTIC_TIME_LIMITS = { 0, 1000 };
+
+	public static void main(String[] args) {
+		int threads = Runtime.getRuntime().availableProcessors();
+		int[] sizes = { 6, 8, 10, 11 };
+		if (args.length > 0) {
+			int nbSizes = 0;
+			int[] givenSizes = new int[args.length];
+			for (int i = 0; i < args.length; i++) {
+				if (args[i].equals("-threads")) {
+					threads = Integer.parseInt(args[++i]);
+				} else {
+					givenSizes[nbSizes++] = Integer.parseInt(args[i]);
+				}
+			}
+			if (nbSizes > 0) {
+				sizes = Arrays.copyOf(givenSizes, nbSizes);
+			}
+		}
+
+		System.out.println("deliveries;solver;threads;explored nodes;time (ms);tour cost (s);timeout");
+		for (int deliveries : sizes) {
+			DeliveryQuery query = generateQuery(deliveries, SEED);
+			Double[][] costs = generateCosts(deliveries + 1, SEED);
+
+			if (deliveries <= BRANCH_AND_BOUND_LIMIT) {
+				run("TSPSolverV1", new TSPSolverV1(costs, query), 1, costs, query);
+				run("TSPSolverV2", new TSPSolverV2(costs, query), 1, costs, query);
+				run("TSPSolverV3", new TSPSolverV3(costs, query), 1, costs, query);
+				if (threads > 1) {
+					TSPSolverV3 parallelSolver = new TSPSolverV3(costs, query);
+					parallelSolver.setParallelism(threads);
+					run("TSPSolverV3", parallelSolver, threads, costs, query);
+				}
+			}
+			if (HeldKarpSolver.memoryNeeded(deliveries + 1) <= Runtime.getRuntime().maxMemory() / 2) {
+				run("HeldKarpSolver", new HeldKarpSolver(costs, query), 1, costs, query);
+			}
+			for (long timeLimit : HEURISTIC_TIME_LIMITS) {
+				HeuristicTSPSolver heuristic = new HeuristicTSPSolver(costs, query);
+				heuristic.setIteratedSearch(timeLimit > 0);
+				heuristic.setTimeLimit(timeLimit > 0 ? timeLimit : SolvePolicy.NO_LIMIT);
+				run("HeuristicTSPSolver " + timeLimit + " ms", heuristic, 1, costs, query);
+			}
+		}
+	}
+
+	private static void run(String name, TourSolver solver, int threads, Double[][] costs, DeliveryQuery query) {
+		long start = System.nanoTime();
+		solver.computeSolution();
+		long elapsed = (System.nanoTime() - start) / 1000000;
+		System.out.println((costs.length - 1) + ";" + name + ";" + threads + ";" + solver.getExploredNodesNumber() + ";"
+				+ elapsed
+				+ ";" + tourCost(costs, query, solver.getBestSolution()) + ";" + solver.timeLimitReached());
+	}
+
+	/**
+	 * Generates the costs between passage points placed at random in a square
+	 * 
+	 * @param passagePoints
+	 *            the number of passage points, warehouse included
+	 * @param seed
+	 *            the seed of the random positions
+	 * @return the costs matrix, in seconds
+	 */
+	static Double[][] generateCosts(int passagePoints, long seed) {
+		Random random = new Random(seed);
+		int[] x = new int[passagePoints];
+		int[] y = new int[passagePoints];
+		for (int i = 0; i < passagePoints; i++) {
+			x[i] = random.nextInt(1000);
+			y[i] = random.nextInt(1000);
+		}
+		Double[][] costs = new Double[passagePoints][passagePoints];
+		for (int i = 0; i < passagePoints; i++) {
+			for (int j = 0; j < passagePoints; j++) {
+				costs[i][j] = Math.hypot(x[i] - x[j], y[i] - y[j]);
+			}
+		}
+		return costs;
+	}
+
+	/**
+	 * Generates a delivery query without time windows, whose deliveries each
+	 * take between one and five minutes
+	 * 
+	 * @param deliveries
+	 *            the number of deliveries
+	 * @param seed
+	 *            the seed of the random durations
+	 * @return the generated delivery query
+	 */
+	static DeliveryQuery generateQuery(int deliveries, long seed) {
+		Random random = new Random(seed);
+		Warehouse warehouse = new Warehouse();
+		warehouse.setIntersection(new Intersection(0));
+		warehouse.setDepartureTime(new Date(8 * 3600 * 1000));
+		Delivery[] deliveryArray = new Delivery[deliveries];
+		for (int i = 0; i < deliveries; i++) {
+			deliveryArray[i] = new Delivery(new Intersection(i + 1));
+			deliveryArray[i].setDuration(60 + random.nextInt(240));
+		}
+		DeliveryQuery query = new DeliveryQuery();
+		query.setWarehouse(warehouse);
+		query.setDelivery(deliveryArray);
+		return query;
+	}
+
+	/**
+	 * Computes the time needed to make a tour the way the solvers count it :
+	 * the costs of the roads truncated to the second, and the durations of the
+	 * deliveries. Time windows are not taken into account.
+	 * 
+	 * @return the duration of the tour in seconds, -1 if the tour is empty
+	 */
+	static long tourCost(Double[][] costs, DeliveryQuery query, ArrayList<Integer> order) {
+		if (order.isEmpty()) {
+			return -1;
+		}
+		long cost = 0;
+		for (int i = 1; i < order.size(); i++) {
+			cost += costs[order.get(i - 1)][order.get(i)].intValue();
+			cost += query.getDeliveries()[order.get(i) - 1].getDuration();
+		}
+		return cost + costs[order.get(order.size() - 1)][0].intValue();
+	}
+
+	/**
+	 * Computes the time at which a tour gets back to the warehouse, waits for
+	 * the start of the windows included
+	 * 
+	 * @return the time in seconds since the departure, -1 if the tour is empty
+	 */
+	static long endTime(TourProblem problem, ArrayList<Integer> order) {
+		if (order.isEmpty()) {
+			return -1;
+		}
+		long time = 0;
+		for (int i = 1; i < order.size(); i++) {
+			time = problem.leave(time, order.get(i - 1), order.get(i));
+		}
+		return time + problem.getCosts()[order.get(order.size() - 1)][0];
+	}
+}
@@ -0,0 +1,68 @@
+package com.hexagone.delivery.algo;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Date;
+
+import org.junit.Test;
+
+import com.hexagone.delivery.models.DeliveryQuery;
+
+public class TSPv2Test {
+
+	/**
+	 * The bound of TSPSolverV2 is admissible : the best tour found must cost the
+	 * same as the one found by TSPSolverV1, with less nodes explored.
+	 */
+	@Test
+	public void testSameCostAsV1() {
+		for (long seed = 0; seed < 5; seed++) {
+			Double[][] costs = TSPSolverBenchmark.generateCosts(8, seed);
+			DeliveryQuery query = TSPSolverBenchmark.generateQuery(7, seed);
+
+			TSPSolverV1 solverV1 = new TSPSolverV1(costs, query);
+			solverV1.computeSolution();
+			TSPSolverV2 solverV2 = new TSPSolverV2(costs, query);
+			solverV2.computeSolution();
+
+			ArrayList<Integer> bestV1 = solverV1.getBestSolution();
+			ArrayList<Integer> bestV2 = solverV2.getBestSolution();
+			assertEquals(8, bestV2.size());
+			assertEquals(TSPSolverBenchmark.tourCost(costs, query, bestV1),
+					TSPSolverBenchmark.tourCost(costs, query, bestV2));
+			assertTrue(solverV2.getExploredNodesNumber() < solverV1.getExploredNodesNumber());
+		}
+	}
+
+	/**
+	 * The bound must let the solutions respecting the time windows be found
+	 */
+	@Test
+	public void testBoundWithTimeFrame() throws Exception {
+		Double[][] costs = new Double[3][3];
+		costs[0][0] = 0.0;
+		costs[0][1] = 1.0;
+		costs[0][2] = 2.0;
+		costs[1][0] = 2.0;
+		costs[1][1] = 0.0;
+		costs[1][2] = 1.0;
+		costs[2][0] = 1.0;
+		costs[2][1] = 2.0;
+		costs[2][2] = 0.0;
+
+		DeliveryQuery query = TSPSolverBenchmark.generateQuery(2, 0);
+		Date departure = query.getWarehouse().getDepartureTime();
+		query.getDeliveries()[0].setStartSchedule(new Date(departure.getTime() + 30 * 60 * 1000));
+		query.getDeliveries()[1].setEndSchedule(new Date(departure.getTime() + 30 * 60 * 1000));
+
+		TSPSolverV2 solver = new TSPSolverV2(costs, query);
+		solver.computeSolution();
+
+		// Expected path is 0 -> 2 -> 1
+		ArrayList<Integer> bestPath = solver.getBestSolution();
+		assertEquals(new Integer(0), bestPath.get(0));
+		assertEquals(new Integer(2), bestPath.get(1));
+		assertEquals(new Integer(1), bestPath.get(2));
+	}
+}
@@ -0,0 +1,134 @@
+package com.hexagone.delivery.algo;
+
+import static org.junit.Assert.*;
+
+import java.util.Date;
+
+import org.junit.Test;
+
+import com.hexagone.delivery.models.DeliveryQuery;
+
+public class TSPv3Test {
+
+	/**
+	 * Changing the order of the children must not change the cost of the best
+	 * tour
+	 */
+	@Test
+	public void testSameCostAsV2() {
+		for (long seed = 0; seed < 5; seed++) {
+			Double[][] costs = TSPSolverBenchmark.generateCosts(10, seed);
+			DeliveryQuery query = TSPSolverBenchmark.generateQuery(9, seed);
+
+			TSPSolverV2 solverV2 = new TSPSolverV2(costs, query);
+			solverV2.computeSolution();
+			TSPSolverV3 solverV3 = new TSPSolverV3(costs, query);
+			solverV3.computeSolution();
+
+			assertEquals(TSPSolverBenchmark.tourCost(costs, query, solverV2.getBestSolution()),
+					TSPSolverBenchmark.tourCost(costs, query, solverV3.getBestSolution()));
+		}
+	}
+
+	/**
+	 * Exploring the tree on several threads must find a tour of the same cost,
+	 * with or without time windows
+	 */
+	@Test
+	public void testParallelSameCost() {
+		for (long seed = 0; seed < 5; seed++) {
+			Double[][] costs = TSPSolverBenchmark.generateCosts(10, seed);
+			DeliveryQuery query = TSPSolverBenchmark.generateQuery(9, seed);
+			if (seed % 2 == 1) {
+				long departure = query.getWarehouse().getDepartureTime().getTime();
+				query.getDeliveries()[0].setStartSchedule(new Date(departure + 1800 * 1000));
+				query.getDeliveries()[3].setEndSchedule(new Date(departure + 1200 * 1000));
+			}
+
+			TSPSolverV3 sequential = new TSPSolverV3(costs, query);
+			sequential.computeSolution();
+			TSPSolverV3 parallel = new TSPSolverV3(costs, query);
+			parallel.setParallelism(4);
+			parallel.computeSolution();
+
+			TourProblem problem = new TourProblem(costs, query);
+			assertFalse(parallel.getBestSolution().isEmpty());
+			assertEquals(TSPSolverBenchmark.endTime(problem, sequential.getBestSolution()),
+					TSPSolverBenchmark.endTime(problem, parallel.getBestSolution()));
+		}
+	}
+
+	/**
+	 * The first tour reached is the nearest neighbour tour
+	 */
+	@Test
+	public void testNearestFirst() {
+		Double[][] costs = TSPSolverBenchmark.generateCosts(6, 1);
+		DeliveryQuery query = TSPSolverBenchmark.generateQuery(5, 1);
+
+		TSPSolverV3 solver = new TSPSolverV3(costs, query);
+		int[] nonVus = { 1, 2, 3, 4, 5 };
+		int[] children = new int[5];
+
+		solver.iterator(0, nonVus, 5, children, solver.getCosts(), null);
+		double previousCost = 0;
+		for (int child : children) {
+			double cost = costs[0][child];
+			assertTrue(cost >= previousCost);
+			previousCost = cost;
+		}
+	}
+
+	/**
+	 * With time windows, the deliveries closing first come first
+	 */
+	@Test
+	public void testUrgentFirst() {
+		Double[][] costs = TSPSolverBenchmark.generateCosts(4, 2);
+		DeliveryQuery query = TSPSolverBenchmark.generateQuery(3, 2);
+		long departure = query.getWarehouse().getDepartureTime().getTime();
+		query.getDeliveries()[0].setEndSchedule(new Date(departure + 3 * 3600 * 1000));
+		query.getDeliveries()[2].setEndSchedule(new Date(departure + 3600 * 1000));
+
+		TSPSolverV3 solver = new TSPSolverV3(costs, query);
+		int[] nonVus = { 1, 2, 3 };
+		int[] children = new int[3];
+
+		solver.iterator(0, nonVus, 3, children, solver.getCosts(), null);
+		assertEquals(3, children[0]);
+		assertEquals(1, children[1]);
+		assertEquals(2, children[2]);
+	}
+
+	/**
+	 * A cancelled search stops quickly and keeps the best tour found so far
+	 */
+	@Test
+	public void testCancel() throws InterruptedException {
+		Double[][] costs = TSPSolverBenchmark.generateCosts(23, 0);
+		DeliveryQuery query = TSPSolverBenchmark.generateQuery(22, 0);
+		HeuristicTSPSolver heuristic = new HeuristicTSPSolver(costs, query);
+		heuristic.setIteratedSearch(false);
+		heuristic.computeSolution();
+
+		final TSPSolverV3 solver = new TSPSolverV3(costs, query);
+		solver.setInitialSolution(heuristic.getBestSolution());
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				solver.computeSolution();
+			}
+		});
+		long start = System.currentTimeMillis();
+		thread.start();
+		Thread.sleep(200);
+		solver.cancel();
+		thread.join();
+
+		assertTrue(System.currentTimeMillis() - start < 5000);
+		assertTrue(solver.timeLimitReached());
+		assertTrue(solver.getExploredNodesNumber() > 0);
+		assertEquals(new TourProblem(costs, query).endTime(solver.getBestSolution()), solver.getBestSolutionCost());
+		assertTrue(solver.getBestSolutionCost() <= heuristic.getBestSolutionCost());
+	}
+}
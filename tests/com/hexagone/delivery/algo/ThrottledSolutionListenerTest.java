@@ -0,0 +1,67 @@
+package com.hexagone.delivery.algo;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class ThrottledSolutionListenerTest {
+
+	/**
+	 * Records the costs of the tours it is given
+	 */
+	private static class Recorder implements SolutionListener {
+
+		private ArrayList<Long> costs = new ArrayList<Long>();
+
+		@Override
+		public synchronized void solutionImproved(ArrayList<Integer> order, long cost, long timestamp) {
+			costs.add(cost);
+		}
+
+		synchronized ArrayList<Long> getCosts() {
+			return new ArrayList<Long>(costs);
+		}
+	}
+
+	/**
+	 * A burst of tours gives the first one at once and the last one at the
+	 * end of the period
+	 */
+	@Test
+	public void testBurst() throws InterruptedException {
+		Recorder recorder = new Recorder();
+		ThrottledSolutionListener throttle = new ThrottledSolutionListener(recorder, 100);
+		ArrayList<Integer> order = new ArrayList<Integer>(Arrays.asList(0, 1, 2));
+		for (long cost = 1000; cost > 900; cost--) {
+			throttle.solutionImproved(order, cost, System.currentTimeMillis());
+		}
+		assertEquals(Arrays.asList(1000L), recorder.getCosts());
+
+		Thread.sleep(300);
+		assertEquals(Arrays.asList(1000L, 901L), recorder.getCosts());
+		throttle.flush();
+		assertEquals(2, recorder.getCosts().size());
+	}
+
+	/**
+	 * The tours that are not better are ignored, and flush gives the last one
+	 * at once
+	 */
+	@Test
+	public void testFlush() {
+		Recorder recorder = new Recorder();
+		ThrottledSolutionListener throttle = new ThrottledSolutionListener(recorder, 60000);
+		ArrayList<Integer> order = new ArrayList<Integer>(Arrays.asList(0, 1));
+		throttle.solutionImproved(order, 500, 0);
+		throttle.solutionImproved(order, 500, 0);
+		throttle.solutionImproved(order, 600, 0);
+		throttle.solutionImproved(order, 400, 0);
+		assertEquals(Arrays.asList(500L), recorder.getCosts());
+
+		throttle.flush();
+		assertEquals(Arrays.asList(500L, 400L), recorder.getCosts());
+	}
+}
@@ -0,0 +1,74 @@
+package com.hexagone.delivery.models;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class CompactGraphTest {
+
+	@Test
+	public void testCompactGraph() {
+		Map map = new Map();
+		map.addIntersection(new Intersection(10, 0, 0));
+		map.addIntersection(new Intersection(3, 1, 0));
+		map.addIntersection(new Intersection(7, 1, 1));
+
+		map.addRoad(new Road(10, 3, 1, 1, "r0")); // time cost is 0.36
+		map.addRoad(new Road(10, 7, 2, 1, "r1"));
+		map.addRoad(new Road(7, 3, 1, 1, "r2"));
+
+		CompactGraph graph = map.getCompactGraph();
+
+		assertEquals(3, graph.getIntersectionsNumber());
+		assertEquals(3, graph.getRoadsNumber());
+
+		// Indexes follow the order of the identifiers
+		assertEquals(0, graph.getIndex(3));
+		assertEquals(1, graph.getIndex(7));
+		assertEquals(2, graph.getIndex(10));
+		assertEquals(-1, graph.getIndex(4));
+		assertEquals(10, graph.getIdentifier(2));
+
+		// No road starts from 3, one from 7 and two from 10
+		int[] offsets = graph.getOffsets();
+		assertArrayEquals(new int[] { 0, 0, 1, 3 }, offsets);
+		assertEquals(0, graph.getTargets()[0]);
+		assertEquals(new Double(0.36), new Double(graph.getTimes()[0]));
+		assertEquals(0, graph.getTargets()[1]);
+		assertEquals(1, graph.getTargets()[2]);
+		assertEquals(new Double(0.72), new Double(graph.getTimes()[2]));
+
+		// The view is kept until the map changes
+		assertSame(graph, map.getCompactGraph());
+		map.addRoad(new Road(3, 10, 1, 1, "r3"));
+		assertNotSame(graph, map.getCompactGraph());
+		assertEquals(4, map.getCompactGraph().getRoadsNumber());
+	}
+
+	@Test
+	public void testFingerprint() {
+		Map map = new Map();
+		map.addIntersection(new Intersection(1, 0, 0));
+		map.addIntersection(new Intersection(2, 1, 0));
+		map.addRoad(new Road(1, 2, 10, 1, "r0"));
+		Map sameMap = new Map();
+		sameMap.addIntersection(new Intersection(2, 1, 0));
+		sameMap.addIntersection(new Intersection(1, 0, 0));
+		sameMap.addRoad(new Road(1, 2, 10, 1, "r0"));
+
+		assertEquals(map.getCompactGraph().getFingerprint(), sameMap.getCompactGraph().getFingerprint());
+
+		// A longer road changes the fingerprint
+		sameMap.setRoads(new java.util.HashMap<Integer, java.util.ArrayList<Road>>());
+		sameMap.addRoad(new Road(1, 2, 11, 1, "r0"));
+		assertTrue(map.getCompactGraph().getFingerprint() != sameMap.getCompactGraph().getFingerprint());
+
+		// Changes of adjacent values that would cancel out in a polynomial hash
+		int[] offsets = { 0, 1, 1, 1 };
+		int[] targets = { 1 };
+		double[] times = { 1 };
+		CompactGraph graph = new CompactGraph(new int[] { 10, 100, 200 }, offsets, targets, times);
+		CompactGraph other = new CompactGraph(new int[] { 11, 69, 200 }, offsets, targets, times);
+		assertTrue(graph.getFingerprint() != other.getFingerprint());
+	}
+}
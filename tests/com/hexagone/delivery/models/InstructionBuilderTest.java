@@ -0,0 +1,90 @@
+package com.hexagone.delivery.models;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+
+import org.junit.Test;
+
+public class InstructionBuilderTest {
+
+	/**
+	 * Builds a crossroads 0 reached from 1, from which two roads turn right
+	 * and one turns left
+	 */
+	private static Map crossroads() {
+		Map map = new Map();
+		map.addIntersection(new Intersection(0, 0, 0));
+		map.addIntersection(new Intersection(1, 0, 100));
+		map.addIntersection(new Intersection(2, 100, -20));
+		map.addIntersection(new Intersection(3, 100, 50));
+		map.addIntersection(new Intersection(4, 100, 10));
+		map.addRoad(new Road(1, 0, 100, 10, "a"));
+		map.addRoad(new Road(0, 2, 100, 10, "b"));
+		map.addRoad(new Road(0, 4, 100, 10, "c"));
+		map.addRoad(new Road(0, 3, 100, 10, "d"));
+		return map;
+	}
+
+	/**
+	 * Writes the planning of a route going from 1 to a destination through 0
+	 */
+	private static String planning(Map map, int destination) throws Exception {
+		ArrayList<Road> roads = new ArrayList<Road>();
+		roads.add(map.getRoadsStartingFrom(1).get(0));
+		for (Road r : map.getRoadsStartingFrom(0)) {
+			if (r.getDestination() == destination) {
+				roads.add(r);
+			}
+		}
+		Date date = new Date(8 * 3600 * 1000);
+		Warehouse warehouse = new Warehouse();
+		warehouse.setIntersection(map.getIntersections().get(1));
+		warehouse.setDepartureTime(date);
+		DeliveryQuery query = new DeliveryQuery();
+		query.setWarehouse(warehouse);
+		query.setDelivery(new Delivery[0]);
+		Delivery end = new Delivery(map.getIntersections().get(destination));
+		end.setTimes(date, date, 0);
+		LinkedHashMap<Integer, ArrivalPoint> route = new LinkedHashMap<Integer, ArrivalPoint>();
+		route.put(destination, new ArrivalPoint(roads, end));
+
+		StringBuilder out = new StringBuilder();
+		new InstructionBuilder(map).appendPlanning(out, query, route);
+		return out.toString();
+	}
+
+	@Test
+	public void testGetAngle() {
+		assertEquals(90, InstructionBuilder.getAngle(0, 100, 100, 0));
+		assertEquals(180, InstructionBuilder.getAngle(0, 100, 0, -100));
+		assertEquals(45, InstructionBuilder.getAngle(0, 100, 100, 100));
+		assertEquals(InstructionBuilder.getAngle(0, 100, 100, 50), InstructionBuilder.getAngle(0, 10, 10, 5));
+	}
+
+	/**
+	 * The roads turning the same way are ranked from the smallest angle
+	 */
+	@Test
+	public void testPosition() throws Exception {
+		Map map = crossroads();
+		assertTrue(planning(map, 3).contains("2- Prendre la 1ère rue à droite jusqu'à l'intersection 3"));
+		assertTrue(planning(map, 4).contains("2- Prendre la 2ème rue à droite jusqu'à l'intersection 4"));
+		assertTrue(planning(map, 2).contains("2- Prendre la 1ère rue à gauche jusqu'à l'intersection 2"));
+		assertTrue(planning(map, 3).contains("1- Prendre la rue tout droit jusqu'à l'intersection 0"));
+	}
+
+	/**
+	 * A road added to the map is counted in the ranks
+	 */
+	@Test
+	public void testModifiedMap() throws Exception {
+		Map map = crossroads();
+		assertTrue(planning(map, 4).contains("2ème rue à droite"));
+		map.addIntersection(new Intersection(5, 100, 80));
+		map.addRoad(new Road(0, 5, 100, 10, "e"));
+		assertTrue(planning(map, 4).contains("3ème rue à droite"));
+	}
+}
@@ -0,0 +1,119 @@
+package com.hexagone.delivery.models;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+public class MapSnapshotTest {
+
+	/**
+	 * A map loaded from its snapshot has the same intersections and roads,
+	 * and comes with the compact graph of the original map
+	 */
+	@Test
+	public void testWriteAndLoad() throws IOException {
+		Map map = new Map();
+		map.addIntersection(new Intersection(3, 0, 0));
+		map.addIntersection(new Intersection(7, 100, 0));
+		map.addIntersection(new Intersection(12, 0, 100));
+		map.addRoad(new Road(3, 7, 1000, 36, "Rue de la République"));
+		map.addRoad(new Road(7, 12, 1414, 50, "Cours Émile Zola"));
+		map.addRoad(new Road(7, 3, 1000, 36, "Rue de la République"));
+		map.addRoad(new Road(12, 3, 1000, 20, "Avenue Einstein"));
+
+		Path file = Files.createTempFile("plan", MapSnapshot.EXTENSION);
+		try {
+			MapSnapshot.write(map, file);
+			Map loaded = MapSnapshot.load(file);
+
+			assertEquals(map.getIntersections().keySet(), loaded.getIntersections().keySet());
+			assertEquals(100, loaded.getIntersections().get(7).getCoordinates().x);
+			assertEquals(100, loaded.getIntersections().get(12).getCoordinates().y);
+			ArrayList<Road> roads = loaded.getRoadsStartingFrom(7);
+			assertEquals(2, roads.size());
+			assertEquals(Integer.valueOf(12), roads.get(0).getDestination());
+			assertEquals("Cours Émile Zola", roads.get(0).getRoadName());
+			assertEquals(map.getRoadsStartingFrom(7).get(0).getTime(), roads.get(0).getTime());
+			assertTrue(roads.get(1).getRoadName() == loaded.getRoadsStartingFrom(3).get(0).getRoadName());
+			assertEquals(map.getCompactGraph().getFingerprint(), loaded.getCompactGraph().getFingerprint());
+			/** The graph read from the snapshot is the one that would be built from the map */
+			assertEquals(new CompactGraph(loaded).getFingerprint(), loaded.getCompactGraph().getFingerprint());
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	/**
+	 * A map is loaded from the content of a buffer, whose position is left
+	 * unchanged
+	 */
+	@Test
+	public void testLoadFromBuffer() throws IOException {
+		Map map = new Map();
+		map.addIntersection(new Intersection(0, 0, 0));
+		map.addIntersection(new Intersection(1, 10, 0));
+		map.addRoad(new Road(0, 1, 100, 10, "a"));
+		Path file = Files.createTempFile("plan", MapSnapshot.EXTENSION);
+		byte[] content;
+		try {
+			MapSnapshot.write(map, file);
+			content = Files.readAllBytes(file);
+		} finally {
+			Files.delete(file);
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocate(content.length + 7);
+		buffer.position(7);
+		buffer.put(content);
+		buffer.position(7);
+		Map loaded = MapSnapshot.load(buffer);
+
+		assertEquals(map.getIntersections().keySet(), loaded.getIntersections().keySet());
+		assertEquals(7, buffer.position());
+		assertEquals(content.length + 7, buffer.limit());
+	}
+
+	/**
+	 * A truncated or foreign content is rejected
+	 */
+	@Test
+	public void testCorruptedSnapshot() throws IOException {
+		Map map = new Map();
+		map.addIntersection(new Intersection(0, 0, 0));
+		map.addIntersection(new Intersection(1, 10, 0));
+		map.addRoad(new Road(0, 1, 100, 10, "a"));
+		map.addRoad(new Road(1, 0, 100, 10, "a"));
+		Path file = Files.createTempFile("plan", MapSnapshot.EXTENSION);
+		byte[] content;
+		try {
+			MapSnapshot.write(map, file);
+			content = Files.readAllBytes(file);
+		} finally {
+			Files.delete(file);
+		}
+
+		try {
+			MapSnapshot.load(ByteBuffer.wrap(content, 0, content.length - 1));
+			fail();
+		} catch (IOException e) {
+		}
+		try {
+			MapSnapshot.load(ByteBuffer.wrap("<reseau></reseau>".getBytes()));
+			fail();
+		} catch (IOException e) {
+		}
+		/** A travel time changed in the roads */
+		content[content.length - 12] ^= 1;
+		try {
+			MapSnapshot.load(ByteBuffer.wrap(content));
+			fail();
+		} catch (IOException e) {
+		}
+	}
+}
@@ -0,0 +1,124 @@
+package com.hexagone.delivery.models;
+
+import static org.junit.Assert.*;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class SpatialIndexTest {
+
+	/**
+	 * Builds a map of random intersections, each one linked to a few others
+	 */
+	private static Map randomMap(int nbIntersections, long seed) {
+		Random random = new Random(seed);
+		Map map = new Map();
+		for (int i = 0; i < nbIntersections; i++) {
+			map.addIntersection(new Intersection(3 * i + 1, random.nextInt(5000) - 1000, random.nextInt(3000)));
+		}
+		for (int i = 0; i < nbIntersections; i++) {
+			for (int j = 0; j < 3; j++) {
+				map.addRoad(new Road(3 * i + 1, 3 * random.nextInt(nbIntersections) + 1, 100, 10, "r"));
+			}
+		}
+		return map;
+	}
+
+	/**
+	 * The intersections and roads found in an area are the ones a scan of the
+	 * whole map would find
+	 */
+	@Test
+	public void testArea() {
+		Map map = randomMap(2000, 7);
+		SpatialIndex index = map.getSpatialIndex();
+		Rectangle bounds = index.getBounds();
+		for (Intersection i : map.getIntersections().values()) {
+			assertTrue(bounds.contains(i.getCoordinates()) || bounds.x + bounds.width == i.getCoordinates().x
+					|| bounds.y + bounds.height == i.getCoordinates().y);
+		}
+
+		Random random = new Random(11);
+		for (int k = 0; k < 50; k++) {
+			Rectangle area = new Rectangle(random.nextInt(6000) - 1500, random.nextInt(4000) - 500,
+					random.nextInt(1500), random.nextInt(1500));
+
+			HashSet<Intersection> expected = new HashSet<Intersection>();
+			for (Intersection i : map.getIntersections().values()) {
+				Point p = i.getCoordinates();
+				if (p.x >= area.x && p.y >= area.y && p.x <= area.x + area.width && p.y <= area.y + area.height) {
+					expected.add(i);
+				}
+			}
+			ArrayList<Intersection> found = index.getIntersections(area);
+			assertEquals(expected.size(), found.size());
+			assertEquals(expected, new HashSet<Intersection>(found));
+
+			/** Every road with an end in the area is found, and only once */
+			ArrayList<Road> roads = index.getRoads(area);
+			assertEquals(roads.size(), new HashSet<Road>(roads).size());
+			HashSet<Road> foundRoads = new HashSet<Road>(roads);
+			for (ArrayList<Road> roadsFromOrigin : map.getRoads().values()) {
+				for (Road r : roadsFromOrigin) {
+					if (expected.contains(map.getIntersections().get(r.getOrigin()))) {
+						assertTrue(foundRoads.contains(r));
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * The nearest intersection is the one a scan of the whole map would find,
+	 * from inside or outside the map
+	 */
+	@Test
+	public void testNearestIntersection() {
+		Map map = randomMap(2000, 13);
+		SpatialIndex index = map.getSpatialIndex();
+
+		Random random = new Random(17);
+		for (int k = 0; k < 200; k++) {
+			int x = random.nextInt(9000) - 3000;
+			int y = random.nextInt(7000) - 2000;
+			double expected = Double.POSITIVE_INFINITY;
+			for (Intersection i : map.getIntersections().values()) {
+				expected = Math.min(expected, i.getCoordinates().distance(x, y));
+			}
+			Intersection nearest = index.getNearestIntersection(x, y);
+			assertEquals(expected, nearest.getCoordinates().distance(x, y), 1e-9);
+
+			Intersection close = index.getNearestIntersection(x, y, 30);
+			if (expected <= 30) {
+				assertEquals(expected, close.getCoordinates().distance(x, y), 1e-9);
+			} else {
+				assertNull(close);
+			}
+		}
+	}
+
+	/**
+	 * The index follows the modifications of the map, and an empty map finds
+	 * nothing
+	 */
+	@Test
+	public void testModifiedMap() {
+		Map map = new Map();
+		assertNull(map.getSpatialIndex().getNearestIntersection(0, 0));
+		assertTrue(map.getSpatialIndex().getIntersections(new Rectangle(-10, -10, 20, 20)).isEmpty());
+
+		map.addIntersection(new Intersection(4, 10, 10));
+		SpatialIndex index = map.getSpatialIndex();
+		assertSame(index, map.getSpatialIndex());
+		assertEquals(Integer.valueOf(4), index.getNearestIntersection(0, 0).getId());
+
+		map.addIntersection(new Intersection(8, 1, 1));
+		assertNotSame(index, map.getSpatialIndex());
+		assertEquals(Integer.valueOf(8), map.getSpatialIndex().getNearestIntersection(0, 0).getId());
+	}
+}
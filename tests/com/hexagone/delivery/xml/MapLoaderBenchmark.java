@@ -0,0 +1,208 @@
+package com.hexagone.delivery.xml;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import com.hexagone.delivery.models.Intersection;
+import com.hexagone.delivery.models.Map;
+import com.hexagone.delivery.models.MapSnapshot;
+import com.hexagone.delivery.models.Road;
+
+/**
+ * Compares the time and the peak heap needed to load a large map by the
+ * streaming loader of XMLDeserialiser, by its parallel loader, by a DOM
+ * loader, the one used before, and from the binary snapshot of the map. The
+ * map file is a generated square grid with two-way roads of random lengths
+ * and speeds.
+ * 
+ * Usage : MapLoaderBenchmark [roads] [-runs n] [-threads n]
+ * 
+ * The peak heap is the sum of the peaks of the heap memory pools during the
+ * loading, minus the heap used before : it includes the garbage not collected
+ * yet, so it is an upper bound.
+ */
+public class MapLoaderBenchmark {
+
+	private static final long SEED = 42;
+
+	public static void main(String[] args) throws Exception {
+		int roads = 500000;
+		int runs = 3;
+		int threads = Runtime.getRuntime().availableProcessors();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-runs")) {
+				runs = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-threads")) {
+				threads = Integer.parseInt(args[++i]);
+			} else {
+				roads = Integer.parseInt(args[i]);
+			}
+		}
+
+		/** A grid of side n has 4 * n * (n - 1) roads */
+		int side = (int) Math.ceil((1 + Math.sqrt(1 + roads)) / 2);
+		Path file = Files.createTempFile("plan", ".xml");
+		Path snapshot = Files.createTempFile("plan", MapSnapshot.EXTENSION);
+		try {
+			generateMapFile(side, SEED, file);
+			MapSnapshot.write(XMLDeserialiser.loadMap(file), snapshot);
+			System.out.println("intersections;roads;file size (MB);loader;threads;run;time (ms);peak heap (MB)");
+			for (int run = 1; run <= runs; run++) {
+				load(file, "DOM", 1, run);
+				load(file, "StAX", 1, run);
+				load(file, "parallel", threads, run);
+				load(snapshot, "snapshot", 1, run);
+			}
+		} finally {
+			Files.delete(file);
+			Files.delete(snapshot);
+		}
+	}
+
+	/**
+	 * Loads the map file once and prints the time and the peak heap needed
+	 */
+	private static void load(Path file, String loader, int threads, int run) throws Exception {
+		System.gc();
+		long before = heapUsed();
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+			}
+		}
+
+		long start = System.nanoTime();
+		Map map;
+		if (loader.equals("DOM")) {
+			map = loadWithDom(file.toFile());
+		} else if (loader.equals("snapshot")) {
+			map = MapSnapshot.load(file);
+		} else if (loader.equals("parallel")) {
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+				map = ParallelMapLoader.load(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), threads,
+						ParallelMapLoader.DEFAULT_CHUNK_SIZE);
+			}
+		} else {
+			try (InputStream stream = new BufferedInputStream(Files.newInputStream(file))) {
+				map = XMLDeserialiser.loadMap(stream);
+			}
+		}
+		long elapsed = (System.nanoTime() - start) / 1000000;
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+
+		int nbRoads = 0;
+		for (Integer origin : map.getRoads().keySet()) {
+			nbRoads += map.getRoadsStartingFrom(origin).size();
+		}
+		System.out.println(map.getIntersections().size() + ";" + nbRoads + ";" + Files.size(file) / (1024 * 1024)
+				+ ";" + loader + ";" + threads + ";" + run + ";" + elapsed + ";" + (peak - before) / (1024 * 1024));
+	}
+
+	private static long heapUsed() {
+		long used = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				used += pool.getUsage().getUsed();
+			}
+		}
+		return used;
+	}
+
+	/**
+	 * Loads a map the way XMLDeserialiser did before the streaming loader :
+	 * the whole document is parsed in memory, then its elements are converted.
+	 * The previous loader called getLength() at each iteration, which scans
+	 * again the rest of the document : it took more than a minute for 80000
+	 * roads. The length is read once here, to compare with the best of DOM.
+	 */
+	private static Map loadWithDom(File xml) throws Exception {
+		DocumentBuilder docBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+		Document document = docBuilder.parse(xml);
+		Element root = document.getDocumentElement();
+
+		Map map = new Map();
+		NodeList intersections = root.getElementsByTagName("noeud");
+		int nbIntersections = intersections.getLength();
+		for (int i = 0; i < nbIntersections; i++) {
+			Element element = (Element) intersections.item(i);
+			map.addIntersection(new Intersection(Integer.parseInt(element.getAttribute("id")),
+					Integer.parseInt(element.getAttribute("x")), Integer.parseInt(element.getAttribute("y"))));
+		}
+		NodeList roads = root.getElementsByTagName("troncon");
+		int nbRoads = roads.getLength();
+		for (int i = 0; i < nbRoads; i++) {
+			Element element = (Element) roads.item(i);
+			map.addRoad(new Road(Integer.parseInt(element.getAttribute("origine")),
+					Integer.parseInt(element.getAttribute("destination")),
+					Integer.parseInt(element.getAttribute("longueur")),
+					Integer.parseInt(element.getAttribute("vitesse")), element.getAttribute("nomRue")));
+		}
+		return map;
+	}
+
+	/**
+	 * Writes the plan file of a square grid whose intersections are linked to
+	 * their neighbours by two-way roads
+	 * 
+	 * @param side
+	 *            the number of intersections on each side of the grid
+	 * @param seed
+	 *            the seed of the random lengths and speeds
+	 * @param file
+	 *            the file written
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	static void generateMapFile(int side, long seed, Path file) throws IOException {
+		Random random = new Random(seed);
+		try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>\n<reseau>\n");
+			for (int y = 0; y < side; y++) {
+				for (int x = 0; x < side; x++) {
+					writer.write("    <noeud id=\"" + (y * side + x) + "\" x=\"" + x * 10 + "\" y=\"" + y * 10
+							+ "\"/>\n");
+				}
+			}
+			int[][] neighbours = { { 1, 0 }, { -1, 0 }, { 0, 1 }, { 0, -1 } };
+			for (int y = 0; y < side; y++) {
+				for (int x = 0; x < side; x++) {
+					for (int[] neighbour : neighbours) {
+						int nx = x + neighbour[0];
+						int ny = y + neighbour[1];
+						if (nx >= 0 && nx < side && ny >= 0 && ny < side) {
+							writer.write("    <troncon destination=\"" + (ny * side + nx) + "\" longueur=\""
+									+ (50 + random.nextInt(200)) + "\" nomRue=\"Rue " + (neighbour[0] == 0 ? x : y)
+									+ "\" origine=\"" + (y * side + x) + "\" vitesse=\"" + (20 + random.nextInt(40))
+									+ "\"/>\n");
+						}
+					}
+				}
+			}
+			writer.write("</reseau>\n");
+		}
+	}
+}
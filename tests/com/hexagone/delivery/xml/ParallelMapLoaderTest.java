@@ -0,0 +1,119 @@
+package com.hexagone.delivery.xml;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import com.hexagone.delivery.models.Map;
+import com.hexagone.delivery.models.Road;
+
+public class ParallelMapLoaderTest {
+
+	/**
+	 * Read in small chunks by several threads, a plan gives the same map as
+	 * with the streaming parser, the roads of each intersection in the same
+	 * order
+	 */
+	@Test
+	public void testSameMapAsStreamingParser() throws Exception {
+		Path file = Files.createTempFile("plan", ".xml");
+		byte[] content;
+		try {
+			MapLoaderBenchmark.generateMapFile(20, 3, file);
+			content = Files.readAllBytes(file);
+		} finally {
+			Files.delete(file);
+		}
+
+		Map expected = XMLDeserialiser.loadMap(new ByteArrayInputStream(content));
+		Map map = ParallelMapLoader.load(ByteBuffer.wrap(content), 3, 1000);
+
+		assertNotNull(map);
+		assertEquals(expected.getIntersections().keySet(), map.getIntersections().keySet());
+		assertEquals(expected.getIntersections().get(57).getCoordinates(), map.getIntersections().get(57).getCoordinates());
+		assertEquals(expected.getRoads().keySet(), map.getRoads().keySet());
+		for (Integer origin : expected.getRoads().keySet()) {
+			ArrayList<Road> expectedRoads = expected.getRoadsStartingFrom(origin);
+			ArrayList<Road> roads = map.getRoadsStartingFrom(origin);
+			assertEquals(expectedRoads.size(), roads.size());
+			for (int i = 0; i < roads.size(); i++) {
+				assertEquals(expectedRoads.get(i).toString(), roads.get(i).toString());
+				assertEquals(expectedRoads.get(i).getTime(), roads.get(i).getTime());
+			}
+		}
+		assertEquals(expected.getCompactGraph().getFingerprint(), map.getCompactGraph().getFingerprint());
+	}
+
+	/**
+	 * The entities of the street names are decoded, and an intersection given
+	 * twice keeps its last coordinates
+	 */
+	@Test
+	public void testNamesAndDuplicates() throws Exception {
+		String plan = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<reseau>\n"
+				+ "<noeud id=\"0\" x=\"0\" y=\"0\"/>\n<noeud id=\"1\" x=\"100\" y=\"0\"/>\n"
+				+ "<noeud id=\"0\" x=\"5\" y=\"5\"/>\n"
+				+ "<troncon destination=\"1\" longueur=\"100\" nomRue=\"Rue d&apos;Arm&#233;nie &amp; Cie\""
+				+ " origine=\"0\" vitesse=\"10\"/>\n"
+				+ "<troncon destination='0' longueur='100' nomRue='Quai Claude Bernard &amp; Cie' origine='1'"
+				+ " vitesse='10'/>\n</reseau>\n";
+		ByteBuffer content = ByteBuffer.wrap(plan.getBytes(StandardCharsets.UTF_8));
+
+		/** Character references are left to the streaming parser */
+		assertNull(ParallelMapLoader.load(content, 2, 64));
+
+		content = ByteBuffer.wrap(plan.replace("&#233;", "é").getBytes(StandardCharsets.UTF_8));
+		Map map = ParallelMapLoader.load(content, 2, 64);
+		assertNotNull(map);
+		assertEquals(5, map.getIntersections().get(0).getCoordinates().x);
+		assertEquals("Rue d'Arménie & Cie", map.getRoadsStartingFrom(0).get(0).getRoadName());
+		assertEquals("Quai Claude Bernard & Cie", map.getRoadsStartingFrom(1).get(0).getRoadName());
+	}
+
+	/**
+	 * A content the loader does not understand is left to the streaming
+	 * parser
+	 */
+	@Test
+	public void testUnsupportedContent() throws Exception {
+		String plan = "<reseau>\n<!-- <noeud id=\"9\" x=\"0\" y=\"0\"/> -->\n"
+				+ "<noeud id=\"0\" x=\"0\" y=\"0\"/>\n<noeud id=\"1\" x=\"100\" y=\"0\"/>\n"
+				+ "<troncon destination=\"1\" longueur=\"100\" nomRue=\"a\" origine=\"0\" vitesse=\"10\"/>\n"
+				+ "<troncon destination=\"0\" longueur=\"100\" nomRue=\"a\" origine=\"1\" vitesse=\"10\"/>\n"
+				+ "</reseau>\n";
+		assertNull(ParallelMapLoader.load(ByteBuffer.wrap(plan.getBytes(StandardCharsets.UTF_8)), 2, 32));
+		assertNull(ParallelMapLoader.load(
+				ByteBuffer.wrap(plan.replace("longueur=\"100\"", "longueur=\"10.5\"").getBytes(StandardCharsets.UTF_8)),
+				2, 32));
+	}
+
+	/**
+	 * A document that is not well formed is left to the streaming parser,
+	 * whichever chunks its tags fall in
+	 */
+	@Test
+	public void testNotWellFormed() throws Exception {
+		String plan = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<reseau>\n"
+				+ "<noeud id=\"0\" x=\"0\" y=\"0\"/>\n<noeud id=\"1\" x=\"100\" y=\"0\"/>\n"
+				+ "<troncon destination=\"1\" longueur=\"100\" nomRue=\"a\" origine=\"0\" vitesse=\"10\"/>\n"
+				+ "<troncon destination=\"0\" longueur=\"100\" nomRue=\"a\" origine=\"1\" vitesse=\"10\"></troncon>\n"
+				+ "</reseau>\n";
+		String[] malformed = { plan.replace("</reseau>", "</wrong>"), plan.replace("</reseau>", ""),
+				plan.replace("></troncon>", "></noeud>"), plan + "<reseau></reseau>\n",
+				plan.replace("</reseau>", "</reseau></reseau>") };
+		for (int chunkSize : new int[] { 16, 64, 4096 }) {
+			assertNotNull(ParallelMapLoader.load(ByteBuffer.wrap(plan.getBytes(StandardCharsets.UTF_8)), 2, chunkSize));
+			for (String content : malformed) {
+				assertNull(ParallelMapLoader.load(ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8)), 2,
+						chunkSize));
+			}
+		}
+	}
+}
@@ -0,0 +1,100 @@
+package com.hexagone.delivery.xml;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Test;
+
+import com.hexagone.delivery.models.Map;
+
+public class XMLDeserialiserTest {
+
+	private static final String MAP = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<reseau>\n"
+			+ "<noeud id=\"0\" x=\"0\" y=\"0\"/>\n<noeud id=\"1\" x=\"100\" y=\"0\"/>\n"
+			+ "<noeud id=\"2\" x=\"0\" y=\"100\"/>\n"
+			+ "<troncon destination=\"1\" longueur=\"100\" nomRue=\"Rue A\" origine=\"0\" vitesse=\"10\"/>\n"
+			+ "<troncon destination=\"2\" longueur=\"141\" nomRue=\"Rue B\" origine=\"1\" vitesse=\"10\"/>\n"
+			+ "<troncon destination=\"0\" longueur=\"100\" nomRue=\"Rue C\" origine=\"2\" vitesse=\"10\"/>\n"
+			+ "</reseau>\n";
+
+	/**
+	 * A map file is loaded from its path, without the file chooser
+	 */
+	@Test
+	public void testLoadMapFromPath() throws Exception {
+		Path path = Files.createTempFile("plan", ".xml");
+		try {
+			Files.write(path, MAP.getBytes(StandardCharsets.UTF_8));
+			checkMap(XMLDeserialiser.loadMap(path));
+		} finally {
+			Files.delete(path);
+		}
+	}
+
+	/**
+	 * A map is loaded from a stream, which is left open for the caller
+	 */
+	@Test
+	public void testLoadMapFromStream() throws Exception {
+		final boolean[] closed = { false };
+		InputStream stream = new ByteArrayInputStream(MAP.getBytes(StandardCharsets.UTF_8)) {
+			@Override
+			public void close() {
+				closed[0] = true;
+			}
+		};
+		checkMap(XMLDeserialiser.loadMap(stream));
+		assertFalse(closed[0]);
+	}
+
+	/**
+	 * A map is loaded from the content of a buffer, whose position is left
+	 * unchanged
+	 */
+	@Test
+	public void testLoadMapFromBuffer() throws Exception {
+		byte[] bytes = ("garbage" + MAP).getBytes(StandardCharsets.UTF_8);
+		ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+		buffer.put(bytes);
+		buffer.position(7);
+
+		checkMap(XMLDeserialiser.loadMap(buffer));
+		assertEquals(7, buffer.position());
+		assertEquals(bytes.length, buffer.limit());
+	}
+
+	/**
+	 * The streaming loader does not depend on the order of the elements : the
+	 * roads may be given before the intersections
+	 */
+	@Test
+	public void testLoadMapRoadsFirst() throws Exception {
+		int firstRoad = MAP.indexOf("<troncon");
+		int end = MAP.indexOf("</reseau>");
+		String reordered = MAP.substring(0, MAP.indexOf("<noeud")) + MAP.substring(firstRoad, end)
+				+ MAP.substring(MAP.indexOf("<noeud"), firstRoad) + MAP.substring(end);
+		checkMap(XMLDeserialiser.loadMap(new ByteArrayInputStream(reordered.getBytes(StandardCharsets.UTF_8))));
+	}
+
+	/**
+	 * A content that is not a map yields an XMLException
+	 */
+	@Test(expected = XMLException.class)
+	public void testLoadInvalidMap() throws Exception {
+		XMLDeserialiser.loadMap(new ByteArrayInputStream("<reseau></reseau>".getBytes(StandardCharsets.UTF_8)));
+	}
+
+	private static void checkMap(Map map) {
+		assertEquals(3, map.getIntersections().size());
+		assertEquals(100, map.getIntersections().get(1).getCoordinates().x);
+		assertEquals(1, map.getRoadsStartingFrom(1).size());
+		assertEquals(Integer.valueOf(2), map.getRoadsStartingFrom(1).get(0).getDestination());
+		assertEquals("Rue B", map.getRoadsStartingFrom(1).get(0).getRoadName());
+	}
+}